@@ -23,12 +23,10 @@
 import java.lang.reflect.UndeclaredThrowableException;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.Set;
 
 import javax.annotation.Nonnull;
 
@@ -36,6 +34,7 @@
 import org.codehaus.plexus.PlexusContainer;
 import org.codehaus.plexus.archiver.manager.ArchiverManager;
 import org.codehaus.plexus.archiver.manager.NoSuchArchiverException;
+import org.codehaus.plexus.archiver.util.PathIndex;
 import org.codehaus.plexus.component.repository.exception.ComponentLookupException;
 import org.codehaus.plexus.components.io.attributes.Java7Reflector;
 import org.codehaus.plexus.components.io.attributes.PlexusIoResourceAttributes;
@@ -430,7 +429,7 @@ public ResourceIterator getResources()
 
             private ArchiveEntry nextEntry;
 
-            private final Set<String> seenEntries = new HashSet<String>();
+            private final PathIndex seenEntries = new PathIndex();
 
             public boolean hasNext()
             {
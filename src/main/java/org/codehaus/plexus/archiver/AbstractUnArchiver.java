@@ -18,6 +18,10 @@
  */
 
 import org.codehaus.plexus.archiver.util.ArchiveEntryUtils;
+import org.codehaus.plexus.archiver.util.ExtractionCache;
+import org.codehaus.plexus.archiver.util.ExtractionState;
+import org.codehaus.plexus.archiver.util.HardLinks;
+import org.codehaus.plexus.archiver.util.Streams;
 import org.codehaus.plexus.components.io.attributes.SymlinkUtils;
 import org.codehaus.plexus.components.io.fileselectors.FileSelector;
 import org.codehaus.plexus.components.io.resources.PlexusIoResource;
@@ -27,9 +31,23 @@
 import org.codehaus.plexus.util.StringUtils;
 
 import java.io.*;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * @author <a href="mailto:evenisse@codehaus.org">Emmanuel Venisse</a>
@@ -63,6 +81,29 @@
      */
     private boolean ignorePermissions = false;
 
+    /**
+     * @since 3.0.1
+     */
+    private boolean incremental = false;
+
+    private File stateFile;
+
+    private ExtractionCache extractionCache;
+
+    // while extracting incrementally, the state of the previous and of the current extraction
+    private ExtractionState previousState;
+
+    private ExtractionState currentState;
+
+    // while extracting incrementally, the names of all entries of the archive, selected or not
+    private final Set<String> archiveNames = Collections.newSetFromMap( new ConcurrentHashMap<String, Boolean>() );
+
+    // directories known to exist, while extracting
+    private final Set<File> createdDirectories = Collections.newSetFromMap( new ConcurrentHashMap<File, Boolean>() );
+
+    // timestamps and permissions, which are applied once all entries are extracted
+    private final Queue<PendingMetadata> pendingMetadata = new ConcurrentLinkedQueue<PendingMetadata>();
+
     public AbstractUnArchiver()
     {
         // no op
@@ -117,7 +158,30 @@ public final void extract()
         throws ArchiverException
     {
         validate();
-        execute();
+        final File state = incremental && destDirectory != null ? getStateFile() : null;
+        try
+        {
+            if ( state != null )
+            {
+                previousState = ExtractionState.load( state );
+                currentState = new ExtractionState();
+            }
+            execute();
+            if ( state != null )
+            {
+                deleteRemovedEntries();
+                saveState( state );
+            }
+            applyPendingMetadata();
+        }
+        finally
+        {
+            previousState = null;
+            currentState = null;
+            archiveNames.clear();
+            createdDirectories.clear();
+            pendingMetadata.clear();
+        }
         runArchiveFinalizers();
     }
 
@@ -125,10 +189,181 @@ public final void extract( final String path, final File outputDirectory )
         throws ArchiverException
     {
         validate( path, outputDirectory );
-        execute( path, outputDirectory );
+        try
+        {
+            execute( path, outputDirectory );
+            applyPendingMetadata();
+        }
+        finally
+        {
+            createdDirectories.clear();
+            pendingMetadata.clear();
+        }
         runArchiveFinalizers();
     }
 
+    /**
+     * Sets, whether {@link #extract()} only writes the entries, which have changed since the
+     * previous extraction into the same directory, and deletes the files of entries, which
+     * have been removed from the archive. The state of the extracted entries is kept in a
+     * {@link #setStateFile(File) state file}; whether an entry has changed is decided by
+     * comparing its size, CRC, mode and timestamp from the archive's headers, so unchanged
+     * entries aren't decompressed. Files, which have been deleted from the destination
+     * directory since, or whose size has changed, are extracted again; other modifications
+     * aren't detected. Files of entries, which are still in the archive, but aren't
+     * selected anymore, are kept. Defaults to false.
+     *
+     * @since 3.0.1
+     */
+    public void setIncremental( boolean incremental )
+    {
+        this.incremental = incremental;
+    }
+
+    /**
+     * @since 3.0.1
+     */
+    public boolean isIncremental()
+    {
+        return incremental;
+    }
+
+    /**
+     * Sets the file, which holds the state of an incremental extraction. Defaults to a file
+     * next to the destination directory, named like the directory with a
+     * <code>.plexus-archiver-state</code> suffix, so it isn't part of the extracted files.
+     *
+     * @since 3.0.1
+     */
+    public void setStateFile( File stateFile )
+    {
+        this.stateFile = stateFile;
+    }
+
+    /**
+     * @since 3.0.1
+     */
+    public File getStateFile()
+    {
+        if ( stateFile == null && destDirectory != null )
+        {
+            final File dir = destDirectory.getAbsoluteFile();
+            if ( dir.getParentFile() == null )
+            {
+                // A file system root has nothing next to it
+                return new File( dir, ".plexus-archiver-state" );
+            }
+            return new File( dir.getParentFile(), dir.getName() + ".plexus-archiver-state" );
+        }
+        return stateFile;
+    }
+
+    /**
+     * Sets a store of file contents, which is shared by extractions into several directories.
+     * Extracted files become links to the stored files, see {@link ExtractionCache}. Defaults
+     * to null, which writes every file.
+     *
+     * @since 3.0.1
+     */
+    public void setExtractionCache( ExtractionCache extractionCache )
+    {
+        this.extractionCache = extractionCache;
+    }
+
+    /**
+     * @since 3.0.1
+     */
+    public ExtractionCache getExtractionCache()
+    {
+        return extractionCache;
+    }
+
+    /**
+     * Records an entry of an incremental extraction. Subclasses call this with the entry's
+     * header values before reading its contents.
+     *
+     * @param size the size of the extracted file, or -1, if it isn't known from the header, like
+     *             for links.
+     * @param crc  the entry's CRC, or {@link ExtractionState#UNKNOWN_CRC}.
+     * @param mode the entry's unix mode, or null if unknown.
+     * @return true, if the entry is unchanged since the previous extraction, and its file still
+     *         exists with the same size, so it may be skipped.
+     * @since 3.0.1
+     */
+    protected boolean isUnchanged( final String entryName, final long size, final long crc, final Integer mode,
+                                   final Date entryDate )
+    {
+        if ( currentState == null )
+        {
+            return false;
+        }
+        currentState.put( entryName, size, crc, mode, entryDate.getTime() );
+        final ExtractionState.Entry previous = previousState.get( entryName );
+        if ( previous == null || !previous.equals( currentState.get( entryName ) ) )
+        {
+            return false;
+        }
+        // Restore files, which have been deleted or replaced since
+        final File f = FileUtils.resolveFile( destDirectory, entryName );
+        return f.exists() && ( size < 0 || !f.isFile() || f.length() == size );
+    }
+
+    /**
+     * Deletes the files of entries, which have been extracted previously and are no longer
+     * contained in the archive. Directories are only deleted, if they are empty. Entries, which
+     * are still contained, but haven't been selected, keep their files and their state.
+     */
+    private void deleteRemovedEntries()
+    {
+        final List<File> directories = new ArrayList<File>();
+        for ( String name : previousState.getNames() )
+        {
+            if ( currentState.get( name ) != null )
+            {
+                continue;
+            }
+            if ( archiveNames.contains( name ) )
+            {
+                currentState.put( name, previousState.get( name ) );
+                continue;
+            }
+            final File f = FileUtils.resolveFile( destDirectory, name );
+            if ( f.isDirectory() )
+            {
+                directories.add( f );
+            }
+            else if ( !f.delete() && f.exists() )
+            {
+                getLogger().warn( "Unable to delete removed entry " + f.getPath() );
+            }
+        }
+        Collections.sort( directories, new Comparator<File>()
+        {
+            public int compare( File o1, File o2 )
+            {
+                return o2.getPath().length() - o1.getPath().length();
+            }
+        } );
+        for ( File directory : directories )
+        {
+            // Fails, if files are left
+            directory.delete();
+        }
+    }
+
+    private void saveState( final File state )
+        throws ArchiverException
+    {
+        try
+        {
+            currentState.save( state );
+        }
+        catch ( final IOException e )
+        {
+            throw new ArchiverException( "Unable to write extraction state " + state, e );
+        }
+    }
+
     public void addArchiveFinalizer( final ArchiveFinalizer finalizer )
     {
         if ( finalizers == null )
@@ -215,6 +450,11 @@ public FileSelector[] getFileSelectors()
     protected boolean isSelected( final String fileName, final PlexusIoResource fileInfo )
         throws ArchiverException
     {
+        if ( currentState != null )
+        {
+            // Deselected entries are still part of the archive, so their files aren't removed
+            archiveNames.add( fileName );
+        }
         if ( fileSelectors != null )
         {
 			for (FileSelector fileSelector : fileSelectors) {
@@ -274,13 +514,29 @@ protected void extractFile( final File srcF, final File dir, final InputStream c
                                 final String entryName, final Date entryDate, final boolean isDirectory,
                                 final Integer mode, String symlinkDestination )
         throws IOException, ArchiverException
+    {
+        extractFile( srcF, dir, compressedInputStream, entryName, entryDate, isDirectory, mode, symlinkDestination,
+                     -1, ExtractionState.UNKNOWN_CRC );
+    }
+
+    /**
+     * @param size the uncompressed size of the entry, or -1 if unknown.
+     * @param crc  the CRC of the entry's contents, or {@link ExtractionState#UNKNOWN_CRC}.
+     * @since 3.0.1
+     */
+    protected void extractFile( final File srcF, final File dir, final InputStream compressedInputStream,
+                                final String entryName, final Date entryDate, final boolean isDirectory,
+                                final Integer mode, String symlinkDestination, final long size, final long crc )
+        throws IOException, ArchiverException
     {
         // Hmm. Symlinks re-evaluate back to the original file here. Unsure if this is a good thing...
         final File f = FileUtils.resolveFile( dir, entryName );
 
         try
         {
-            if ( !isOverwrite() && f.exists() && ( f.lastModified() >= entryDate.getTime() ) )
+            // An incremental extraction has compared the entry with its previous state already
+            if ( currentState == null && !isOverwrite() && f.exists()
+                && ( f.lastModified() >= entryDate.getTime() ) )
             {
                 return;
             }
@@ -289,7 +545,7 @@ protected void extractFile( final File srcF, final File dir, final InputStream c
             final File dirF = f.getParentFile();
             if ( dirF != null )
             {
-                dirF.mkdirs();
+                mkdirs( dirF );
             }
 
             if ( !StringUtils.isEmpty( symlinkDestination )){
@@ -297,33 +553,288 @@ protected void extractFile( final File srcF, final File dir, final InputStream c
             }
             else if ( isDirectory )
             {
-                f.mkdirs();
+                mkdirs( f );
+            }
+            else if ( extractionCache != null )
+            {
+                final Integer cachedMode = !isIgnorePermissions() ? mode : null;
+                writeCachedFile( compressedInputStream, f, size, crc, cachedMode, entryDate.getTime() );
             }
             else
             {
-                OutputStream out = null;
-                try
-                {
-                    out = new FileOutputStream( f );
+                writeFile( compressedInputStream, f );
+            }
 
-                    IOUtil.copy( compressedInputStream, out );
-                }
-                finally
+            final boolean chmod = !isIgnorePermissions() && mode != null && !isDirectory;
+            pendingMetadata.add( new PendingMetadata( f, entryDate.getTime(), chmod ? mode : null, isDirectory ) );
+        }
+        catch ( final FileNotFoundException ex )
+        {
+            getLogger().warn( "Unable to expand to file " + f.getPath() );
+        }
+    }
+
+    /**
+     * Links the file to the contents in the extraction cache. If the entry's CRC is known, and
+     * the contents are stored already, the entry isn't read at all. Otherwise, the contents are
+     * written to the store first.
+     */
+    private void writeCachedFile( final InputStream contents, final File f, final long size, final long crc,
+                                  final Integer mode, final long lastModified )
+        throws IOException
+    {
+        File stored;
+        if ( crc != ExtractionState.UNKNOWN_CRC && size >= 0 && !extractionCache.isUseDigest() )
+        {
+            stored = extractionCache.getFile( Long.toHexString( crc | 0x100000000L ).substring( 1 ), size, mode,
+                                              lastModified );
+            if ( !stored.isFile() )
+            {
+                final File temp = extractionCache.createTempFile();
+                writeFile( contents, temp );
+                stored = extractionCache.add( temp, stored );
+            }
+        }
+        else
+        {
+            final MessageDigest digest;
+            try
+            {
+                digest = MessageDigest.getInstance( "SHA-256" );
+            }
+            catch ( final NoSuchAlgorithmException e )
+            {
+                throw new IOException( "SHA-256 is not available", e );
+            }
+            final File temp = extractionCache.createTempFile();
+            writeFile( new DigestInputStream( contents, digest ), temp );
+            final StringBuilder checksum = new StringBuilder();
+            for ( byte b : digest.digest() )
+            {
+                checksum.append( Integer.toHexString( ( b & 0xff ) | 0x100 ).substring( 1 ) );
+            }
+            stored = extractionCache.add( temp, extractionCache.getFile( checksum.toString(), temp.length(), mode,
+                                                                         lastModified ) );
+        }
+        extractionCache.link( stored, f );
+    }
+
+    /**
+     * Extracts a hard link entry as a hard link to the file of an earlier entry, or as a copy
+     * of it. The link shares the timestamp and permissions of its target. Both the link and
+     * its target must be located in the destination directory, so an archive can't link files
+     * from elsewhere on the file system into it.
+     *
+     * @param linkName the name of the earlier entry.
+     * @throws ArchiverException if the link or its target is outside of the destination directory.
+     * @since 3.0.1
+     */
+    protected void extractHardLink( final File dir, final String entryName, final String linkName,
+                                    final Date entryDate )
+        throws IOException
+    {
+        final File target = FileUtils.resolveFile( dir, linkName );
+        final File f = FileUtils.resolveFile( dir, entryName );
+        String root = dir.getCanonicalPath();
+        if ( !root.endsWith( File.separator ) )
+        {
+            root += File.separator;
+        }
+        // The link itself is replaced, so only its directory is resolved
+        final File parent = f.getParentFile();
+        if ( parent == null || !new File( parent.getCanonicalFile(), f.getName() ).getPath().startsWith( root ) )
+        {
+            throw new ArchiverException( "Unable to expand " + entryName
+                                             + ", it is outside of the destination directory" );
+        }
+        if ( !target.getCanonicalPath().startsWith( root ) )
+        {
+            throw new ArchiverException( "Unable to expand " + entryName + ", its link target " + linkName
+                                             + " is outside of the destination directory" );
+        }
+        if ( !target.isFile() )
+        {
+            getLogger().warn( "Unable to expand " + entryName + ", its link target " + linkName
+                                  + " hasn't been extracted" );
+            return;
+        }
+        if ( target.equals( f ) )
+        {
+            return;
+        }
+        if ( currentState == null && !isOverwrite() && f.exists() && ( f.lastModified() >= entryDate.getTime() ) )
+        {
+            return;
+        }
+        final File dirF = f.getParentFile();
+        if ( dirF != null )
+        {
+            mkdirs( dirF );
+        }
+        HardLinks.link( target, f );
+    }
+
+    private void mkdirs( final File dir )
+    {
+        if ( !createdDirectories.contains( dir ) )
+        {
+            dir.mkdirs();
+            createdDirectories.add( dir );
+        }
+    }
+
+    /**
+     * The number of threads used to apply timestamps and permissions of extracted files.
+     * Defaults to 1.
+     *
+     * @since 3.0.1
+     */
+    protected int getMetadataThreads()
+    {
+        return 1;
+    }
+
+    /**
+     * Sets the timestamps and permissions of the extracted entries. Directories are handled
+     * last and deepest first, so creating their children doesn't change their timestamps.
+     */
+    private void applyPendingMetadata()
+        throws ArchiverException
+    {
+        final List<PendingMetadata> files = new ArrayList<PendingMetadata>();
+        final List<PendingMetadata> directories = new ArrayList<PendingMetadata>();
+        for ( PendingMetadata metadata : pendingMetadata )
+        {
+            ( metadata.directory ? directories : files ).add( metadata );
+        }
+
+        final int threads = Math.min( getMetadataThreads(), files.size() );
+        if ( threads > 1 )
+        {
+            applyInParallel( files, threads );
+        }
+        else
+        {
+            for ( PendingMetadata metadata : files )
+            {
+                metadata.apply();
+            }
+        }
+
+        Collections.sort( directories, new Comparator<PendingMetadata>()
+        {
+            public int compare( PendingMetadata o1, PendingMetadata o2 )
+            {
+                return o2.file.getPath().length() - o1.file.getPath().length();
+            }
+        } );
+        for ( PendingMetadata metadata : directories )
+        {
+            metadata.apply();
+        }
+    }
+
+    private void applyInParallel( final List<PendingMetadata> files, final int threads )
+        throws ArchiverException
+    {
+        final ExecutorService executor = Executors.newFixedThreadPool( threads );
+        try
+        {
+            final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            final int chunk = ( files.size() + threads - 1 ) / threads;
+            for ( int start = 0; start < files.size(); start += chunk )
+            {
+                final List<PendingMetadata> part = files.subList( start, Math.min( files.size(), start + chunk ) );
+                futures.add( executor.submit( new Callable<Void>()
                 {
-                    IOUtil.close( out );
-                }
+                    public Void call()
+                    {
+                        for ( PendingMetadata metadata : part )
+                        {
+                            metadata.apply();
+                        }
+                        return null;
+                    }
+                } ) );
+            }
+            for ( Future<Void> future : futures )
+            {
+                future.get();
             }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new ArchiverException( "Interrupted while setting file attributes", e );
+        }
+        catch ( ExecutionException e )
+        {
+            final Throwable cause = e.getCause();
+            if ( cause instanceof RuntimeException )
+            {
+                throw (RuntimeException) cause;
+            }
+            if ( cause instanceof Error )
+            {
+                throw (Error) cause;
+            }
+            throw new ArchiverException( cause.getMessage(), cause );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private class PendingMetadata
+    {
+        private final File file;
+
+        private final long lastModified;
 
-            f.setLastModified( entryDate.getTime() );
+        private final Integer mode;
 
-            if ( !isIgnorePermissions() && mode != null && !isDirectory)
+        private final boolean directory;
+
+        PendingMetadata( File file, long lastModified, Integer mode, boolean directory )
+        {
+            this.file = file;
+            this.lastModified = lastModified;
+            this.mode = mode;
+            this.directory = directory;
+        }
+
+        void apply()
+        {
+            file.setLastModified( lastModified );
+            if ( mode != null )
             {
-                ArchiveEntryUtils.chmod( f, mode, getLogger(), isUseJvmChmod() );
+                ArchiveEntryUtils.chmod( file, mode, getLogger(), isUseJvmChmod() );
             }
         }
-        catch ( final FileNotFoundException ex )
+    }
+
+    /**
+     * Writes the contents of an entry to the given file. Subclasses may override this, if they
+     * have a faster way to get the contents into the file. An existing file is replaced, not
+     * written in place, as it may be a hard link, see {@link HardLinks#unlink(File)}.
+     *
+     * @since 3.0.1
+     */
+    protected void writeFile( final InputStream contents, final File f )
+        throws IOException
+    {
+        OutputStream out = null;
+        try
         {
-            getLogger().warn( "Unable to expand to file " + f.getPath() );
+            HardLinks.unlink( f );
+            out = new FileOutputStream( f );
+
+            Streams.copy( contents, out );
+        }
+        finally
+        {
+            IOUtil.close( out );
         }
     }
 
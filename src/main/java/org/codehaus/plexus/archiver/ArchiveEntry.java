@@ -18,6 +18,7 @@
  */
 
 import org.codehaus.plexus.archiver.resources.PlexusIoVirtualSymlinkResource;
+import org.codehaus.plexus.archiver.util.FileAttributesResolver;
 
 import java.io.File;
 import java.io.IOException;
@@ -30,9 +31,6 @@
 import org.codehaus.plexus.components.io.resources.PlexusIoFileResource;
 import org.codehaus.plexus.components.io.resources.PlexusIoResource;
 import org.codehaus.plexus.components.io.resources.PlexusIoResourceCollection;
-import org.codehaus.plexus.components.io.resources.ResourceFactory;
-
-import static org.codehaus.plexus.components.io.resources.ResourceFactory.createResource;
 
 /**
  * @version $Revision: 1502 $ $Date$
@@ -173,7 +171,7 @@ public static ArchiveEntry createFileEntry( String target, File file, int permis
             throw new ArchiverException( "Not a file: " + file );
         }
         
-        final PlexusIoResource res =  ResourceFactory.createResource( file );
+        final PlexusIoResource res = FileAttributesResolver.getShared().createResource( file );
 
         final int type;
         if (res.isSymbolicLink()){
@@ -213,7 +211,7 @@ public static ArchiveEntry createDirectoryEntry( String target, final File file,
             throw new ArchiverException( "Not a directory: " + file );
         }
 
-        final PlexusIoResource res = createResource( file);
+        final PlexusIoResource res = FileAttributesResolver.getShared().createResource( file );
         return new ArchiveEntry( target, res, DIRECTORY, permissions, null, defaultDirMode1 );
     }
 
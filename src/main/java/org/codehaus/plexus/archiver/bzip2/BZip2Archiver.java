@@ -23,6 +23,7 @@
 import org.codehaus.plexus.archiver.ArchiveEntry;
 import org.codehaus.plexus.archiver.ArchiverException;
 import org.codehaus.plexus.archiver.ResourceIterator;
+import org.codehaus.plexus.archiver.util.CompressionProfile;
 
 /**
  * @version $Revision$ $Date$
@@ -31,7 +32,27 @@
     extends AbstractArchiver
 {
     private BZip2Compressor compressor = new BZip2Compressor();
-    
+
+    /**
+     * Sets the number of threads used for compression, see {@link BZip2Compressor#setThreads(int)}.
+     *
+     * @since 3.0.1
+     */
+    public void setCompressionThreads( int compressionThreads )
+    {
+        compressor.setThreads( compressionThreads );
+    }
+
+    /**
+     * Sets the level and buffer sizes of the compression, see {@link CompressionProfile}.
+     *
+     * @since 3.0.1
+     */
+    public void setCompressionProfile( CompressionProfile compressionProfile )
+    {
+        compressor.setProfile( compressionProfile );
+    }
+
     public void execute()
         throws ArchiverException, IOException
     {
@@ -19,13 +19,12 @@
 
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
 import org.codehaus.plexus.archiver.ArchiverException;
+import org.codehaus.plexus.archiver.util.CompressionProfile;
 import org.codehaus.plexus.archiver.util.Compressor;
 import org.codehaus.plexus.util.IOUtil;
 
 import java.io.IOException;
-
-import static org.codehaus.plexus.archiver.util.Streams.bufferedOutputStream;
-import static org.codehaus.plexus.archiver.util.Streams.fileOutputStream;
+import java.io.OutputStream;
 
 /**
  * @version $Revision$ $Date$
@@ -33,8 +32,29 @@
 public class BZip2Compressor
     extends Compressor
 {
-    private BZip2CompressorOutputStream zOut;
-    
+    private OutputStream zOut;
+
+    private int threads = 1;
+
+    /**
+     * Sets the number of threads, which compress blocks of the source concurrently,
+     * see {@link ParallelBZip2OutputStream}. Defaults to 1.
+     *
+     * @since 3.0.1
+     */
+    public void setThreads( int threads )
+    {
+        this.threads = threads;
+    }
+
+    /**
+     * @since 3.0.1
+     */
+    public int getThreads()
+    {
+        return threads;
+    }
+
     /**
      * perform the BZip2 compression operation.
      */
@@ -43,7 +63,10 @@ public void compress()
     {
         try
         {
-            zOut = new BZip2CompressorOutputStream( bufferedOutputStream( fileOutputStream( getDestFile() ) ) );
+            final OutputStream out = destFileOutputStream();
+            final int blockSize = getBlockSize( getProfile() );
+            zOut = threads > 1 ? new ParallelBZip2OutputStream( out, threads, blockSize )
+                : new BZip2CompressorOutputStream( out, blockSize );
             compress( getSource(), zOut );
         }
         catch ( IOException ioe )
@@ -53,6 +76,19 @@ public void compress()
         }
     }
 
+    /**
+     * @return the block size, which the level of the profile stands for.
+     * @since 3.0.1
+     */
+    public static int getBlockSize( CompressionProfile profile )
+    {
+        if ( profile.getLevel() < 0 )
+        {
+            return BZip2CompressorOutputStream.MAX_BLOCKSIZE;
+        }
+        return Math.max( BZip2CompressorOutputStream.MIN_BLOCKSIZE, profile.getLevel() );
+    }
+
     public void close()
     {
         IOUtil.close( zOut );
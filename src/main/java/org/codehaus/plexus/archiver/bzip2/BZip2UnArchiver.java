@@ -38,6 +38,8 @@
 {
     private final static String OPERATION_BZIP2 = "bzip2";
 
+    private int decompressionThreads = 1;
+
     public BZip2UnArchiver()
     {
     }
@@ -47,6 +49,25 @@ public BZip2UnArchiver( File sourceFile )
         super( sourceFile );
     }
 
+    /**
+     * Sets the number of threads, which decompress concatenated bzip2 streams concurrently,
+     * see {@link ParallelBZip2InputStream}. Defaults to 1.
+     *
+     * @since 3.0.1
+     */
+    public void setDecompressionThreads( int decompressionThreads )
+    {
+        this.decompressionThreads = decompressionThreads;
+    }
+
+    /**
+     * @since 3.0.1
+     */
+    public int getDecompressionThreads()
+    {
+        return decompressionThreads;
+    }
+
     protected void execute()
         throws ArchiverException
     {
@@ -55,7 +76,9 @@ protected void execute()
             getLogger().info(
                 "Expanding " + getSourceFile().getAbsolutePath() + " to " + getDestFile().getAbsolutePath() );
 
-            copyFully( getBZip2InputStream( bufferedInputStream( fileInputStream( getSourceFile(), OPERATION_BZIP2 ) ) ),
+            final InputStream in = bufferedInputStream( fileInputStream( getSourceFile(), OPERATION_BZIP2 ) );
+            copyFully( decompressionThreads > 1 ? new ParallelBZip2InputStream( in, decompressionThreads )
+                           : getBZip2InputStream( in ),
                        bufferedOutputStream( fileOutputStream( getDestFile(), OPERATION_BZIP2 ) ), OPERATION_BZIP2 );
         }
     }
@@ -67,7 +90,8 @@ BZip2CompressorInputStream getBZip2InputStream( InputStream bis )
     {
         try
         {
-            return new BZip2CompressorInputStream( bis );
+            // Files written by several threads, or by pbzip2, consist of concatenated streams
+            return new BZip2CompressorInputStream( bis, true );
         }
         catch ( IOException e )
         {
@@ -0,0 +1,326 @@
+package org.codehaus.plexus.archiver.bzip2;
+
+/*
+ * Copyright 2014 The Codehaus Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.codehaus.plexus.archiver.util.Streams;
+
+/**
+ * A bzip2 input stream, which decompresses concatenated bzip2 streams on several threads.
+ * The input is split at the stream headers, which are byte aligned, unlike the blocks
+ * within a stream. Files written by {@link ParallelBZip2OutputStream}, or by
+ * <code>pbzip2</code>, consist of a stream per block, and are decompressed concurrently. A
+ * stream, which is too large to be a single block, like any file written by the
+ * <code>bzip2</code> tool, is decompressed on the reading thread, as by
+ * {@link BZip2CompressorInputStream}. So is a stream, which expands to more than
+ * {@link #MAX_EXPANDED_SIZE}, so highly compressible data doesn't have to be held in memory.
+ *
+ * @since 3.0.1
+ */
+public class ParallelBZip2InputStream
+    extends InputStream
+{
+    // "BZh", the block size, and the magic number of the first block
+    private static final int HEADER_LENGTH = 10;
+
+    private static final byte[] BLOCK_MAGIC = { 0x31, 0x41, 0x59, 0x26, 0x53, 0x59 };
+
+    // a stream of a single block of 900k, which didn't compress, is a little larger
+    private static final int MAX_SEGMENT_SIZE = 2 * 1024 * 1024;
+
+    /**
+     * The number of bytes, to which a stream may be decompressed concurrently. The
+     * decompressed data of a stream is buffered, until it is read.
+     */
+    public static final int MAX_EXPANDED_SIZE = 8 * 1024 * 1024;
+
+    private final InputStream in;
+
+    private final ExecutorService executor;
+
+    private final int maxPending;
+
+    // decompressed segments, in the order of the input
+    private final LinkedList<Segment> pending = new LinkedList<Segment>();
+
+    // compressed input, which starts with a stream header
+    private byte[] segment = new byte[256 * 1024];
+
+    private int segmentLength;
+
+    // the position, from which the segment is searched for the next header
+    private int scanFrom = 1;
+
+    private boolean inputExhausted;
+
+    // decompresses the rest of the input, once a stream is too large to be split
+    private InputStream sequential;
+
+    // decompresses a stream on the reading thread, which expanded too much to be buffered
+    private InputStream expanded;
+
+    private byte[] current;
+
+    private int currentPos;
+
+    private boolean closed;
+
+    public ParallelBZip2InputStream( InputStream in, int threads )
+    {
+        if ( threads < 1 )
+        {
+            throw new IllegalArgumentException( "At least one thread is required: " + threads );
+        }
+        this.in = in;
+        this.maxPending = threads * 2;
+        this.executor = Executors.newFixedThreadPool( threads );
+    }
+
+    public int read()
+        throws IOException
+    {
+        final byte[] b = new byte[1];
+        return read( b, 0, 1 ) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    public int read( byte[] b, int off, int len )
+        throws IOException
+    {
+        if ( closed )
+        {
+            throw new IOException( "Stream closed" );
+        }
+        if ( len == 0 )
+        {
+            return 0;
+        }
+        for ( ;; )
+        {
+            if ( current != null && currentPos < current.length )
+            {
+                final int n = Math.min( len, current.length - currentPos );
+                System.arraycopy( current, currentPos, b, off, n );
+                currentPos += n;
+                return n;
+            }
+            current = null;
+            if ( expanded != null )
+            {
+                final int n = expanded.read( b, off, len );
+                if ( n != -1 )
+                {
+                    return n;
+                }
+                expanded.close();
+                expanded = null;
+            }
+            fillPending();
+            if ( !pending.isEmpty() )
+            {
+                final Segment next = pending.removeFirst();
+                current = ParallelBZip2OutputStream.get( next.result );
+                currentPos = 0;
+                if ( current == null )
+                {
+                    expanded = new BZip2CompressorInputStream( new ByteArrayInputStream( next.data ), true );
+                }
+                fillPending();
+            }
+            else
+            {
+                // Nothing is left to decompress concurrently
+                executor.shutdown();
+                if ( sequential != null )
+                {
+                    return sequential.read( b, off, len );
+                }
+                if ( inputExhausted )
+                {
+                    return -1;
+                }
+            }
+        }
+    }
+
+    public void close()
+        throws IOException
+    {
+        if ( closed )
+        {
+            return;
+        }
+        closed = true;
+        executor.shutdownNow();
+        pending.clear();
+        if ( expanded != null )
+        {
+            expanded.close();
+        }
+        if ( sequential != null )
+        {
+            sequential.close();
+        }
+        in.close();
+    }
+
+    private void fillPending()
+        throws IOException
+    {
+        while ( pending.size() < maxPending && sequential == null && !inputExhausted )
+        {
+            readSegment();
+        }
+    }
+
+    /**
+     * Reads input, until the next stream header or the end of the input is found, and
+     * submits the preceding stream for decompression.
+     */
+    private void readSegment()
+        throws IOException
+    {
+        for ( ;; )
+        {
+            final int next = findHeader();
+            if ( next > 0 )
+            {
+                submit( next );
+                return;
+            }
+            if ( segmentLength >= MAX_SEGMENT_SIZE )
+            {
+                sequential = new BZip2CompressorInputStream(
+                    new SequenceInputStream( new ByteArrayInputStream( segment, 0, segmentLength ), in ), true );
+                segment = null;
+                segmentLength = 0;
+                return;
+            }
+            if ( segmentLength == segment.length )
+            {
+                final byte[] grown = new byte[segment.length * 2];
+                System.arraycopy( segment, 0, grown, 0, segmentLength );
+                segment = grown;
+            }
+            final int n = in.read( segment, segmentLength, segment.length - segmentLength );
+            if ( n == -1 )
+            {
+                inputExhausted = true;
+                if ( segmentLength > 0 )
+                {
+                    submit( segmentLength );
+                }
+                return;
+            }
+            segmentLength += n;
+        }
+    }
+
+    private int findHeader()
+    {
+        final int end = segmentLength - HEADER_LENGTH;
+        for ( int i = scanFrom; i <= end; i++ )
+        {
+            if ( segment[i] == 'B' && segment[i + 1] == 'Z' && segment[i + 2] == 'h' && segment[i + 3] >= '1'
+                && segment[i + 3] <= '9' && isBlockMagic( i + 4 ) )
+            {
+                return i;
+            }
+        }
+        scanFrom = Math.max( 1, end + 1 );
+        return -1;
+    }
+
+    private boolean isBlockMagic( int pos )
+    {
+        for ( int i = 0; i < BLOCK_MAGIC.length; i++ )
+        {
+            if ( segment[pos + i] != BLOCK_MAGIC[i] )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Submits the first bytes of the segment, and keeps the rest. The decompressed data is
+     * null, if it exceeds {@link #MAX_EXPANDED_SIZE}.
+     */
+    private void submit( int length )
+    {
+        final byte[] data = new byte[length];
+        System.arraycopy( segment, 0, data, 0, length );
+        System.arraycopy( segment, length, segment, 0, segmentLength - length );
+        segmentLength -= length;
+        scanFrom = 1;
+        pending.add( new Segment( data, executor.submit( new Callable<byte[]>()
+        {
+            public byte[] call()
+                throws IOException
+            {
+                final InputStream bz = new BZip2CompressorInputStream( new ByteArrayInputStream( data ), true );
+                final ByteArrayOutputStream result = new ByteArrayOutputStream( data.length * 4 );
+                final byte[] buffer = Streams.borrowBuffer();
+                try
+                {
+                    int n;
+                    while ( ( n = bz.read( buffer ) ) != -1 )
+                    {
+                        if ( result.size() + n > MAX_EXPANDED_SIZE )
+                        {
+                            return null;
+                        }
+                        result.write( buffer, 0, n );
+                    }
+                }
+                finally
+                {
+                    Streams.returnBuffer( buffer );
+                    bz.close();
+                }
+                return result.toByteArray();
+            }
+        } ) ) );
+    }
+
+    /**
+     * A compressed stream, and its decompressed data.
+     */
+    private static class Segment
+    {
+        private final byte[] data;
+
+        private final Future<byte[]> result;
+
+        Segment( byte[] data, Future<byte[]> result )
+        {
+            this.data = data;
+            this.result = result;
+        }
+    }
+}
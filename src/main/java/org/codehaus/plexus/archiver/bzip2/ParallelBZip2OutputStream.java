@@ -0,0 +1,214 @@
+package org.codehaus.plexus.archiver.bzip2;
+
+/*
+ * Copyright 2014 The Codehaus Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.codehaus.plexus.archiver.ArchiverException;
+
+/**
+ * A bzip2 output stream, which compresses blocks of its input on several threads. Like
+ * <code>pbzip2</code>, every block is written as a complete bzip2 stream; the streams are
+ * concatenated in order. The <code>bzip2</code> tool, and {@link ParallelBZip2InputStream},
+ * decompress concatenated streams as a whole.
+ *
+ * @since 3.0.1
+ */
+public class ParallelBZip2OutputStream
+    extends OutputStream
+{
+    private final OutputStream out;
+
+    private final ExecutorService executor;
+
+    private final int maxPending;
+
+    private final int blockSize;
+
+    private final int chunkSize;
+
+    // blocks being compressed, in the order of the input
+    private final LinkedList<Future<byte[]>> pending = new LinkedList<Future<byte[]>>();
+
+    private byte[] chunk;
+
+    private int chunkLength;
+
+    private boolean closed;
+
+    public ParallelBZip2OutputStream( OutputStream out, int threads )
+    {
+        this( out, threads, BZip2CompressorOutputStream.MAX_BLOCKSIZE );
+    }
+
+    /**
+     * @param threads   the number of threads, which compress blocks.
+     * @param blockSize the bzip2 block size, from 1 to 9, in units of 100k.
+     */
+    public ParallelBZip2OutputStream( OutputStream out, int threads, int blockSize )
+    {
+        if ( threads < 1 )
+        {
+            throw new IllegalArgumentException( "At least one thread is required: " + threads );
+        }
+        if ( blockSize < BZip2CompressorOutputStream.MIN_BLOCKSIZE
+            || blockSize > BZip2CompressorOutputStream.MAX_BLOCKSIZE )
+        {
+            throw new IllegalArgumentException( "Invalid block size: " + blockSize );
+        }
+        this.out = out;
+        this.blockSize = blockSize;
+        this.chunkSize = blockSize * 100000;
+        this.maxPending = threads * 2;
+        this.executor = Executors.newFixedThreadPool( threads );
+        this.chunk = new byte[chunkSize];
+    }
+
+    public void write( int b )
+        throws IOException
+    {
+        write( new byte[]{ (byte) b }, 0, 1 );
+    }
+
+    public void write( byte[] b, int off, int len )
+        throws IOException
+    {
+        if ( closed )
+        {
+            throw new IOException( "Stream closed" );
+        }
+        while ( len > 0 )
+        {
+            final int n = Math.min( len, chunkSize - chunkLength );
+            System.arraycopy( b, off, chunk, chunkLength, n );
+            chunkLength += n;
+            off += n;
+            len -= n;
+            if ( chunkLength == chunkSize )
+            {
+                submit();
+            }
+        }
+    }
+
+    /**
+     * Writes the completely compressed blocks. Blocks, which are being compressed, are kept.
+     */
+    public void flush()
+        throws IOException
+    {
+        while ( !pending.isEmpty() && pending.getFirst().isDone() )
+        {
+            out.write( get( pending.removeFirst() ) );
+        }
+        out.flush();
+    }
+
+    public void close()
+        throws IOException
+    {
+        if ( closed )
+        {
+            return;
+        }
+        try
+        {
+            // An empty input still gets a stream, so the output is a valid bzip2 file
+            if ( chunkLength > 0 || pending.isEmpty() )
+            {
+                submit();
+            }
+            while ( !pending.isEmpty() )
+            {
+                out.write( get( pending.removeFirst() ) );
+            }
+        }
+        finally
+        {
+            closed = true;
+            executor.shutdownNow();
+            out.close();
+        }
+    }
+
+    private void submit()
+        throws IOException
+    {
+        final byte[] data = chunk;
+        final int length = chunkLength;
+        pending.add( executor.submit( new Callable<byte[]>()
+        {
+            public byte[] call()
+                throws IOException
+            {
+                final ByteArrayOutputStream result = new ByteArrayOutputStream( length / 4 + 64 );
+                final BZip2CompressorOutputStream bz = new BZip2CompressorOutputStream( result, blockSize );
+                bz.write( data, 0, length );
+                bz.close();
+                return result.toByteArray();
+            }
+        } ) );
+        chunk = new byte[chunkSize];
+        chunkLength = 0;
+
+        while ( pending.size() > maxPending )
+        {
+            out.write( get( pending.removeFirst() ) );
+        }
+    }
+
+    static byte[] get( Future<byte[]> future )
+        throws IOException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException( "Interrupted while waiting for bzip2 blocks" );
+        }
+        catch ( ExecutionException e )
+        {
+            final Throwable cause = e.getCause();
+            if ( cause instanceof IOException )
+            {
+                throw (IOException) cause;
+            }
+            if ( cause instanceof RuntimeException )
+            {
+                throw (RuntimeException) cause;
+            }
+            if ( cause instanceof Error )
+            {
+                throw (Error) cause;
+            }
+            throw new ArchiverException( cause.getMessage(), cause );
+        }
+    }
+}
@@ -4,9 +4,8 @@
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashMap;
 
-import org.codehaus.plexus.components.io.attributes.Java7FileAttributes;
+import org.codehaus.plexus.archiver.util.FileAttributesResolver;
 import org.codehaus.plexus.components.io.attributes.PlexusIoResourceAttributes;
 import org.codehaus.plexus.components.io.resources.PlexusIoCompressedFileResourceCollection;
 import org.codehaus.plexus.components.io.resources.PlexusIoResourceCollection;
@@ -42,7 +41,7 @@
 
 
 	@Override protected PlexusIoResourceAttributes getAttributes(File file) throws IOException {
-        return new Java7FileAttributes(file, new HashMap<Integer, String>(), new HashMap<Integer, String>());
+        return FileAttributesResolver.getShared().getAttributes( file );
 	}
 
 	protected String getDefaultExtension()
@@ -21,6 +21,7 @@
 import org.codehaus.plexus.archiver.ArchiveEntry;
 import org.codehaus.plexus.archiver.ArchiverException;
 import org.codehaus.plexus.archiver.ResourceIterator;
+import org.codehaus.plexus.archiver.util.CompressionProfile;
 
 import java.io.IOException;
 
@@ -31,7 +32,27 @@
     extends AbstractArchiver
 {
     final GZipCompressor compressor = new GZipCompressor();
-    
+
+    /**
+     * Sets the number of threads used for compression, see {@link GZipCompressor#setThreads(int)}.
+     *
+     * @since 3.0.1
+     */
+    public void setCompressionThreads( int compressionThreads )
+    {
+        compressor.setThreads( compressionThreads );
+    }
+
+    /**
+     * Sets the deflate level, strategy and buffer sizes, see {@link CompressionProfile}.
+     *
+     * @since 3.0.1
+     */
+    public void setCompressionProfile( CompressionProfile compressionProfile )
+    {
+        compressor.setProfile( compressionProfile );
+    }
+
     protected void execute()
         throws ArchiverException, IOException
     {
@@ -18,12 +18,14 @@
  */
 
 import org.codehaus.plexus.archiver.ArchiverException;
-import org.codehaus.plexus.archiver.util.Streams;
+import org.codehaus.plexus.archiver.util.CompressionProfile;
 import org.codehaus.plexus.archiver.util.Compressor;
+import org.codehaus.plexus.components.io.attributes.Java7Reflector;
 import org.codehaus.plexus.util.IOUtil;
 
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPOutputStream;
 
 /**
@@ -32,7 +34,101 @@
 public class GZipCompressor
     extends Compressor
 {
-    private GZIPOutputStream zOut;
+    /**
+     * The size of the buffer, which receives deflated data, instead of the 512 bytes of
+     * {@link GZIPOutputStream}, which make for many small writes.
+     */
+    private static final int DEFLATED_BUFFER_SIZE = 64 * 1024;
+
+    private OutputStream zOut;
+
+    private int threads = 1;
+
+    /**
+     * Sets the number of threads, which deflate blocks of the source concurrently,
+     * see {@link ParallelGZipOutputStream}. Defaults to 1.
+     *
+     * @since 3.0.1
+     */
+    public void setThreads( int threads )
+    {
+        this.threads = threads;
+    }
+
+    /**
+     * @since 3.0.1
+     */
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    /**
+     * Returns a gzip stream, which deflates on the given number of threads. A single thread,
+     * or a JVM before Java 7, gets a {@link GZIPOutputStream}.
+     *
+     * @since 3.0.1
+     */
+    public static OutputStream createOutputStream( OutputStream out, int threads )
+        throws IOException
+    {
+        return createOutputStream( out, threads, Deflater.DEFAULT_COMPRESSION );
+    }
+
+    /**
+     * @param level the deflate level, from 0 to 9, or -1 for the default level.
+     * @since 3.0.1
+     */
+    public static OutputStream createOutputStream( OutputStream out, int threads, int level )
+        throws IOException
+    {
+        return createOutputStream( out, threads, new CompressionProfile( level, Deflater.DEFAULT_STRATEGY, 0, 0 ) );
+    }
+
+    /**
+     * Returns a gzip stream, which deflates with the level, the strategy and the buffer size of
+     * the profile. The output buffer size is up to the caller.
+     *
+     * @since 3.0.1
+     */
+    public static OutputStream createOutputStream( OutputStream out, int threads, CompressionProfile profile )
+        throws IOException
+    {
+        if ( threads > 1 && Java7Reflector.isAtLeastJava7() )
+        {
+            final ParallelGZipOutputStream gzip = new ParallelGZipOutputStream(
+                out, threads, profile.getLevel(), ParallelGZipOutputStream.DEFAULT_BLOCK_SIZE );
+            gzip.setStrategy( profile.getStrategy() );
+            return gzip;
+        }
+        final LevelGZIPOutputStream gzip =
+            new LevelGZIPOutputStream( out, profile.getBufferSize( DEFLATED_BUFFER_SIZE ) );
+        gzip.setLevel( profile.getLevel() );
+        gzip.setStrategy( profile.getStrategy() );
+        return gzip;
+    }
+
+    /**
+     * Changes the deflate level of a stream, which has been created by
+     * {@link #createOutputStream(OutputStream, int, int)}, for the data written next.
+     *
+     * @return whether the level of the stream has been changed.
+     * @since 3.0.1
+     */
+    public static boolean setLevel( OutputStream gzip, int level )
+    {
+        if ( gzip instanceof LevelGZIPOutputStream )
+        {
+            ( (LevelGZIPOutputStream) gzip ).setLevel( level );
+            return true;
+        }
+        if ( gzip instanceof ParallelGZipOutputStream )
+        {
+            ( (ParallelGZipOutputStream) gzip ).setLevel( level );
+            return true;
+        }
+        return false;
+    }
 
     /**
      * perform the GZip compression operation.
@@ -42,7 +138,7 @@ public void compress()
     {
         try
         {
-            zOut = new GZIPOutputStream( Streams.bufferedOutputStream( new FileOutputStream( getDestFile() ) ));
+            zOut = createOutputStream( destFileOutputStream(), threads, getProfile() );
             compress( getSource(), zOut );
         }
         catch ( IOException ioe )
@@ -57,4 +153,24 @@ public void close()
         IOUtil.close( zOut );
         zOut = null;
     }
+
+    private static class LevelGZIPOutputStream
+        extends GZIPOutputStream
+    {
+        LevelGZIPOutputStream( OutputStream out, int bufferSize )
+            throws IOException
+        {
+            super( out, bufferSize );
+        }
+
+        void setLevel( int level )
+        {
+            def.setLevel( level );
+        }
+
+        void setStrategy( int strategy )
+        {
+            def.setStrategy( strategy );
+        }
+    }
 }
@@ -0,0 +1,598 @@
+package org.codehaus.plexus.archiver.gzip;
+
+/*
+ * Copyright 2014 The Codehaus Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Checkpoints of a gzip file, at which decompression may be started, so data far into the
+ * file can be read without decompressing everything before it.
+ * <p/>
+ * {@link Inflater} can't resume a deflate stream in the middle, so checkpoints are the starts
+ * of gzip members. A file written as a single member, like by the gzip command, has only
+ * the checkpoint at its start. Files written as a sequence of members, like by
+ * <code>pigz --independent</code> or <code>bgzip</code>, get a checkpoint at the first
+ * member after every interval of uncompressed data. The checkpoints may be recorded while
+ * the file is read anyway, by a {@link RecordingInputStream}.
+ *
+ * @since 3.0.1
+ */
+public class GZipIndex
+{
+    private static final int MAGIC = 0x475a4958;
+
+    private static final int FEXTRA = 4;
+
+    private static final int FNAME = 8;
+
+    private static final int FCOMMENT = 16;
+
+    private static final int FHCRC = 2;
+
+    private final long fileLength;
+
+    private final long fileLastModified;
+
+    // pairs of compressed and uncompressed offsets, ascending
+    private final long[] compressedOffsets;
+
+    private final long[] uncompressedOffsets;
+
+    private GZipIndex( long fileLength, long fileLastModified, long[] compressedOffsets, long[] uncompressedOffsets )
+    {
+        this.fileLength = fileLength;
+        this.fileLastModified = fileLastModified;
+        this.compressedOffsets = compressedOffsets;
+        this.uncompressedOffsets = uncompressedOffsets;
+    }
+
+    /**
+     * Decompresses the file once, recording checkpoints.
+     *
+     * @param interval the minimum number of uncompressed bytes between checkpoints.
+     */
+    public static GZipIndex build( File file, long interval )
+        throws IOException
+    {
+        final long length = file.length();
+        final long lastModified = file.lastModified();
+        final MemberReader reader = new MemberReader( new FileInputStream( file ) );
+        try
+        {
+            long[] compressed = new long[16];
+            long[] uncompressed = new long[16];
+            int count = 0;
+            long total = 0;
+            while ( reader.readHeader( count == 0 ) )
+            {
+                if ( count == 0 || total - uncompressed[count - 1] >= interval )
+                {
+                    if ( count == compressed.length )
+                    {
+                        compressed = grow( compressed );
+                        uncompressed = grow( uncompressed );
+                    }
+                    compressed[count] = reader.memberStart;
+                    uncompressed[count] = total;
+                    count++;
+                }
+                total += reader.inflateMember();
+            }
+            final long[] c = new long[count];
+            final long[] u = new long[count];
+            System.arraycopy( compressed, 0, c, 0, count );
+            System.arraycopy( uncompressed, 0, u, 0, count );
+            return new GZipIndex( length, lastModified, c, u );
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    private static long[] grow( long[] array )
+    {
+        final long[] grown = new long[array.length * 2];
+        System.arraycopy( array, 0, grown, 0, array.length );
+        return grown;
+    }
+
+    /**
+     * Reads an index, written by {@link #save(File)}.
+     *
+     * @return the index, or null, if it can't be read, or if it has been built for another
+     *         version of the gzip file.
+     */
+    public static GZipIndex load( File indexFile, File file )
+    {
+        if ( !indexFile.isFile() )
+        {
+            return null;
+        }
+        DataInputStream in = null;
+        try
+        {
+            in = new DataInputStream( new BufferedInputStream( new FileInputStream( indexFile ) ) );
+            if ( in.readInt() != MAGIC )
+            {
+                return null;
+            }
+            final long length = in.readLong();
+            final long lastModified = in.readLong();
+            if ( length != file.length() || lastModified != file.lastModified() )
+            {
+                return null;
+            }
+            final int count = in.readInt();
+            final long[] compressed = new long[count];
+            final long[] uncompressed = new long[count];
+            for ( int i = 0; i < count; i++ )
+            {
+                compressed[i] = in.readLong();
+                uncompressed[i] = in.readLong();
+            }
+            return new GZipIndex( length, lastModified, compressed, uncompressed );
+        }
+        catch ( IOException e )
+        {
+            return null;
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+    }
+
+    public void save( File indexFile )
+        throws IOException
+    {
+        final File temp = new File( indexFile.getPath() + ".tmp" );
+        final DataOutputStream out =
+            new DataOutputStream( new BufferedOutputStream( new FileOutputStream( temp ) ) );
+        try
+        {
+            out.writeInt( MAGIC );
+            out.writeLong( fileLength );
+            out.writeLong( fileLastModified );
+            out.writeInt( compressedOffsets.length );
+            for ( int i = 0; i < compressedOffsets.length; i++ )
+            {
+                out.writeLong( compressedOffsets[i] );
+                out.writeLong( uncompressedOffsets[i] );
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+        if ( !temp.renameTo( indexFile ) && !( indexFile.delete() && temp.renameTo( indexFile ) ) )
+        {
+            temp.delete();
+            throw new IOException( "Unable to write " + indexFile );
+        }
+    }
+
+    /**
+     * @return the number of checkpoints.
+     */
+    public int size()
+    {
+        return compressedOffsets.length;
+    }
+
+    /**
+     * Returns the uncompressed data of the file, starting at the given position. Decompression
+     * starts at the nearest checkpoint before the position.
+     */
+    public InputStream getInputStream( File file, long position )
+        throws IOException
+    {
+        int low = 0;
+        int high = uncompressedOffsets.length - 1;
+        while ( low < high )
+        {
+            final int mid = ( low + high + 1 ) >>> 1;
+            if ( uncompressedOffsets[mid] <= position )
+            {
+                low = mid;
+            }
+            else
+            {
+                high = mid - 1;
+            }
+        }
+        final FileInputStream fis = new FileInputStream( file );
+        final InputStream in;
+        try
+        {
+            fis.getChannel().position( compressedOffsets[low] );
+            in = new GZIPInputStream( new BufferedInputStream( fis ) );
+        }
+        catch ( IOException e )
+        {
+            fis.close();
+            throw e;
+        }
+        long remaining = position - uncompressedOffsets[low];
+        try
+        {
+            while ( remaining > 0 )
+            {
+                final long skipped = in.skip( remaining );
+                if ( skipped <= 0 )
+                {
+                    throw new EOFException( "Position " + position + " is beyond the end of " + file );
+                }
+                remaining -= skipped;
+            }
+        }
+        catch ( IOException e )
+        {
+            in.close();
+            throw e;
+        }
+        return in;
+    }
+
+    /**
+     * Decompresses a gzip file like {@link GZIPInputStream}, and records the checkpoints of the
+     * data read so far.
+     */
+    public static class RecordingInputStream
+        extends InputStream
+    {
+        private final File file;
+
+        private final long interval;
+
+        private final MemberReader reader;
+
+        private long[] compressed = new long[16];
+
+        private long[] uncompressed = new long[16];
+
+        private int count;
+
+        private long total;
+
+        private boolean inMember;
+
+        private boolean complete;
+
+        /**
+         * @param interval the minimum number of uncompressed bytes between checkpoints.
+         */
+        public RecordingInputStream( File file, long interval )
+            throws IOException
+        {
+            this.file = file;
+            this.interval = interval;
+            this.reader = new MemberReader( new FileInputStream( file ) );
+        }
+
+        public int read()
+            throws IOException
+        {
+            final byte[] b = new byte[1];
+            return read( b, 0, 1 ) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        public int read( byte[] b, int off, int len )
+            throws IOException
+        {
+            if ( len == 0 )
+            {
+                return 0;
+            }
+            for ( ;; )
+            {
+                if ( complete )
+                {
+                    return -1;
+                }
+                if ( !inMember )
+                {
+                    if ( !reader.readHeader( count == 0 ) )
+                    {
+                        complete = true;
+                        return -1;
+                    }
+                    if ( count == 0 || total - uncompressed[count - 1] >= interval )
+                    {
+                        if ( count == compressed.length )
+                        {
+                            compressed = grow( compressed );
+                            uncompressed = grow( uncompressed );
+                        }
+                        compressed[count] = reader.memberStart;
+                        uncompressed[count] = total;
+                        count++;
+                    }
+                    reader.startMember();
+                    inMember = true;
+                }
+                final int n = reader.inflate( b, off, len );
+                if ( n == -1 )
+                {
+                    inMember = false;
+                }
+                else if ( n > 0 )
+                {
+                    total += n;
+                    return n;
+                }
+            }
+        }
+
+        /**
+         * @return whether the whole file has been read, so the {@link #getIndex() index} has
+         *         all checkpoints.
+         */
+        public boolean isComplete()
+        {
+            return complete;
+        }
+
+        /**
+         * @return the checkpoints of the data, which has been read so far.
+         */
+        public GZipIndex getIndex()
+        {
+            final long[] c = new long[count];
+            final long[] u = new long[count];
+            System.arraycopy( compressed, 0, c, 0, count );
+            System.arraycopy( uncompressed, 0, u, 0, count );
+            return new GZipIndex( file.length(), file.lastModified(), c, u );
+        }
+
+        public void close()
+            throws IOException
+        {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads the members of a gzip file, keeping track of their positions.
+     */
+    private static class MemberReader
+    {
+        private final InputStream in;
+
+        private final byte[] buffer = new byte[64 * 1024];
+
+        private final byte[] output = new byte[64 * 1024];
+
+        private final Inflater inflater = new Inflater( true );
+
+        private final CRC32 crc = new CRC32();
+
+        // the number of uncompressed bytes of the current member
+        private long memberSize;
+
+        // the file position of buffer[0]
+        private long bufferStart;
+
+        private int pos;
+
+        private int limit;
+
+        private long memberStart;
+
+        MemberReader( InputStream in )
+        {
+            this.in = in;
+        }
+
+        private boolean fill()
+            throws IOException
+        {
+            if ( pos < limit )
+            {
+                return true;
+            }
+            bufferStart += limit;
+            pos = 0;
+            limit = 0;
+            final int n = in.read( buffer );
+            if ( n <= 0 )
+            {
+                return false;
+            }
+            limit = n;
+            return true;
+        }
+
+        private int read()
+            throws IOException
+        {
+            return fill() ? buffer[pos++] & 0xff : -1;
+        }
+
+        private int readRequired()
+            throws IOException
+        {
+            final int b = read();
+            if ( b == -1 )
+            {
+                throw new EOFException( "Truncated gzip member" );
+            }
+            return b;
+        }
+
+        /**
+         * @param first whether this is the first member, which must exist.
+         * @return false at the end of the file. Trailing garbage is ignored, like
+         *         {@link GZIPInputStream} does.
+         */
+        boolean readHeader( boolean first )
+            throws IOException
+        {
+            if ( !fill() )
+            {
+                if ( first )
+                {
+                    throw new EOFException( "Empty gzip file" );
+                }
+                return false;
+            }
+            memberStart = bufferStart + pos;
+            if ( read() != 0x1f || read() != 0x8b || read() != 8 )
+            {
+                if ( first )
+                {
+                    throw new IOException( "Not in gzip format" );
+                }
+                return false;
+            }
+            final int flags = readRequired();
+            for ( int i = 0; i < 6; i++ )
+            {
+                readRequired();
+            }
+            if ( ( flags & FEXTRA ) != 0 )
+            {
+                final int length = readRequired() | ( readRequired() << 8 );
+                for ( int i = 0; i < length; i++ )
+                {
+                    readRequired();
+                }
+            }
+            if ( ( flags & FNAME ) != 0 )
+            {
+                while ( readRequired() != 0 )
+                {
+                    // Skip the file name
+                }
+            }
+            if ( ( flags & FCOMMENT ) != 0 )
+            {
+                while ( readRequired() != 0 )
+                {
+                    // Skip the comment
+                }
+            }
+            if ( ( flags & FHCRC ) != 0 )
+            {
+                readRequired();
+                readRequired();
+            }
+            return true;
+        }
+
+        /**
+         * Inflates the data of the current member, and checks its trailer.
+         *
+         * @return the number of uncompressed bytes.
+         */
+        long inflateMember()
+            throws IOException
+        {
+            startMember();
+            long total = 0;
+            int n;
+            while ( ( n = inflate( output, 0, output.length ) ) != -1 )
+            {
+                total += n;
+            }
+            return total;
+        }
+
+        void startMember()
+        {
+            inflater.reset();
+            crc.reset();
+            memberSize = 0;
+        }
+
+        /**
+         * Inflates data of the current member.
+         *
+         * @return the number of uncompressed bytes, which may be 0, or -1 at the end of the
+         *         member, once its trailer has been checked.
+         */
+        int inflate( byte[] b, int off, int len )
+            throws IOException
+        {
+            if ( inflater.finished() )
+            {
+                return -1;
+            }
+            int n;
+            try
+            {
+                if ( inflater.needsInput() )
+                {
+                    if ( !fill() )
+                    {
+                        throw new EOFException( "Truncated gzip member" );
+                    }
+                    inflater.setInput( buffer, pos, limit - pos );
+                    pos = limit;
+                }
+                n = inflater.inflate( b, off, len );
+                if ( n == 0 && inflater.needsDictionary() )
+                {
+                    throw new IOException( "Invalid gzip member" );
+                }
+            }
+            catch ( DataFormatException e )
+            {
+                throw new IOException( "Invalid gzip member: " + e.getMessage(), e );
+            }
+            crc.update( b, off, n );
+            memberSize += n;
+            if ( inflater.finished() )
+            {
+                pos = limit - inflater.getRemaining();
+                if ( readInt() != (int) crc.getValue() || readInt() != (int) memberSize )
+                {
+                    throw new IOException( "Corrupt gzip trailer" );
+                }
+            }
+            return n;
+        }
+
+        private int readInt()
+            throws IOException
+        {
+            return readRequired() | ( readRequired() << 8 ) | ( readRequired() << 16 ) | ( readRequired() << 24 );
+        }
+
+        void close()
+            throws IOException
+        {
+            inflater.end();
+            in.close();
+        }
+    }
+}
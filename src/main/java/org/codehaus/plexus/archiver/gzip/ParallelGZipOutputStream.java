@@ -0,0 +1,313 @@
+package org.codehaus.plexus.archiver.gzip;
+
+/*
+ * Copyright 2014 The Codehaus Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.codehaus.plexus.archiver.ArchiverException;
+
+/**
+ * A gzip output stream, which deflates blocks of its input on several threads. Every block is
+ * deflated independently, using the end of the previous block as the dictionary, and ends
+ * with a sync flush, so the compressed blocks concatenate to a single deflate stream. The
+ * output is a single, standard gzip member, with a compression ratio close to that of
+ * {@link java.util.zip.GZIPOutputStream}.
+ * <p/>
+ * Requires Java 7, for sync flushing a {@link Deflater}.
+ *
+ * @since 3.0.1
+ */
+public class ParallelGZipOutputStream
+    extends OutputStream
+{
+    /**
+     * The default size of the blocks, which are deflated concurrently.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    private static final byte[] HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+    private final OutputStream out;
+
+    private final ExecutorService executor;
+
+    private final int maxPending;
+
+    private int level;
+
+    private int strategy = Deflater.DEFAULT_STRATEGY;
+
+    private final int blockSize;
+
+    // blocks being deflated, in the order of the input
+    private final LinkedList<Future<byte[]>> pending = new LinkedList<Future<byte[]>>();
+
+    private final CRC32 crc = new CRC32();
+
+    private long size;
+
+    private byte[] block;
+
+    private int blockLength;
+
+    private byte[] previousBlock;
+
+    private int previousBlockLength;
+
+    private boolean closed;
+
+    public ParallelGZipOutputStream( OutputStream out, int threads )
+        throws IOException
+    {
+        this( out, threads, Deflater.DEFAULT_COMPRESSION, DEFAULT_BLOCK_SIZE );
+    }
+
+    /**
+     * @param threads   the number of threads, which deflate blocks.
+     * @param level     the compression level, see {@link Deflater#setLevel(int)}.
+     * @param blockSize the number of input bytes, which are deflated as one block.
+     */
+    public ParallelGZipOutputStream( OutputStream out, int threads, int level, int blockSize )
+        throws IOException
+    {
+        if ( threads < 1 )
+        {
+            throw new IllegalArgumentException( "At least one thread is required: " + threads );
+        }
+        if ( blockSize < DICTIONARY_SIZE )
+        {
+            throw new IllegalArgumentException( "The block size must be at least " + DICTIONARY_SIZE );
+        }
+        this.out = out;
+        this.level = level;
+        this.blockSize = blockSize;
+        this.maxPending = threads * 2;
+        this.executor = Executors.newFixedThreadPool( threads );
+        this.block = new byte[blockSize];
+        out.write( HEADER );
+    }
+
+    /**
+     * Changes the compression level of the blocks, which are submitted from now on.
+     *
+     * @param level the compression level, see {@link Deflater#setLevel(int)}.
+     */
+    public void setLevel( int level )
+    {
+        if ( ( level < 0 || level > 9 ) && level != Deflater.DEFAULT_COMPRESSION )
+        {
+            throw new IllegalArgumentException( "Invalid deflate level: " + level );
+        }
+        this.level = level;
+    }
+
+    /**
+     * Changes the deflate strategy of the blocks, which are submitted from now on.
+     *
+     * @param strategy the strategy, see {@link Deflater#setStrategy(int)}.
+     */
+    public void setStrategy( int strategy )
+    {
+        this.strategy = strategy;
+    }
+
+    public void write( int b )
+        throws IOException
+    {
+        write( new byte[]{ (byte) b }, 0, 1 );
+    }
+
+    public void write( byte[] b, int off, int len )
+        throws IOException
+    {
+        if ( closed )
+        {
+            throw new IOException( "Stream closed" );
+        }
+        crc.update( b, off, len );
+        size += len;
+        while ( len > 0 )
+        {
+            final int n = Math.min( len, blockSize - blockLength );
+            System.arraycopy( b, off, block, blockLength, n );
+            blockLength += n;
+            off += n;
+            len -= n;
+            if ( blockLength == blockSize )
+            {
+                submit( false );
+            }
+        }
+    }
+
+    /**
+     * Writes the completely deflated blocks. Blocks, which are being deflated, are kept, as a
+     * sync flush would end them early.
+     */
+    public void flush()
+        throws IOException
+    {
+        while ( !pending.isEmpty() && pending.getFirst().isDone() )
+        {
+            out.write( get( pending.removeFirst() ) );
+        }
+        out.flush();
+    }
+
+    public void close()
+        throws IOException
+    {
+        if ( closed )
+        {
+            return;
+        }
+        try
+        {
+            submit( true );
+            while ( !pending.isEmpty() )
+            {
+                out.write( get( pending.removeFirst() ) );
+            }
+            writeInt( (int) crc.getValue() );
+            writeInt( (int) size );
+        }
+        finally
+        {
+            closed = true;
+            executor.shutdownNow();
+            out.close();
+        }
+    }
+
+    private void writeInt( int value )
+        throws IOException
+    {
+        out.write( value & 0xff );
+        out.write( ( value >>> 8 ) & 0xff );
+        out.write( ( value >>> 16 ) & 0xff );
+        out.write( ( value >>> 24 ) & 0xff );
+    }
+
+    private void submit( final boolean last )
+        throws IOException
+    {
+        final byte[] data = block;
+        final int length = blockLength;
+        final byte[] dictionary = previousBlock;
+        final int dictionaryLength = previousBlockLength;
+        final int blockLevel = level;
+        final int blockStrategy = strategy;
+        pending.add( executor.submit( new Callable<byte[]>()
+        {
+            public byte[] call()
+            {
+                return deflate( data, length, dictionary, dictionaryLength, blockLevel, blockStrategy, last );
+            }
+        } ) );
+        // The submitted block is the next one's dictionary, so it isn't reused
+        previousBlock = data;
+        previousBlockLength = length;
+        block = new byte[blockSize];
+        blockLength = 0;
+
+        while ( pending.size() > maxPending )
+        {
+            out.write( get( pending.removeFirst() ) );
+        }
+    }
+
+    private byte[] deflate( byte[] data, int length, byte[] dictionary, int dictionaryLength, int level,
+                            int strategy, boolean last )
+    {
+        final Deflater deflater = new Deflater( level, true );
+        try
+        {
+            deflater.setStrategy( strategy );
+            if ( dictionary != null )
+            {
+                final int n = Math.min( DICTIONARY_SIZE, dictionaryLength );
+                deflater.setDictionary( dictionary, dictionaryLength - n, n );
+            }
+            deflater.setInput( data, 0, length );
+            final ByteArrayOutputStream result = new ByteArrayOutputStream( length / 2 + 64 );
+            final byte[] buffer = new byte[16 * 1024];
+            if ( last )
+            {
+                deflater.finish();
+                while ( !deflater.finished() )
+                {
+                    result.write( buffer, 0, deflater.deflate( buffer ) );
+                }
+            }
+            else
+            {
+                int n;
+                do
+                {
+                    n = deflater.deflate( buffer, 0, buffer.length, Deflater.SYNC_FLUSH );
+                    result.write( buffer, 0, n );
+                }
+                while ( n == buffer.length || !deflater.needsInput() );
+            }
+            return result.toByteArray();
+        }
+        finally
+        {
+            deflater.end();
+        }
+    }
+
+    private static byte[] get( Future<byte[]> future )
+        throws IOException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException( "Interrupted while compressing" );
+        }
+        catch ( ExecutionException e )
+        {
+            final Throwable cause = e.getCause();
+            if ( cause instanceof RuntimeException )
+            {
+                throw (RuntimeException) cause;
+            }
+            if ( cause instanceof Error )
+            {
+                throw (Error) cause;
+            }
+            throw new ArchiverException( cause.getMessage(), cause );
+        }
+    }
+}
@@ -19,13 +19,13 @@
 
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.parallel.InputStreamSupplier;
 import org.codehaus.plexus.archiver.ArchiverException;
 import org.codehaus.plexus.archiver.zip.ZipArchiver;
 import org.codehaus.plexus.logging.Logger;
 import org.codehaus.plexus.logging.console.ConsoleLogger;
 import org.codehaus.plexus.util.IOUtil;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -44,7 +44,6 @@
 import java.util.SortedMap;
 import java.util.StringTokenizer;
 import java.util.TreeMap;
-import java.util.Vector;
 
 import static org.codehaus.plexus.archiver.util.Streams.bufferedOutputStream;
 import static org.codehaus.plexus.archiver.util.Streams.fileOutputStream;
@@ -130,15 +129,6 @@
      */
     private boolean createEmpty = false;
 
-    /**
-     * Stores all files that are in the root of the archive (i.e. that
-     * have a name that doesn't contain a slash) so they can get
-     * listed in the index.
-     * <p/>
-     * Will not be filled unless the user has asked for an index.
-     */
-    private Vector<String> rootEntries;
-
     /**
      * Path containing jars that shall be indexed in addition to this archive.
      */
@@ -152,7 +142,6 @@ public JarArchiver()
         super();
         archiveType = "jar";
         setEncoding( "UTF8" );
-        rootEntries = new Vector<String>();
     }
 
     /**
@@ -347,8 +336,8 @@ private void writeManifest( ZipArchiveOutputStream zOut, Manifest manifest )
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         manifest.write( baos );
 
-        ByteArrayInputStream bais = new ByteArrayInputStream( baos.toByteArray() );
-        super.zipFile( bais, zOut, MANIFEST_NAME, System.currentTimeMillis(), null, DEFAULT_FILE_MODE, null );
+        super.zipFile( createInputStreamSupplier( baos.toByteArray() ), zOut, MANIFEST_NAME,
+                       System.currentTimeMillis(), null, DEFAULT_FILE_MODE, null, true );
         super.initZipOutputStream( zOut );
     }
 
@@ -389,12 +378,12 @@ private void createIndexList( ZipArchiveOutputStream zOut )
 
         // filter out META-INF if it doesn't contain anything other than the index and manifest.
         // this is what sun.misc.JarIndex does, guess we ought to be consistent.
-        Set<String> filteredDirs = new HashSet<String>( addedDirs.keySet() );
+        Set<String> filteredDirs = new HashSet<String>( getAddedDirIndex().getPaths() );
         // our added dirs always have a trailing slash
         if ( filteredDirs.contains( META_INF_NAME + '/' ) )
         {
             boolean add = false;
-            for ( String entry : entries.keySet() )
+            for ( String entry : getEntryIndex().getPaths() )
             {
                 if ( entry.startsWith( META_INF_NAME + '/' ) && !entry.equals( INDEX_NAME ) && !entry.equals(
                     MANIFEST_NAME ) )
@@ -408,7 +397,8 @@ private void createIndexList( ZipArchiveOutputStream zOut )
                 filteredDirs.remove( META_INF_NAME + '/' );
             }
         }
-        writeIndexLikeList( new ArrayList<String>( filteredDirs ), rootEntries, writer );
+        // files in the root of the archive, i.e. with a name that doesn't contain a slash
+        writeIndexLikeList( new ArrayList<String>( filteredDirs ), getEntryIndex().getRootFiles(), writer );
         writer.println();
 
         if ( indexJars != null )
@@ -447,23 +437,30 @@ private void createIndexList( ZipArchiveOutputStream zOut )
 
         writer.flush();
 
-        ByteArrayInputStream bais = new ByteArrayInputStream( baos.toByteArray() );
-
-        super.zipFile( bais, zOut, INDEX_NAME, System.currentTimeMillis(), null, DEFAULT_FILE_MODE, null );
+        super.zipFile( createInputStreamSupplier( baos.toByteArray() ), zOut, INDEX_NAME, System.currentTimeMillis(),
+                       null, DEFAULT_FILE_MODE, null, true );
     }
 
     /**
      * Overridden from Zip class to deal with manifests and index lists.
      */
-    protected void zipFile( InputStream is, ZipArchiveOutputStream zOut, String vPath, long lastModified, File fromArchive,
-                            int mode, String symlinkDestination )
+    protected void zipFile( InputStreamSupplier is, ZipArchiveOutputStream zOut, String vPath, long lastModified,
+                            File fromArchive, int mode, String symlinkDestination, boolean addInParallel )
         throws IOException, ArchiverException
     {
         if ( MANIFEST_NAME.equalsIgnoreCase( vPath ) )
         {
             if ( !doubleFilePass || skipWriting )
             {
-                filesetManifest( fromArchive, is );
+                InputStream manifestInputStream = is.get();
+                try
+                {
+                    filesetManifest( fromArchive, manifestInputStream );
+                }
+                finally
+                {
+                    IOUtil.close( manifestInputStream );
+                }
             }
         }
         else if ( INDEX_NAME.equalsIgnoreCase( vPath ) && index )
@@ -473,11 +470,7 @@ else if ( INDEX_NAME.equalsIgnoreCase( vPath ) && index )
         }
         else
         {
-            if ( index && ( !vPath.contains( "/" ) ) )
-            {
-                rootEntries.addElement( vPath );
-            }
-            super.zipFile( is, zOut, vPath, lastModified, fromArchive, mode, symlinkDestination );
+            super.zipFile( is, zOut, vPath, lastModified, fromArchive, mode, symlinkDestination, addInParallel );
         }
     }
 
@@ -584,7 +577,6 @@ protected void cleanUp()
             filesetManifest = null;
             originalManifest = null;
         }
-        rootEntries.removeAllElements();
     }
 
     /**
@@ -101,7 +101,7 @@ public void contextualize( Context context )
         
         String archiveExt = FileUtils.getExtension( path ).toLowerCase( Locale.ENGLISH );
         
-        if ( "gz".equals( archiveExt ) || "bz2".equals( archiveExt ) )
+        if ( "gz".equals( archiveExt ) || "bz2".equals( archiveExt ) || "xz".equals( archiveExt ) )
         {
             String [] tokens = StringUtils.split( path, "." );
             
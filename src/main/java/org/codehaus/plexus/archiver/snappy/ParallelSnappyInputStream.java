@@ -0,0 +1,261 @@
+package org.codehaus.plexus.archiver.snappy;
+
+/*
+ * Copyright 2014 The Codehaus Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.xerial.snappy.Snappy;
+import org.xerial.snappy.SnappyInputStream;
+
+/**
+ * A snappy input stream, which decompresses ahead of the reader, on background threads. The
+ * blocks of the framing of {@link org.xerial.snappy.SnappyOutputStream}, and of
+ * {@link ParallelSnappyOutputStream}, are compressed independently; the reading thread only
+ * splits the input at the block boundaries, and batches of blocks are decompressed
+ * concurrently. Concatenated streams are read as a whole. Input without the header, which is
+ * raw snappy data, is decompressed on the reading thread, as by {@link SnappyInputStream}.
+ *
+ * @since 3.0.1
+ */
+public class ParallelSnappyInputStream
+    extends InputStream
+{
+    private final DataInputStream in;
+
+    private final ExecutorService executor;
+
+    private final int maxPending;
+
+    // decompressed batches, in the order of the input
+    private final LinkedList<Future<byte[]>> pending = new LinkedList<Future<byte[]>>();
+
+    private boolean headerRead;
+
+    private boolean inputExhausted;
+
+    // decompresses input, which isn't framed
+    private InputStream sequential;
+
+    private byte[] current;
+
+    private int currentPos;
+
+    private boolean closed;
+
+    /**
+     * @param threads the number of threads, which decompress blocks. A single thread still
+     *                decompresses ahead of the reader.
+     */
+    public ParallelSnappyInputStream( InputStream in, int threads )
+    {
+        if ( threads < 1 )
+        {
+            throw new IllegalArgumentException( "At least one thread is required: " + threads );
+        }
+        this.in = new DataInputStream( in );
+        this.maxPending = threads * 2;
+        this.executor = Executors.newFixedThreadPool( threads );
+    }
+
+    public int read()
+        throws IOException
+    {
+        final byte[] b = new byte[1];
+        return read( b, 0, 1 ) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    public int read( byte[] b, int off, int len )
+        throws IOException
+    {
+        if ( closed )
+        {
+            throw new IOException( "Stream closed" );
+        }
+        if ( len == 0 )
+        {
+            return 0;
+        }
+        for ( ;; )
+        {
+            if ( current != null && currentPos < current.length )
+            {
+                final int n = Math.min( len, current.length - currentPos );
+                System.arraycopy( current, currentPos, b, off, n );
+                currentPos += n;
+                return n;
+            }
+            current = null;
+            fillPending();
+            if ( !pending.isEmpty() )
+            {
+                current = ParallelSnappyOutputStream.get( pending.removeFirst() );
+                currentPos = 0;
+                fillPending();
+            }
+            else
+            {
+                // Nothing is left to decompress concurrently
+                executor.shutdown();
+                if ( sequential != null )
+                {
+                    return sequential.read( b, off, len );
+                }
+                if ( inputExhausted )
+                {
+                    return -1;
+                }
+            }
+        }
+    }
+
+    public void close()
+        throws IOException
+    {
+        if ( closed )
+        {
+            return;
+        }
+        closed = true;
+        executor.shutdownNow();
+        pending.clear();
+        if ( sequential != null )
+        {
+            sequential.close();
+        }
+        in.close();
+    }
+
+    private void fillPending()
+        throws IOException
+    {
+        if ( !headerRead )
+        {
+            readHeader();
+        }
+        while ( pending.size() < maxPending && sequential == null && !inputExhausted )
+        {
+            readBatch();
+        }
+    }
+
+    private void readHeader()
+        throws IOException
+    {
+        headerRead = true;
+        final byte[] header = new byte[ParallelSnappyOutputStream.HEADER_LENGTH];
+        int length = 0;
+        while ( length < header.length )
+        {
+            final int n = in.read( header, length, header.length - length );
+            if ( n == -1 )
+            {
+                break;
+            }
+            length += n;
+        }
+        if ( length == 0 )
+        {
+            inputExhausted = true;
+        }
+        else if ( length < header.length || !isMagicHeader( header ) )
+        {
+            sequential =
+                new SnappyInputStream( new SequenceInputStream( new ByteArrayInputStream( header, 0, length ), in ) );
+        }
+    }
+
+    private static boolean isMagicHeader( byte[] header )
+    {
+        for ( int i = 0; i < ParallelSnappyOutputStream.MAGIC_HEADER.length; i++ )
+        {
+            if ( header[i] != ParallelSnappyOutputStream.MAGIC_HEADER[i] )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads compressed blocks, until a batch is complete, or the input is exhausted, and
+     * submits them for decompression.
+     */
+    private void readBatch()
+        throws IOException
+    {
+        final List<byte[]> blocks = new ArrayList<byte[]>();
+        int batchLength = 0;
+        while ( batchLength < ParallelSnappyOutputStream.BATCH_SIZE )
+        {
+            final int first = in.read();
+            if ( first == -1 )
+            {
+                inputExhausted = true;
+                break;
+            }
+            if ( first == ( ParallelSnappyOutputStream.MAGIC_HEADER[0] & 0xff ) )
+            {
+                // The header of a concatenated stream, as a block length would be negative
+                in.readFully( new byte[ParallelSnappyOutputStream.HEADER_LENGTH - 1] );
+                continue;
+            }
+            final int length = ( first << 24 ) | ( in.readUnsignedByte() << 16 ) | in.readUnsignedShort();
+            if ( length < 0 )
+            {
+                throw new IOException( "Invalid snappy block length: " + length );
+            }
+            final byte[] block = new byte[length];
+            in.readFully( block );
+            blocks.add( block );
+            // The uncompressed length starts the block, and bounds the memory of a batch
+            batchLength += Snappy.uncompressedLength( block );
+        }
+        if ( !blocks.isEmpty() )
+        {
+            submit( blocks, batchLength );
+        }
+    }
+
+    private void submit( final List<byte[]> blocks, final int uncompressedLength )
+    {
+        pending.add( executor.submit( new Callable<byte[]>()
+        {
+            public byte[] call()
+                throws IOException
+            {
+                final byte[] result = new byte[uncompressedLength];
+                int off = 0;
+                for ( byte[] block : blocks )
+                {
+                    off += Snappy.uncompress( block, 0, block.length, result, off );
+                }
+                return result;
+            }
+        } ) );
+    }
+}
@@ -0,0 +1,259 @@
+package org.codehaus.plexus.archiver.snappy;
+
+/*
+ * Copyright 2014 The Codehaus Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.codehaus.plexus.archiver.ArchiverException;
+import org.xerial.snappy.Snappy;
+import org.xerial.snappy.SnappyOutputStream;
+
+/**
+ * A snappy output stream, which compresses its input on several threads. The output has the
+ * framing of {@link SnappyOutputStream}: a header, followed by blocks of 32k by default, each
+ * of which is compressed independently and prefixed with its compressed length. Batches of
+ * blocks are compressed concurrently, and written in order, so the output is read by
+ * {@link org.xerial.snappy.SnappyInputStream}, as well as by {@link ParallelSnappyInputStream}.
+ *
+ * @since 3.0.1
+ */
+public class ParallelSnappyOutputStream
+    extends OutputStream
+{
+    // the header of SnappyCodec: a magic number, the format version and the compatible version
+    static final byte[] MAGIC_HEADER = { (byte) 0x82, 'S', 'N', 'A', 'P', 'P', 'Y', 0 };
+
+    static final int HEADER_LENGTH = MAGIC_HEADER.length + 8;
+
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * The default size of the blocks, which are compressed independently, like by
+     * {@link SnappyOutputStream}.
+     */
+    public static final int BLOCK_SIZE = 32 * 1024;
+
+    /**
+     * The number of uncompressed bytes of the batches of blocks, which are compressed by a
+     * single task, with the default block size.
+     */
+    public static final int BATCH_SIZE = 32 * BLOCK_SIZE;
+
+    private static final int BLOCKS_PER_BATCH = BATCH_SIZE / BLOCK_SIZE;
+
+    private final OutputStream out;
+
+    private final ExecutorService executor;
+
+    private final int maxPending;
+
+    // batches being compressed, in the order of the input
+    private final LinkedList<Future<byte[]>> pending = new LinkedList<Future<byte[]>>();
+
+    private final int blockSize;
+
+    private final int batchSize;
+
+    private byte[] batch;
+
+    private int batchLength;
+
+    private boolean headerWritten;
+
+    private boolean closed;
+
+    public ParallelSnappyOutputStream( OutputStream out, int threads )
+    {
+        this( out, threads, BLOCK_SIZE );
+    }
+
+    /**
+     * @param threads   the number of threads, which compress blocks.
+     * @param blockSize the number of input bytes, which are compressed as one block.
+     */
+    public ParallelSnappyOutputStream( OutputStream out, int threads, int blockSize )
+    {
+        if ( threads < 1 )
+        {
+            throw new IllegalArgumentException( "At least one thread is required: " + threads );
+        }
+        if ( blockSize < 1 || blockSize > Integer.MAX_VALUE / BLOCKS_PER_BATCH )
+        {
+            throw new IllegalArgumentException( "Invalid block size: " + blockSize );
+        }
+        this.out = out;
+        this.blockSize = blockSize;
+        this.batchSize = blockSize * BLOCKS_PER_BATCH;
+        this.batch = new byte[batchSize];
+        this.maxPending = threads * 2;
+        this.executor = Executors.newFixedThreadPool( threads );
+    }
+
+    public void write( int b )
+        throws IOException
+    {
+        write( new byte[]{ (byte) b }, 0, 1 );
+    }
+
+    public void write( byte[] b, int off, int len )
+        throws IOException
+    {
+        if ( closed )
+        {
+            throw new IOException( "Stream closed" );
+        }
+        while ( len > 0 )
+        {
+            final int n = Math.min( len, batchSize - batchLength );
+            System.arraycopy( b, off, batch, batchLength, n );
+            batchLength += n;
+            off += n;
+            len -= n;
+            if ( batchLength == batchSize )
+            {
+                submit();
+            }
+        }
+    }
+
+    /**
+     * Writes the completely compressed batches. Batches, which are being compressed, are kept.
+     */
+    public void flush()
+        throws IOException
+    {
+        writeHeader();
+        while ( !pending.isEmpty() && pending.getFirst().isDone() )
+        {
+            out.write( get( pending.removeFirst() ) );
+        }
+        out.flush();
+    }
+
+    public void close()
+        throws IOException
+    {
+        if ( closed )
+        {
+            return;
+        }
+        try
+        {
+            if ( batchLength > 0 )
+            {
+                submit();
+            }
+            writeHeader();
+            while ( !pending.isEmpty() )
+            {
+                out.write( get( pending.removeFirst() ) );
+            }
+        }
+        finally
+        {
+            closed = true;
+            executor.shutdownNow();
+            out.close();
+        }
+    }
+
+    private void writeHeader()
+        throws IOException
+    {
+        if ( !headerWritten )
+        {
+            final DataOutputStream header = new DataOutputStream( out );
+            header.write( MAGIC_HEADER );
+            header.writeInt( FORMAT_VERSION );
+            header.writeInt( FORMAT_VERSION );
+            headerWritten = true;
+        }
+    }
+
+    private void submit()
+        throws IOException
+    {
+        final byte[] data = batch;
+        final int length = batchLength;
+        pending.add( executor.submit( new Callable<byte[]>()
+        {
+            public byte[] call()
+                throws IOException
+            {
+                final ByteArrayOutputStream result = new ByteArrayOutputStream( length / 2 + 64 );
+                final DataOutputStream framed = new DataOutputStream( result );
+                final byte[] compressed = new byte[Snappy.maxCompressedLength( blockSize )];
+                for ( int off = 0; off < length; off += blockSize )
+                {
+                    final int n = Snappy.compress( data, off, Math.min( blockSize, length - off ), compressed, 0 );
+                    framed.writeInt( n );
+                    framed.write( compressed, 0, n );
+                }
+                return result.toByteArray();
+            }
+        } ) );
+        batch = new byte[batchSize];
+        batchLength = 0;
+
+        writeHeader();
+        while ( pending.size() > maxPending )
+        {
+            out.write( get( pending.removeFirst() ) );
+        }
+    }
+
+    static byte[] get( Future<byte[]> future )
+        throws IOException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException( "Interrupted while waiting for snappy blocks" );
+        }
+        catch ( ExecutionException e )
+        {
+            final Throwable cause = e.getCause();
+            if ( cause instanceof IOException )
+            {
+                throw (IOException) cause;
+            }
+            if ( cause instanceof RuntimeException )
+            {
+                throw (RuntimeException) cause;
+            }
+            if ( cause instanceof Error )
+            {
+                throw (Error) cause;
+            }
+            throw new ArchiverException( cause.getMessage(), cause );
+        }
+    }
+}
@@ -1,6 +1,6 @@
 package org.codehaus.plexus.archiver.snappy;
 
-import org.codehaus.plexus.components.io.attributes.Java7FileAttributes;
+import org.codehaus.plexus.archiver.util.FileAttributesResolver;
 import org.codehaus.plexus.components.io.attributes.PlexusIoResourceAttributes;
 import org.codehaus.plexus.components.io.resources.PlexusIoCompressedFileResourceCollection;
 import org.codehaus.plexus.util.IOUtil;
@@ -11,7 +11,6 @@
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashMap;
 
 
 /**
@@ -40,7 +39,7 @@
 
 
 	@Override protected PlexusIoResourceAttributes getAttributes(File file) throws IOException {
-        return new Java7FileAttributes(file, new HashMap<Integer, String>(), new HashMap<Integer, String>());
+        return FileAttributesResolver.getShared().getAttributes( file );
 	}
 
 	protected String getDefaultExtension()
@@ -23,9 +23,7 @@
 import org.xerial.snappy.SnappyOutputStream;
 
 import java.io.IOException;
-
-import static org.codehaus.plexus.archiver.util.Streams.bufferedOutputStream;
-import static org.codehaus.plexus.archiver.util.Streams.fileOutputStream;
+import java.io.OutputStream;
 
 /**
  * Snappy compression
@@ -33,8 +31,29 @@
 public class SnappyCompressor
     extends Compressor
 {
-    private SnappyOutputStream zOut;
-    
+    private OutputStream zOut;
+
+    private int threads = 1;
+
+    /**
+     * Sets the number of threads, which compress blocks of the source concurrently,
+     * see {@link ParallelSnappyOutputStream}. Defaults to 1.
+     *
+     * @since 3.0.1
+     */
+    public void setThreads( int threads )
+    {
+        this.threads = threads;
+    }
+
+    /**
+     * @since 3.0.1
+     */
+    public int getThreads()
+    {
+        return threads;
+    }
+
     /**
      * perform the Snappy compression operation.
      */
@@ -43,7 +62,10 @@ public void compress()
     {
         try
         {
-            zOut = new SnappyOutputStream( bufferedOutputStream( fileOutputStream( getDestFile() ) ) );
+            final OutputStream out = destFileOutputStream();
+            final int blockSize = getProfile().getBufferSize( ParallelSnappyOutputStream.BLOCK_SIZE );
+            zOut = threads > 1 ? new ParallelSnappyOutputStream( out, threads, blockSize )
+                : new SnappyOutputStream( out, blockSize );
             compress( getSource(), zOut );
         }
         catch ( IOException ioe )
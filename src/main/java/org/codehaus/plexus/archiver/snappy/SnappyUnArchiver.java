@@ -40,6 +40,8 @@
 {
     private final static String OPERATION_SNAPPY = "snappy";
 
+    private int decompressionThreads = 1;
+
     public SnappyUnArchiver()
     {
     }
@@ -49,6 +51,25 @@ public SnappyUnArchiver(File sourceFile)
         super( sourceFile );
     }
 
+    /**
+     * Sets the number of threads, which decompress blocks ahead of writing the destination
+     * file, see {@link ParallelSnappyInputStream}. Defaults to 1.
+     *
+     * @since 3.0.1
+     */
+    public void setDecompressionThreads( int decompressionThreads )
+    {
+        this.decompressionThreads = decompressionThreads;
+    }
+
+    /**
+     * @since 3.0.1
+     */
+    public int getDecompressionThreads()
+    {
+        return decompressionThreads;
+    }
+
     protected void execute()
         throws ArchiverException
     {
@@ -57,7 +78,9 @@ protected void execute()
             getLogger().info(
                 "Expanding " + getSourceFile().getAbsolutePath() + " to " + getDestFile().getAbsolutePath() );
 
-            copyFully( getSnappyInputStream(bufferedInputStream(fileInputStream(getSourceFile(), OPERATION_SNAPPY))),
+            copyFully( new ParallelSnappyInputStream(
+                           bufferedInputStream( fileInputStream( getSourceFile(), OPERATION_SNAPPY ) ),
+                           decompressionThreads ),
                        bufferedOutputStream( fileOutputStream( getDestFile(), OPERATION_SNAPPY) ), OPERATION_SNAPPY);
         }
     }
@@ -20,6 +20,11 @@ public BZip2TarFile( File file )
         super( file );
     }
 
+    protected boolean isSeekable()
+    {
+        return false;
+    }
+
     protected InputStream getInputStream( File file )
         throws IOException
     {
@@ -5,23 +5,192 @@
 import java.io.InputStream;
 import java.util.zip.GZIPInputStream;
 
+import org.codehaus.plexus.archiver.gzip.GZipIndex;
+import org.codehaus.plexus.archiver.util.Streams;
+
 
 /**
  * Extension of {@link TarFile} for gzip compressed files.
  */
 public class GZipTarFile extends TarFile
 {
+    private final File file;
+
+    private boolean useIndex;
+
+    private long checkpointInterval = 4 * 1024 * 1024;
+
+    // the best index known, from the index file, or recorded while reading
+    private GZipIndex gzipIndex;
+
+    private boolean gzipIndexLoaded;
+
+    private boolean gzipIndexComplete;
+
+    private GZipIndex.RecordingInputStream recording;
+
     /**
      * Creates a new instance with the given file.
      */
     public GZipTarFile( File file )
     {
         super( file );
+        this.file = file;
+    }
+
+    /**
+     * Sets, whether entries, which have been passed already, are read by resuming
+     * decompression at the nearest {@link GZipIndex checkpoint}, rather than at the start of
+     * the file. The checkpoints are recorded, while the file is read. Only files, which
+     * consist of several gzip members, have checkpoints besides the start, so a file written
+     * by the gzip command is read as without the index. If the index is
+     * {@link #setPersistIndex(boolean) persisted}, the checkpoints of a file, which has been
+     * read completely, are written next to the archive, with the suffix
+     * <code>.gzindex</code>. Defaults to false.
+     *
+     * @since 3.0.1
+     */
+    public void setUseIndex( boolean useIndex )
+    {
+        this.useIndex = useIndex;
+    }
+
+    /**
+     * @since 3.0.1
+     */
+    public boolean isUseIndex()
+    {
+        return useIndex;
+    }
+
+    /**
+     * Sets the minimum number of uncompressed bytes between checkpoints. Defaults to 4 MB.
+     *
+     * @since 3.0.1
+     */
+    public void setCheckpointInterval( long checkpointInterval )
+    {
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * @since 3.0.1
+     */
+    public long getCheckpointInterval()
+    {
+        return checkpointInterval;
+    }
+
+    protected boolean isSeekable()
+    {
+        return false;
+    }
+
+    /**
+     * Returns true, if checkpoints other than the start of the file are known.
+     */
+    protected boolean isRandomAccess()
+    {
+        final GZipIndex index = getGZipIndex();
+        return index != null && index.size() > 1;
+    }
+
+    private File getGZipIndexFile()
+    {
+        return new File( file.getPath() + ".gzindex" );
+    }
+
+    private GZipIndex getGZipIndex()
+    {
+        if ( !useIndex )
+        {
+            return null;
+        }
+        if ( !gzipIndexLoaded )
+        {
+            gzipIndexLoaded = true;
+            if ( isPersistIndex() )
+            {
+                gzipIndex = GZipIndex.load( getGZipIndexFile(), file );
+                gzipIndexComplete = gzipIndex != null;
+            }
+        }
+        if ( recording != null )
+        {
+            final GZipIndex recorded = recording.getIndex();
+            if ( gzipIndex == null || recorded.size() > gzipIndex.size() )
+            {
+                gzipIndex = recorded;
+            }
+            if ( recording.isComplete() && !gzipIndexComplete )
+            {
+                gzipIndexComplete = true;
+                if ( isPersistIndex() )
+                {
+                    try
+                    {
+                        gzipIndex.save( getGZipIndexFile() );
+                    }
+                    catch ( IOException e )
+                    {
+                        // The index is optional, the archive's directory may not be writable
+                    }
+                }
+            }
+        }
+        return gzipIndex;
+    }
+
+    /**
+     * Reads the padding after the last entry, so the recorded checkpoints are complete.
+     */
+    protected void entriesCompleted()
+        throws IOException
+    {
+        if ( recording != null && !recording.isComplete() )
+        {
+            final byte[] buffer = Streams.borrowBuffer();
+            try
+            {
+                while ( recording.read( buffer ) != -1 )
+                {
+                    // The padding isn't needed
+                }
+            }
+            finally
+            {
+                Streams.returnBuffer( buffer );
+            }
+            getGZipIndex();
+        }
+    }
+
+    public void close()
+        throws IOException
+    {
+        super.close();
+        // Keeps, what has been recorded
+        getGZipIndex();
+        recording = null;
+    }
+
+    protected InputStream getInputStream( File file, long position )
+        throws IOException
+    {
+        return getGZipIndex().getInputStream( file, position );
     }
 
     protected InputStream getInputStream( File file )
         throws IOException
     {
+        // Loads the persisted checkpoints, or keeps those of the previous recording
+        getGZipIndex();
+        if ( useIndex && !gzipIndexComplete )
+        {
+            // Records the checkpoints, while the file is read anyway
+            recording = new GZipIndex.RecordingInputStream( file, checkpointInterval );
+            return recording;
+        }
         final InputStream inputStream = super.getInputStream( file );
         return new GZIPInputStream( inputStream )
         {
@@ -5,8 +5,23 @@
 public class PlexusIoTarGZipFileResourceCollection
     extends PlexusIoTarFileResourceCollection
 {
+    private boolean useIndex;
+
+    /**
+     * Sets, whether the contents of resources are read using a checkpoint index,
+     * see {@link GZipTarFile#setUseIndex(boolean)}. Defaults to false.
+     *
+     * @since 3.0.1
+     */
+    public void setUseIndex( boolean useIndex )
+    {
+        this.useIndex = useIndex;
+    }
+
     protected TarFile newTarFile( File file )
     {
-        return new GZipTarFile( file );
+        final GZipTarFile tarFile = new GZipTarFile( file );
+        tarFile.setUseIndex( useIndex );
+        return tarFile;
     }
 }
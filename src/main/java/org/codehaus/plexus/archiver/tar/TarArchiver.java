@@ -20,25 +20,46 @@
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorOutputStream;
+import org.apache.commons.compress.utils.CountingOutputStream;
 import org.codehaus.plexus.archiver.AbstractArchiver;
 import org.codehaus.plexus.archiver.ArchiveEntry;
 import org.codehaus.plexus.archiver.ArchiverException;
 import org.codehaus.plexus.archiver.ResourceIterator;
+import org.codehaus.plexus.archiver.bzip2.BZip2Compressor;
+import org.codehaus.plexus.archiver.bzip2.ParallelBZip2OutputStream;
+import org.codehaus.plexus.archiver.gzip.GZipCompressor;
+import org.codehaus.plexus.archiver.gzip.ParallelGZipOutputStream;
+import org.codehaus.plexus.archiver.snappy.ParallelSnappyOutputStream;
+import org.codehaus.plexus.archiver.util.CompressionGovernor;
+import org.codehaus.plexus.archiver.util.CompressionProfile;
+import org.codehaus.plexus.archiver.util.HardLinks;
 import org.codehaus.plexus.archiver.util.ResourceUtils;
 import org.codehaus.plexus.archiver.util.Streams;
+import org.codehaus.plexus.archiver.xz.XZCompressor;
+import org.codehaus.plexus.archiver.zip.DeferredScatterOutputStream;
 import org.codehaus.plexus.components.io.attributes.PlexusIoResourceAttributes;
 import org.codehaus.plexus.components.io.functions.SymlinkDestinationSupplier;
+import org.codehaus.plexus.components.io.resources.PlexusIoFileResource;
 import org.codehaus.plexus.components.io.resources.PlexusIoResource;
 import org.codehaus.plexus.util.IOUtil;
 import org.codehaus.plexus.util.StringUtils;
 import org.xerial.snappy.SnappyOutputStream;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.zip.GZIPOutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import static org.codehaus.plexus.archiver.util.Streams.bufferedOutputStream;
 
@@ -58,10 +79,35 @@
 
     private TarCompressionMethod compression = TarCompressionMethod.none;
 
+    private int compressionThreads = 1;
+
+    private int compressionLevel = -1;
+
+    private CompressionProfile compressionProfile = CompressionProfile.BALANCED;
+
+    private long targetThroughput;
+
+    private long timeBudget;
+
     private TarOptions options = new TarOptions();
 
     private TarArchiveOutputStream tOut;
 
+    private boolean detectHardLinks = false;
+
+    private boolean deduplicateContents = false;
+
+    private boolean detectSparseFiles = false;
+
+    // the size of the data regions of a sparse file, which are kept in memory rather than a temporary file
+    private static final int SPARSE_DATA_THRESHOLD = 1024 * 1024;
+
+    // the names of the entries, which have been written for linked files, by their file keys
+    private final Map<Object, LinkedFile> linkedFiles = new HashMap<Object, LinkedFile>();
+
+    // the entries, which may be duplicated by later ones, by their sizes
+    private final Map<Long, List<ContentCandidate>> contentCandidates = new HashMap<Long, List<ContentCandidate>>();
+
     /**
      * Set how to handle long files, those with a path&gt;100 chars.
      * Optional, default=warn.
@@ -91,6 +137,8 @@ public void setLongfile( TarLongFileMode mode )
      * <li>  none - no compression
      * <li>  gzip - Gzip compression
      * <li>  bzip2 - Bzip2 compression
+     * <li>  snappy - Snappy compression
+     * <li>  xz - xz compression, see {@link #setCompressionLevel(int)}
      * </ul>
      *
      * @param mode the compression method.
@@ -100,6 +148,215 @@ public void setCompression( TarCompressionMethod mode )
         this.compression = mode;
     }
 
+    /**
+     * Sets the number of threads used for gzip, bzip2 and snappy compression. With more than
+     * one thread, blocks of the tar stream are compressed concurrently, see
+     * {@link ParallelGZipOutputStream}, {@link ParallelBZip2OutputStream} and
+     * {@link ParallelSnappyOutputStream}. Defaults to 1.
+     *
+     * @since 3.0.1
+     */
+    public void setCompressionThreads( int compressionThreads )
+    {
+        this.compressionThreads = compressionThreads;
+    }
+
+    /**
+     * @since 3.0.1
+     */
+    public int getCompressionThreads()
+    {
+        return compressionThreads;
+    }
+
+    /**
+     * Sets, whether files, which are hard links to a file added before with the same mode and
+     * owner, are written as hard link entries, without their contents. Links are detected by the
+     * file keys of the sources, like their device and inode numbers, which requires Java 7.
+     * Defaults to false.
+     *
+     * @since 3.0.1
+     */
+    public void setDetectHardLinks( boolean detectHardLinks )
+    {
+        this.detectHardLinks = detectHardLinks;
+    }
+
+    /**
+     * @since 3.0.1
+     */
+    public boolean isDetectHardLinks()
+    {
+        return detectHardLinks;
+    }
+
+    /**
+     * Sets, whether files with the same contents, mode, owner and timestamp as a file added
+     * before are written as hard link entries, without their contents. Files of the same size
+     * are compared by a SHA-256 digest, so they are read twice. On extraction, the duplicates
+     * become hard links to the same file. Defaults to false.
+     *
+     * @since 3.0.1
+     */
+    public void setDeduplicateContents( boolean deduplicateContents )
+    {
+        this.deduplicateContents = deduplicateContents;
+    }
+
+    /**
+     * @since 3.0.1
+     */
+    public boolean isDeduplicateContents()
+    {
+        return deduplicateContents;
+    }
+
+    /**
+     * Sets, whether files with holes, that is, blocks of {@link TarSparseMap#BLOCK_SIZE} bytes,
+     * which only contain zeros, are written as sparse entries, in GNU tar's PAX sparse format
+     * 1.0. Only the data regions are stored, and {@link TarUnArchiver} recreates the holes by
+     * seeking over them. Files are read once; as the size of an entry precedes its data, the
+     * data regions are kept in memory, or in a temporary file, until the entry is written.
+     * Sparse files of 2 GiB or more aren't supported: files larger than
+     * {@link TarSparseMap#MAX_REAL_SIZE} are written as regular entries, see there. Defaults
+     * to false.
+     *
+     * @since 3.0.1
+     */
+    public void setDetectSparseFiles( boolean detectSparseFiles )
+    {
+        this.detectSparseFiles = detectSparseFiles;
+    }
+
+    /**
+     * @since 3.0.1
+     */
+    public boolean isDetectSparseFiles()
+    {
+        return detectSparseFiles;
+    }
+
+    /**
+     * Sets the compression level, from 1, the fastest, to 9, the best compression. For gzip,
+     * it is the deflate level, for bzip2, the block size in units of 100k, and for xz, the
+     * preset, which may also be 0. Defaults to -1, the default level of the method.
+     *
+     * @since 3.0.1
+     */
+    public void setCompressionLevel( int compressionLevel )
+    {
+        if ( compressionLevel < -1 || compressionLevel > 9 )
+        {
+            throw new IllegalArgumentException( "Invalid compression level: " + compressionLevel );
+        }
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * @since 3.0.1
+     */
+    public int getCompressionLevel()
+    {
+        return compressionLevel;
+    }
+
+    /**
+     * Sets the level, the deflate strategy and the buffer sizes of the compression, see
+     * {@link CompressionProfile}. A {@link #setCompressionLevel(int) compression level} other
+     * than -1 overrides the level of the profile. Defaults to {@link CompressionProfile#BALANCED}.
+     *
+     * @since 3.0.1
+     */
+    public void setCompressionProfile( CompressionProfile compressionProfile )
+    {
+        this.compressionProfile = compressionProfile;
+    }
+
+    /**
+     * @since 3.0.1
+     */
+    public CompressionProfile getCompressionProfile()
+    {
+        return compressionProfile;
+    }
+
+    /**
+     * @return the profile, with the level overridden by the compression level, if one is set.
+     */
+    private CompressionProfile getEffectiveProfile()
+    {
+        if ( compressionLevel == -1 )
+        {
+            return compressionProfile;
+        }
+        return new CompressionProfile( compressionLevel, compressionProfile.getStrategy(),
+                                       compressionProfile.getBufferSize(), compressionProfile.getOutputBufferSize() );
+    }
+
+    /**
+     * Lets the gzip level of every entry be chosen, so the archive is written at the given
+     * throughput, see {@link CompressionGovernor}. The level of a compressed tar stream can
+     * only be changed between entries by gzip; other compression methods ignore this. The
+     * chosen levels are reported at the end, with ratios, which are approximate, as the
+     * compressor holds back some of an entry's data until the next one.
+     *
+     * @param bytesPerSecond the uncompressed bytes written per second, or 0 to compress at
+     *                       the {@link #setCompressionLevel(int) compression level}.
+     * @since 3.0.1
+     */
+    public void setTargetThroughput( long bytesPerSecond )
+    {
+        this.targetThroughput = bytesPerSecond;
+    }
+
+    /**
+     * @since 3.0.1
+     */
+    public long getTargetThroughput()
+    {
+        return targetThroughput;
+    }
+
+    /**
+     * Lets the gzip level of every entry be chosen, so the archive is written within the given
+     * time, see {@link #setTargetThroughput(long)}. Ignored, if a target throughput is set.
+     *
+     * @param millis the time budget, or 0 to compress at the
+     *               {@link #setCompressionLevel(int) compression level}.
+     * @since 3.0.1
+     */
+    public void setTimeBudget( long millis )
+    {
+        this.timeBudget = millis;
+    }
+
+    /**
+     * @since 3.0.1
+     */
+    public long getTimeBudget()
+    {
+        return timeBudget;
+    }
+
+    private CompressionGovernor createGovernor()
+    {
+        if ( targetThroughput <= 0 && timeBudget <= 0 )
+        {
+            return null;
+        }
+        if ( !TarCompressionMethod.gzip.equals( compression ) )
+        {
+            getLogger().warn( "Compression levels are only chosen per entry for gzip, not for " + compression );
+            return null;
+        }
+        if ( targetThroughput > 0 )
+        {
+            return CompressionGovernor.forThroughput( targetThroughput, 1, getEffectiveProfile().getLevel() );
+        }
+        return CompressionGovernor.forTimeBudget( timeBudget, CompressionGovernor.getTotalSize( getResources() ), 1,
+                                                  getEffectiveProfile().getLevel() );
+    }
+
     protected void execute()
         throws ArchiverException, IOException
     {
@@ -131,9 +388,12 @@ protected void execute()
 
         getLogger().info( "Building tar: " + tarFile.getAbsolutePath() );
 
-        final OutputStream bufferedOutputStream = bufferedOutputStream( new FileOutputStream( tarFile ) );
-        tOut =
-            new TarArchiveOutputStream( compress( compression, bufferedOutputStream ), "UTF8" );
+        final CompressionGovernor governor = createGovernor();
+        final CountingOutputStream compressedBytes =
+            new CountingOutputStream( bufferedOutputStream( new FileOutputStream( tarFile ),
+                                                            compressionProfile.getOutputBufferSize() ) );
+        final OutputStream compressed = compress( compression, compressedBytes );
+        tOut = new TarArchiveOutputStream( compressed, "UTF8" );
         if ( longFileMode.isTruncateMode() )
         {
             tOut.setLongFileMode( TarArchiveOutputStream.LONGFILE_TRUNCATE );
@@ -155,6 +415,8 @@ else if ( longFileMode.isFailMode() || longFileMode.isOmitMode() )
         }
 
         longWarningGiven = false;
+        linkedFiles.clear();
+        contentCandidates.clear();
         try
         {
             while ( iter.hasNext() )
@@ -168,11 +430,32 @@ else if ( longFileMode.isFailMode() || longFileMode.isOmitMode() )
                 String fileName = entry.getName();
                 String name = StringUtils.replace( fileName, File.separatorChar, '/' );
 
+                if ( governor == null )
+                {
+                    tarFile( entry, tOut, name );
+                    continue;
+                }
+                final int level = governor.getLevel();
+                GZipCompressor.setLevel( compressed, level );
+                final long start = System.nanoTime();
+                final long written = compressedBytes.getBytesWritten();
                 tarFile( entry, tOut, name );
+                final long size = entry.getType() == ArchiveEntry.FILE ? entry.getResource().getSize() : 0;
+                governor.record( level, size, compressedBytes.getBytesWritten() - written, System.nanoTime() - start );
+            }
+
+            if ( governor != null )
+            {
+                for ( String line : governor.getReport() )
+                {
+                    getLogger().info( "Compressed at gzip " + line );
+                }
             }
         } finally
         {
             IOUtil.close( tOut );
+            linkedFiles.clear();
+            contentCandidates.clear();
         }
     }
 
@@ -213,6 +496,10 @@ protected void tarFile( ArchiveEntry entry, TarArchiveOutputStream tOut, String
 
         int pathLength = vPath.length();
         InputStream fIn = null;
+        String linkName = null;
+        TarSparseMap sparseMap = null;
+        DeferredScatterOutputStream sparseData = null;
+        boolean sparse = false;
 
         try
         {
@@ -270,16 +557,34 @@ else if ( longFileMode.isFailMode() )
             }
             else
             {
-                te = new TarArchiveEntry( vPath );
+                linkName = findHardLinkTarget( entry, vPath );
+                if ( linkName != null )
+                {
+                    te = new TarArchiveEntry( vPath, TarArchiveEntry.LF_LINK );
+                    te.setLinkName( linkName );
+                }
+                else
+                {
+                    te = new TarArchiveEntry( vPath );
+                    if ( isSparseCandidate( entry ) )
+                    {
+                        sparseData = new DeferredScatterOutputStream( SPARSE_DATA_THRESHOLD );
+                        sparseMap = scanSparseFile( entry, sparseData );
+                        sparse = sparseMap.hasHoles() && sparseMap.getRealSize() <= TarSparseMap.MAX_REAL_SIZE;
+                    }
+                }
             }
 
             long teLastModified = entry.getResource().getLastModified();
             te.setModTime( teLastModified == PlexusIoResource.UNKNOWN_MODIFICATION_DATE ? System.currentTimeMillis()
                                : teLastModified );
 
-            if (entry.getType() == ArchiveEntry.SYMLINK){
+            if (entry.getType() == ArchiveEntry.SYMLINK || linkName != null){
                 te.setSize( 0 );
 
+            } else if ( sparseMap != null )
+            {
+                te.setSize( sparse ? sparseMap.getEntrySize() : sparseMap.getRealSize() );
             } else
             if ( !entry.getResource().isDirectory()  )
             {
@@ -309,10 +614,26 @@ else if ( longFileMode.isFailMode() )
                 te.setGroupId( groupId );
             }
 
+            if ( sparse )
+            {
+                putSparseHeaders( tOut, te, vPath, sparseMap );
+            }
+
             tOut.putArchiveEntry(te);
 
             try {
-                if (entry.getResource().isFile() && !(entry.getType() == ArchiveEntry.SYMLINK)) {
+                if ( sparse )
+                {
+                    tOut.write( sparseMap.getHeader() );
+                    Streams.copyFullyDontCloseOutput( sparseData.getInputStream(), tOut, "xAR" );
+                }
+                else if ( sparseMap != null )
+                {
+                    // Too few holes, the blocks of zeros are written again
+                    Streams.copyFullyDontCloseOutput( sparseMap.getInputStream( sparseData.getInputStream() ), tOut,
+                                                      "xAR" );
+                }
+                else if (entry.getResource().isFile() && !(entry.getType() == ArchiveEntry.SYMLINK) && linkName == null) {
                     fIn = entry.getInputStream();
 
                     Streams.copyFullyDontCloseOutput(fIn, tOut, "xAR");
@@ -327,6 +648,257 @@ else if ( longFileMode.isFailMode() )
         finally
         {
             IOUtil.close( fIn );
+            if ( sparseData != null )
+            {
+                sparseData.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the name of an entry, which has been written before, and which the file may be
+     * written as a hard link to. Otherwise, the file is remembered as the target of later links.
+     *
+     * @return the name of the earlier entry, or null, if the file is written with its contents.
+     */
+    private String findHardLinkTarget( ArchiveEntry entry, String vPath )
+        throws IOException
+    {
+        final PlexusIoResource resource = entry.getResource();
+        if ( entry.getType() != ArchiveEntry.FILE || !resource.isFile() )
+        {
+            return null;
+        }
+
+        if ( detectHardLinks )
+        {
+            final Object fileKey = resource instanceof PlexusIoFileResource
+                ? HardLinks.getFileKey( ( (PlexusIoFileResource) resource ).getFile() )
+                : null;
+            if ( fileKey != null )
+            {
+                final LinkedFile linked = linkedFiles.get( fileKey );
+                if ( linked == null )
+                {
+                    linkedFiles.put( fileKey, new LinkedFile( vPath, entry.getMode(), getOwner( entry ) ) );
+                }
+                else if ( linked.mode == entry.getMode() && linked.owner.equals( getOwner( entry ) ) )
+                {
+                    return linked.name;
+                }
+            }
+        }
+
+        final long size = resource.getSize();
+        if ( deduplicateContents && size > 0 )
+        {
+            List<ContentCandidate> candidates = contentCandidates.get( size );
+            final ContentCandidate candidate = new ContentCandidate( vPath, resource, entry.getMode(), getOwner( entry ),
+                                                                     resource.getLastModified() );
+            if ( candidates == null )
+            {
+                candidates = new ArrayList<ContentCandidate>();
+                contentCandidates.put( size, candidates );
+            }
+            else
+            {
+                for ( ContentCandidate earlier : candidates )
+                {
+                    if ( earlier.mode == candidate.mode && earlier.owner.equals( candidate.owner )
+                        && earlier.lastModified == candidate.lastModified
+                        && MessageDigest.isEqual( earlier.getDigest(), candidate.getDigest() ) )
+                    {
+                        return earlier.name;
+                    }
+                }
+            }
+            candidates.add( candidate );
+        }
+        return null;
+    }
+
+    /**
+     * @return the user and group, which the entry is written with, as a key, which is equal for
+     *         entries with the same owner.
+     */
+    private String getOwner( ArchiveEntry entry )
+    {
+        final PlexusIoResourceAttributes attributes = entry.getResourceAttributes();
+        final StringBuilder owner = new StringBuilder();
+        owner.append( attributes != null && attributes.getUserName() != null ? attributes.getUserName()
+                          : options.getUserName() ).append( '/' );
+        owner.append( attributes != null && attributes.getUserId() != null ? attributes.getUserId()
+                          : options.getUid() ).append( ':' );
+        owner.append( attributes != null && attributes.getGroupName() != null ? attributes.getGroupName()
+                          : options.getGroup() ).append( '/' );
+        owner.append( attributes != null && attributes.getGroupId() != null ? attributes.getGroupId()
+                          : options.getGid() );
+        return owner.toString();
+    }
+
+    /**
+     * @return whether the file is scanned for holes.
+     */
+    private boolean isSparseCandidate( ArchiveEntry entry )
+    {
+        final PlexusIoResource resource = entry.getResource();
+        return detectSparseFiles && entry.getType() == ArchiveEntry.FILE && resource instanceof PlexusIoFileResource
+            && resource.getSize() >= 2 * TarSparseMap.BLOCK_SIZE && resource.getSize() <= TarSparseMap.MAX_REAL_SIZE;
+    }
+
+    /**
+     * Reads the file, keeping its data regions in the given store.
+     *
+     * @return the holes of the file. If they aren't {@link TarSparseMap#hasHoles() worth it},
+     *         or the file has grown beyond {@link TarSparseMap#MAX_REAL_SIZE} since, the file is
+     *         written as a regular entry from the store.
+     */
+    private TarSparseMap scanSparseFile( ArchiveEntry entry, final DeferredScatterOutputStream data )
+        throws IOException
+    {
+        final TarSparseMap map =
+            TarSparseMap.scan( ( (PlexusIoFileResource) entry.getResource() ).getFile(), new OutputStream()
+            {
+                public void write( int b )
+                    throws IOException
+                {
+                    write( new byte[]{ (byte) b }, 0, 1 );
+                }
+
+                public void write( byte[] b, int off, int len )
+                    throws IOException
+                {
+                    data.writeOut( b, off, len );
+                }
+            } );
+        data.closeForWriting();
+        return map;
+    }
+
+    /**
+     * Writes the PAX header, which marks the next entry as sparse, and gives the entry the name
+     * GNU tar uses for sparse files, so tools without sparse support don't extract the map as
+     * the file's contents.
+     */
+    private void putSparseHeaders( TarArchiveOutputStream tOut, TarArchiveEntry te, String vPath,
+                                   TarSparseMap sparseMap )
+        throws IOException
+    {
+        String baseName = vPath.substring( vPath.lastIndexOf( '/' ) + 1 );
+        if ( baseName.length() > 40 )
+        {
+            // Keeps the names within the ustar limit, the full name is in the PAX header
+            baseName = baseName.substring( 0, 40 );
+        }
+
+        final Map<String, String> headers = new LinkedHashMap<String, String>();
+        headers.put( "GNU.sparse.major", "1" );
+        headers.put( "GNU.sparse.minor", "0" );
+        headers.put( "GNU.sparse.name", vPath );
+        headers.put( "GNU.sparse.realsize", String.valueOf( sparseMap.getRealSize() ) );
+        final ByteArrayOutputStream records = new ByteArrayOutputStream();
+        for ( Map.Entry<String, String> header : headers.entrySet() )
+        {
+            final byte[] record = ( " " + header.getKey() + "=" + header.getValue() + "\n" ).getBytes( "UTF-8" );
+            // The length of a record includes the digits of the length itself
+            int length = record.length + 1;
+            while ( record.length + String.valueOf( length ).length() != length )
+            {
+                length = record.length + String.valueOf( length ).length();
+            }
+            records.write( String.valueOf( length ).getBytes( "UTF-8" ) );
+            records.write( record );
+        }
+
+        final TarArchiveEntry paxEntry =
+            new TarArchiveEntry( "PaxHeaders.0/" + baseName, TarArchiveEntry.LF_PAX_EXTENDED_HEADER_LC );
+        paxEntry.setSize( records.size() );
+        paxEntry.setModTime( te.getModTime() );
+        tOut.putArchiveEntry( paxEntry );
+        tOut.write( records.toByteArray() );
+        tOut.closeArchiveEntry();
+
+        te.setName( "GNUSparseFile.0/" + baseName );
+    }
+
+    /**
+     * An entry, whose contents have been written, and which later links to the same file may
+     * refer to, if they have the same mode and owner.
+     */
+    private static class LinkedFile
+    {
+        private final String name;
+
+        private final int mode;
+
+        private final String owner;
+
+        LinkedFile( String name, int mode, String owner )
+        {
+            this.name = name;
+            this.mode = mode;
+            this.owner = owner;
+        }
+    }
+
+    /**
+     * An entry, whose contents have been written, and which later entries of the same size may
+     * duplicate. Its digest is only computed, once a file of the same size is added.
+     */
+    private static class ContentCandidate
+    {
+        private final String name;
+
+        private final PlexusIoResource resource;
+
+        private final int mode;
+
+        private final String owner;
+
+        private final long lastModified;
+
+        private byte[] digest;
+
+        ContentCandidate( String name, PlexusIoResource resource, int mode, String owner, long lastModified )
+        {
+            this.name = name;
+            this.resource = resource;
+            this.mode = mode;
+            this.owner = owner;
+            this.lastModified = lastModified;
+        }
+
+        byte[] getDigest()
+            throws IOException
+        {
+            if ( digest == null )
+            {
+                final MessageDigest md;
+                try
+                {
+                    md = MessageDigest.getInstance( "SHA-256" );
+                }
+                catch ( NoSuchAlgorithmException e )
+                {
+                    throw new IOException( "SHA-256 is not available", e );
+                }
+                final InputStream in = new DigestInputStream( resource.getContents(), md );
+                final byte[] buffer = Streams.borrowBuffer();
+                try
+                {
+                    while ( in.read( buffer ) != -1 )
+                    {
+                        // Only the digest is needed
+                    }
+                }
+                finally
+                {
+                    Streams.returnBuffer( buffer );
+                    in.close();
+                }
+                digest = md.digest();
+            }
+            return digest;
         }
     }
 
@@ -447,24 +1019,40 @@ public void setPreserveLeadingSlashes( boolean preserveLeadingSlashes )
      */
     public static enum TarCompressionMethod
     {
-        none, gzip, bzip2, snappy
+        none, gzip, bzip2, snappy, xz
 
     }
 
     private OutputStream compress( TarCompressionMethod tarCompressionMethod, final OutputStream ostream )
         throws IOException
     {
+        final CompressionProfile profile = getEffectiveProfile();
         if ( TarCompressionMethod.gzip.equals( tarCompressionMethod ))
         {
-            return new GZIPOutputStream( ostream );
+            return GZipCompressor.createOutputStream( ostream, compressionThreads, profile );
         }
         else if ( TarCompressionMethod.bzip2.equals( tarCompressionMethod) )
         {
-            return new BZip2CompressorOutputStream( ostream );
+            final int blockSize = BZip2Compressor.getBlockSize( profile );
+            if ( compressionThreads > 1 )
+            {
+                return new ParallelBZip2OutputStream( ostream, compressionThreads, blockSize );
+            }
+            return new BZip2CompressorOutputStream( ostream, blockSize );
         }
         else if ( TarCompressionMethod.snappy.equals( tarCompressionMethod ))
         {
-            return new SnappyOutputStream( ostream );
+            final int blockSize = profile.getBufferSize( ParallelSnappyOutputStream.BLOCK_SIZE );
+            if ( compressionThreads > 1 )
+            {
+                return new ParallelSnappyOutputStream( ostream, compressionThreads, blockSize );
+            }
+            return new SnappyOutputStream( ostream, blockSize );
+        }
+        else if ( TarCompressionMethod.xz.equals( tarCompressionMethod ) )
+        {
+            return new XZCompressorOutputStream( ostream, profile.getLevel() >= 0 ? profile.getLevel()
+                : XZCompressor.DEFAULT_LEVEL );
         }
         return ostream;
     }
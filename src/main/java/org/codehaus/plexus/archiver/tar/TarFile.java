@@ -1,17 +1,31 @@
 package org.codehaus.plexus.archiver.tar;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.FilterInputStream;
+import java.io.RandomAccessFile;
 import java.lang.reflect.UndeclaredThrowableException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.codehaus.plexus.archiver.ArchiveFile;
+import org.codehaus.plexus.util.IOUtil;
 
 import static org.codehaus.plexus.archiver.util.Streams.bufferedInputStream;
 
@@ -32,6 +46,12 @@
  * {@link TarArchiveInputStream}.</p>
  * <p>The advantage of this class is that you may write code for the
  * {@link ArchiveFile}, which is valid for both tar files and zip files.</p>
+ * <p>While reading, the offsets of the entries' data are recorded. For
+ * uncompressed files, entries, which have been passed already, are read
+ * from their offset directly, so the order of access doesn't matter after
+ * the first pass. The index may be {@link #setPersistIndex(boolean) persisted}
+ * next to the archive. Of several entries with the same name, the one returned by
+ * {@link #getEntries()} is read; an entry, which is only known by its name, is the first.</p>
  */
 public class TarFile
     implements ArchiveFile
@@ -40,6 +60,29 @@
     private TarArchiveInputStream inputStream;
     private TarArchiveEntry currentEntry;
 
+    private static final int INDEX_MAGIC = 0x54494459;
+
+    private static final int RECORD_SIZE = 512;
+
+    // the position in the tar stream of inputStream
+    private CountingInputStream counter;
+
+    // name -> { offset of the data, size, position of the header's end } of the entries read so far, in the
+    // order of the archive, as names may repeat; offset -1 if the data isn't contiguous
+    private final Map<String, List<long[]>> index = new HashMap<String, List<long[]>>();
+
+    // the locations of entries, which have been returned, and which aren't the first of their name
+    private final Map<TarArchiveEntry, long[]> laterOccurrences = new IdentityHashMap<TarArchiveEntry, long[]>();
+
+    // true, once all entries of the archive are in the index
+    private boolean indexComplete;
+
+    private boolean persistIndex;
+
+    private boolean persistedIndexLoaded;
+
+    private RandomAccessFile randomAccessFile;
+
     /**
      * Creates a new instance with the given file.
      */
@@ -48,6 +91,62 @@ public TarFile( File file )
         this.file = file;
     }
 
+    /**
+     * Sets, whether the index of entry offsets is written to, and read from, a file next
+     * to the archive, named like the archive with the suffix <code>.index</code>. The index
+     * is ignored, if the archive's size or timestamp have changed. Defaults to false.
+     *
+     * @since 3.0.1
+     */
+    public void setPersistIndex( boolean persistIndex )
+    {
+        this.persistIndex = persistIndex;
+    }
+
+    /**
+     * @since 3.0.1
+     */
+    public boolean isPersistIndex()
+    {
+        return persistIndex;
+    }
+
+    /**
+     * Returns, whether positions in the tar stream, as returned by {@link #getInputStream(File)},
+     * are positions in the file, so entries may be read from their offset directly.
+     * Subclasses, which decompress the file, return false.
+     *
+     * @since 3.0.1
+     */
+    protected boolean isSeekable()
+    {
+        return true;
+    }
+
+    /**
+     * Returns, whether {@link #getInputStream(File, long)} is supported, for files, which
+     * aren't {@link #isSeekable() seekable}, but may be read from a position without
+     * reading everything before it.
+     *
+     * @since 3.0.1
+     */
+    protected boolean isRandomAccess()
+    {
+        return false;
+    }
+
+    /**
+     * Returns the tar stream of the file, starting at the given position. Only invoked, if
+     * {@link #isRandomAccess()} returns true.
+     *
+     * @since 3.0.1
+     */
+    protected InputStream getInputStream( File file, long position )
+        throws IOException
+    {
+        throw new UnsupportedOperationException( "Random access isn't supported by " + getClass().getName() );
+    }
+
     /**
      * Implementation of {@link ArchiveFile#getEntries()}. Note, that there is
      * an interaction between this method and {@link #getInputStream(TarArchiveEntry)},
@@ -73,7 +172,7 @@ public boolean hasMoreElements()
                 {
                     try
                     {
-                        currentEntry = inputStream.getNextTarEntry();
+                        currentEntry = nextEntry();
                     }
                     catch ( IOException  e )
                     {
@@ -103,6 +202,11 @@ public void close()
             inputStream.close();
             inputStream = null;
         }
+        if ( randomAccessFile != null )
+        {
+            randomAccessFile.close();
+            randomAccessFile = null;
+        }
     }
 
     public InputStream getInputStream( org.apache.commons.compress.archivers.ArchiveEntry entry )
@@ -131,9 +235,293 @@ public void close()
                 }
             };
         }
+        final InputStream indexed = getIndexedInputStream( entry );
+        if ( indexed != null )
+        {
+            return indexed;
+        }
         return getInputStream( entry, currentEntry );
     }
 
+    /**
+     * @return the contents of the entry, read from its offset in the file, or null, if the
+     *         entry's offset isn't known.
+     */
+    private InputStream getIndexedInputStream( TarArchiveEntry entry )
+        throws IOException
+    {
+        final boolean seekable = isSeekable();
+        if ( !seekable && !isRandomAccess() )
+        {
+            return null;
+        }
+        if ( persistIndex && !persistedIndexLoaded )
+        {
+            persistedIndexLoaded = true;
+            loadIndex();
+        }
+        long[] location = laterOccurrences.get( entry );
+        if ( location == null )
+        {
+            // Building the index of a compressed file decompresses all of it, so unknown
+            // entries are searched for instead
+            if ( seekable && !indexComplete && !index.containsKey( entry.getName() ) )
+            {
+                buildIndex();
+            }
+            final List<long[]> locations = index.get( entry.getName() );
+            if ( locations == null )
+            {
+                if ( !seekable )
+                {
+                    return null;
+                }
+                throw new IOException( "Unknown entry: " + entry.getName() );
+            }
+            location = locations.get( 0 );
+        }
+        if ( location[0] < 0 )
+        {
+            return null;
+        }
+        if ( !seekable )
+        {
+            if ( inputStream != null && location[2] > counter.getPosition() )
+            {
+                // Reading on is cheaper than decompressing from a checkpoint
+                return null;
+            }
+            return new BoundedInputStream( getInputStream( file, location[0] ), location[1] );
+        }
+        if ( randomAccessFile == null )
+        {
+            randomAccessFile = new RandomAccessFile( file, "r" );
+        }
+        final FileChannel channel = randomAccessFile.getChannel();
+        if ( !isHeaderBefore( channel, location ) )
+        {
+            // The file has changed, the index is useless
+            index.clear();
+            laterOccurrences.clear();
+            indexComplete = false;
+            return null;
+        }
+        return new ChannelInputStream( channel, location[0], location[1] );
+    }
+
+    /**
+     * Checks, whether the record before the data is the header of an entry with the indexed size.
+     */
+    private static boolean isHeaderBefore( FileChannel channel, long[] location )
+        throws IOException
+    {
+        if ( location[0] < RECORD_SIZE || location[0] + location[1] > channel.size() )
+        {
+            return false;
+        }
+        final ByteBuffer header = ByteBuffer.allocate( RECORD_SIZE );
+        while ( header.hasRemaining() )
+        {
+            if ( channel.read( header, location[0] - RECORD_SIZE + header.position() ) < 0 )
+            {
+                return false;
+            }
+        }
+        try
+        {
+            return new TarArchiveEntry( header.array() ).getSize() == location[1];
+        }
+        catch ( IllegalArgumentException e )
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Reads the headers of all entries, skipping their data, without affecting the current entry.
+     */
+    private void buildIndex()
+        throws IOException
+    {
+        final CountingInputStream in = new CountingInputStream( bufferedInputStream( getInputStream( file ) ) );
+        final TarArchiveInputStream tis = new TarArchiveInputStream( in, "UTF8" );
+        try
+        {
+            TarArchiveEntry entry;
+            while ( ( entry = tis.getNextTarEntry() ) != null )
+            {
+                indexEntry( entry, in.getPosition() );
+            }
+            indexCompleted();
+        }
+        finally
+        {
+            tis.close();
+        }
+    }
+
+    private TarArchiveEntry nextEntry()
+        throws IOException
+    {
+        final TarArchiveEntry entry = inputStream.getNextTarEntry();
+        if ( entry == null )
+        {
+            // All entries of the stream have been passed through this method
+            indexCompleted();
+            entriesCompleted();
+        }
+        else
+        {
+            indexEntry( entry, counter.getPosition() );
+        }
+        return entry;
+    }
+
+    /**
+     * Adds the entry to the index, unless it is known already, and remembers the location of
+     * an entry, which isn't the first of its name, so it is read rather than the first one.
+     */
+    private void indexEntry( TarArchiveEntry entry, long position )
+    {
+        List<long[]> locations = index.get( entry.getName() );
+        if ( locations == null )
+        {
+            locations = new ArrayList<long[]>( 1 );
+            index.put( entry.getName(), locations );
+        }
+        long[] location = null;
+        for ( long[] known : locations )
+        {
+            if ( known[2] == position )
+            {
+                location = known;
+                break;
+            }
+        }
+        if ( location == null )
+        {
+            final long offset = entry.isGNUSparse() ? -1 : position;
+            location = new long[]{ offset, entry.getSize(), position };
+            locations.add( location );
+        }
+        if ( location != locations.get( 0 ) )
+        {
+            laterOccurrences.put( entry, location );
+        }
+    }
+
+    /**
+     * Invoked, when all entries have been read from the stream returned by
+     * {@link #getInputStream(File)}. Does nothing.
+     *
+     * @since 3.0.1
+     */
+    protected void entriesCompleted()
+        throws IOException
+    {
+    }
+
+    private void indexCompleted()
+    {
+        if ( !indexComplete )
+        {
+            indexComplete = true;
+            if ( persistIndex )
+            {
+                saveIndex();
+            }
+        }
+    }
+
+    private File getIndexFile()
+    {
+        return new File( file.getPath() + ".index" );
+    }
+
+    private void loadIndex()
+    {
+        final File indexFile = getIndexFile();
+        if ( indexComplete || !indexFile.isFile() )
+        {
+            return;
+        }
+        DataInputStream in = null;
+        try
+        {
+            in = new DataInputStream( new BufferedInputStream( new FileInputStream( indexFile ) ) );
+            if ( in.readInt() != INDEX_MAGIC || in.readLong() != file.length()
+                || in.readLong() != file.lastModified() )
+            {
+                return;
+            }
+            final Map<String, List<long[]>> entries = new HashMap<String, List<long[]>>();
+            final int count = in.readInt();
+            for ( int i = 0; i < count; i++ )
+            {
+                final String name = in.readUTF();
+                final int occurrences = in.readInt();
+                final List<long[]> locations = new ArrayList<long[]>( occurrences );
+                for ( int j = 0; j < occurrences; j++ )
+                {
+                    locations.add( new long[]{ in.readLong(), in.readLong(), in.readLong() } );
+                }
+                entries.put( name, locations );
+            }
+            index.clear();
+            index.putAll( entries );
+            indexComplete = true;
+        }
+        catch ( IOException e )
+        {
+            // Unreadable, so the index is built again
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+    }
+
+    private void saveIndex()
+    {
+        final File indexFile = getIndexFile();
+        final File temp = new File( indexFile.getPath() + ".tmp" );
+        DataOutputStream out = null;
+        try
+        {
+            out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( temp ) ) );
+            out.writeInt( INDEX_MAGIC );
+            out.writeLong( file.length() );
+            out.writeLong( file.lastModified() );
+            out.writeInt( index.size() );
+            for ( Map.Entry<String, List<long[]>> e : index.entrySet() )
+            {
+                out.writeUTF( e.getKey() );
+                out.writeInt( e.getValue().size() );
+                for ( long[] location : e.getValue() )
+                {
+                    out.writeLong( location[0] );
+                    out.writeLong( location[1] );
+                    out.writeLong( location[2] );
+                }
+            }
+            out.close();
+            out = null;
+            if ( !temp.renameTo( indexFile ) && !( indexFile.delete() && temp.renameTo( indexFile ) ) )
+            {
+                temp.delete();
+            }
+        }
+        catch ( IOException e )
+        {
+            // The index is optional, the archive's directory may not be writable
+            temp.delete();
+        }
+        finally
+        {
+            IOUtil.close( out );
+        }
+    }
+
     protected InputStream getInputStream( File file )
         throws IOException
     {
@@ -177,7 +565,8 @@ private InputStream getInputStream( TarArchiveEntry entry, TarArchiveEntry curre
     private void open()
         throws IOException
     {
-        inputStream = new TarArchiveInputStream( bufferedInputStream( getInputStream( file ) ), "UTF8" );
+        counter = new CountingInputStream( bufferedInputStream( getInputStream( file ) ) );
+        inputStream = new TarArchiveInputStream( counter, "UTF8" );
     }
 
     private boolean findEntry( TarArchiveEntry entry, TarArchiveEntry currentEntry)
@@ -185,7 +574,7 @@ private boolean findEntry( TarArchiveEntry entry, TarArchiveEntry currentEntry)
     {
         for (;;)
         {
-            this.currentEntry = inputStream.getNextTarEntry();
+            this.currentEntry = nextEntry();
             if ( this.currentEntry == null
                     ||  (currentEntry != null  &&  this.currentEntry.equals( currentEntry ) ) )
             {
@@ -197,4 +586,179 @@ private boolean findEntry( TarArchiveEntry entry, TarArchiveEntry currentEntry)
             }
         }
     }
+
+    /**
+     * Counts the bytes, which have been consumed by the {@link TarArchiveInputStream}.
+     */
+    private static class CountingInputStream
+        extends FilterInputStream
+    {
+        private long position;
+
+        CountingInputStream( InputStream in )
+        {
+            super( in );
+        }
+
+        long getPosition()
+        {
+            return position;
+        }
+
+        public int read()
+            throws IOException
+        {
+            final int b = super.read();
+            if ( b != -1 )
+            {
+                position++;
+            }
+            return b;
+        }
+
+        public int read( byte[] b, int off, int len )
+            throws IOException
+        {
+            final int n = super.read( b, off, len );
+            if ( n > 0 )
+            {
+                position += n;
+            }
+            return n;
+        }
+
+        public long skip( long n )
+            throws IOException
+        {
+            final long skipped = super.skip( n );
+            position += skipped;
+            return skipped;
+        }
+
+        public boolean markSupported()
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Reads the data of an entry from a tar stream, closing the stream when closed.
+     */
+    private static class BoundedInputStream
+        extends FilterInputStream
+    {
+        private long remaining;
+
+        BoundedInputStream( InputStream in, long length )
+        {
+            super( in );
+            this.remaining = length;
+        }
+
+        public int read()
+            throws IOException
+        {
+            if ( remaining <= 0 )
+            {
+                return -1;
+            }
+            final int b = super.read();
+            if ( b != -1 )
+            {
+                remaining--;
+            }
+            return b;
+        }
+
+        public int read( byte[] b, int off, int len )
+            throws IOException
+        {
+            if ( remaining <= 0 )
+            {
+                return -1;
+            }
+            final int n = super.read( b, off, (int) Math.min( len, remaining ) );
+            if ( n > 0 )
+            {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        public long skip( long n )
+            throws IOException
+        {
+            final long skipped = super.skip( Math.min( n, remaining ) );
+            remaining -= skipped;
+            return skipped;
+        }
+
+        public int available()
+            throws IOException
+        {
+            return (int) Math.min( super.available(), remaining );
+        }
+
+        public boolean markSupported()
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Reads a region of a file with positional reads, so several streams may share the channel.
+     * Closing the stream does nothing, the channel is closed with the {@link TarFile}.
+     */
+    private static class ChannelInputStream
+        extends InputStream
+    {
+        private final FileChannel channel;
+
+        private long position;
+
+        private final long end;
+
+        ChannelInputStream( FileChannel channel, long offset, long length )
+        {
+            this.channel = channel;
+            this.position = offset;
+            this.end = offset + length;
+        }
+
+        public int read()
+            throws IOException
+        {
+            final byte[] b = new byte[1];
+            return read( b, 0, 1 ) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        public int read( byte[] b, int off, int len )
+            throws IOException
+        {
+            if ( position >= end )
+            {
+                return -1;
+            }
+            final int n = channel.read( ByteBuffer.wrap( b, off, (int) Math.min( len, end - position ) ), position );
+            if ( n > 0 )
+            {
+                position += n;
+            }
+            return n;
+        }
+
+        public long skip( long n )
+            throws IOException
+        {
+            final long skipped = Math.max( 0, Math.min( n, end - position ) );
+            position += skipped;
+            return skipped;
+        }
+
+        public int available()
+            throws IOException
+        {
+            return (int) Math.min( Integer.MAX_VALUE, end - position );
+        }
+    }
 }
@@ -0,0 +1,430 @@
+package org.codehaus.plexus.archiver.tar;
+
+/*
+ * Copyright 2014 The Codehaus Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.codehaus.plexus.archiver.util.HardLinks;
+import org.codehaus.plexus.archiver.util.Streams;
+
+/**
+ * The data regions of a sparse file, in the format of GNU tar's PAX sparse format 1.0. An
+ * entry in this format has the <code>GNU.sparse.major=1</code>,
+ * <code>GNU.sparse.minor=0</code>, <code>GNU.sparse.name</code> and
+ * <code>GNU.sparse.realsize</code> PAX headers, and its data starts with the map: the number
+ * of regions, and the offset and length of every region, as decimal lines, padded to a
+ * record of 512 bytes. The data of the regions follows; everything else is a hole.
+ * <p/>
+ * A file ending with a hole gets a final region of length 0 at its end, so its size is known
+ * from the map alone, like GNU tar does.
+ *
+ * @since 3.0.1
+ */
+public final class TarSparseMap
+{
+    /**
+     * The granularity, at which holes are detected. Smaller runs of zeros are kept as data.
+     */
+    public static final int BLOCK_SIZE = 4096;
+
+    /**
+     * The largest size of a sparse file. Commons compress 1.11, the last release running on
+     * Java 6, parses the <code>GNU.sparse.realsize</code> header as an int, so its readers,
+     * including {@link TarUnArchiver}, would fail on larger sparse entries. Larger files are
+     * therefore written as regular entries, with their holes; sparse files of 2 GiB or more
+     * aren't supported.
+     */
+    public static final long MAX_REAL_SIZE = Integer.MAX_VALUE;
+
+    private static final int RECORD_SIZE = 512;
+
+    private final long[] offsets;
+
+    private final long[] lengths;
+
+    private final long realSize;
+
+    private TarSparseMap( long[] offsets, long[] lengths, long realSize )
+    {
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.realSize = realSize;
+    }
+
+    /**
+     * Reads the file once, and maps the blocks, which only contain zeros, as holes. The data
+     * of the other blocks is written to the given stream, so it needn't be read again.
+     *
+     * @param data receives the data regions, as they are stored in a sparse entry.
+     */
+    public static TarSparseMap scan( File file, OutputStream data )
+        throws IOException
+    {
+        final Regions regions = new Regions();
+        final FileInputStream fis = new FileInputStream( file );
+        try
+        {
+            final FileChannel channel = fis.getChannel();
+            final ByteBuffer buffer = ByteBuffer.allocate( 16 * BLOCK_SIZE );
+            long position = 0;
+            long dataStart = -1;
+            int n;
+            while ( ( n = readFully( channel, buffer ) ) > 0 )
+            {
+                for ( int block = 0; block < n; block += BLOCK_SIZE )
+                {
+                    final int length = Math.min( BLOCK_SIZE, n - block );
+                    if ( !isZero( buffer, block, length ) )
+                    {
+                        if ( dataStart < 0 )
+                        {
+                            dataStart = position;
+                        }
+                        data.write( buffer.array(), block, length );
+                    }
+                    else if ( dataStart >= 0 )
+                    {
+                        regions.add( dataStart, position - dataStart );
+                        dataStart = -1;
+                    }
+                    position += length;
+                }
+                buffer.clear();
+            }
+            if ( dataStart >= 0 )
+            {
+                regions.add( dataStart, position - dataStart );
+            }
+            else
+            {
+                regions.add( position, 0 );
+            }
+            return regions.toMap( position );
+        }
+        finally
+        {
+            fis.close();
+        }
+    }
+
+    private static int readFully( FileChannel channel, ByteBuffer buffer )
+        throws IOException
+    {
+        while ( buffer.hasRemaining() )
+        {
+            if ( channel.read( buffer ) < 0 )
+            {
+                break;
+            }
+        }
+        return buffer.position();
+    }
+
+    private static boolean isZero( ByteBuffer buffer, int offset, int length )
+    {
+        int i = offset;
+        final int end = offset + length;
+        for ( ; i + 8 <= end; i += 8 )
+        {
+            if ( buffer.getLong( i ) != 0 )
+            {
+                return false;
+            }
+        }
+        for ( ; i < end; i++ )
+        {
+            if ( buffer.get( i ) != 0 )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the map at the start of an entry's data, including its padding.
+     *
+     * @param realSize the size of the file, from the <code>GNU.sparse.realsize</code> header.
+     */
+    public static TarSparseMap read( InputStream in, long realSize )
+        throws IOException
+    {
+        final long[] consumed = new long[1];
+        final long count = readNumber( in, consumed );
+        if ( count < 0 || count > Integer.MAX_VALUE / 2 )
+        {
+            throw new IOException( "Invalid sparse map" );
+        }
+        final Regions regions = new Regions();
+        long end = 0;
+        for ( long i = 0; i < count; i++ )
+        {
+            final long offset = readNumber( in, consumed );
+            final long length = readNumber( in, consumed );
+            if ( offset < end || offset + length > realSize )
+            {
+                throw new IOException( "Invalid sparse map" );
+            }
+            regions.add( offset, length );
+            end = offset + length;
+        }
+        final long padding = ( RECORD_SIZE - consumed[0] % RECORD_SIZE ) % RECORD_SIZE;
+        for ( long i = 0; i < padding; i++ )
+        {
+            if ( in.read() == -1 )
+            {
+                throw new EOFException( "Truncated sparse map" );
+            }
+        }
+        return regions.toMap( realSize );
+    }
+
+    private static long readNumber( InputStream in, long[] consumed )
+        throws IOException
+    {
+        long value = 0;
+        int digits = 0;
+        for ( ;; )
+        {
+            final int b = in.read();
+            if ( b == -1 )
+            {
+                throw new EOFException( "Truncated sparse map" );
+            }
+            consumed[0]++;
+            if ( b == '\n' && digits > 0 )
+            {
+                return value;
+            }
+            if ( b < '0' || b > '9' || digits == 18 )
+            {
+                throw new IOException( "Invalid sparse map" );
+            }
+            value = value * 10 + ( b - '0' );
+            digits++;
+        }
+    }
+
+    /**
+     * @return whether the holes are worth storing the file as a sparse entry.
+     */
+    public boolean hasHoles()
+    {
+        return realSize - getDataSize() >= BLOCK_SIZE;
+    }
+
+    /**
+     * @return the size of the file, including its holes.
+     */
+    public long getRealSize()
+    {
+        return realSize;
+    }
+
+    /**
+     * @return the number of bytes in the data regions.
+     */
+    public long getDataSize()
+    {
+        long size = 0;
+        for ( long length : lengths )
+        {
+            size += length;
+        }
+        return size;
+    }
+
+    /**
+     * @return the map, as written at the start of the entry's data, padded to a full record.
+     */
+    public byte[] getHeader()
+    {
+        final StringBuilder map = new StringBuilder();
+        map.append( offsets.length ).append( '\n' );
+        for ( int i = 0; i < offsets.length; i++ )
+        {
+            map.append( offsets[i] ).append( '\n' ).append( lengths[i] ).append( '\n' );
+        }
+        final int length = map.length();
+        final byte[] header = new byte[( length + RECORD_SIZE - 1 ) / RECORD_SIZE * RECORD_SIZE];
+        for ( int i = 0; i < length; i++ )
+        {
+            header[i] = (byte) map.charAt( i );
+        }
+        return header;
+    }
+
+    /**
+     * @return the size of the entry's data: the map and the data regions.
+     */
+    public long getEntrySize()
+    {
+        return getHeader().length + getDataSize();
+    }
+
+    /**
+     * Writes the data regions to the file, seeking over the holes, so they aren't allocated
+     * on file systems supporting sparse files. An existing file is replaced, not written in
+     * place.
+     *
+     * @param data the data regions, following the map.
+     */
+    public void extract( InputStream data, File file )
+        throws IOException
+    {
+        HardLinks.unlink( file );
+        final RandomAccessFile raf = new RandomAccessFile( file, "rw" );
+        final byte[] buffer = Streams.borrowBuffer();
+        try
+        {
+            raf.setLength( 0 );
+            for ( int i = 0; i < offsets.length; i++ )
+            {
+                raf.seek( offsets[i] );
+                long remaining = lengths[i];
+                while ( remaining > 0 )
+                {
+                    final int n = data.read( buffer, 0, (int) Math.min( buffer.length, remaining ) );
+                    if ( n == -1 )
+                    {
+                        throw new EOFException( "Truncated sparse entry" );
+                    }
+                    raf.write( buffer, 0, n );
+                    remaining -= n;
+                }
+            }
+            raf.setLength( realSize );
+        }
+        finally
+        {
+            Streams.returnBuffer( buffer );
+            raf.close();
+        }
+    }
+
+    /**
+     * @param data the data regions, following the map.
+     * @return the contents of the file, with zeros for the holes.
+     */
+    public InputStream getInputStream( InputStream data )
+    {
+        return new ExpandingInputStream( data );
+    }
+
+    private class ExpandingInputStream
+        extends InputStream
+    {
+        private final InputStream data;
+
+        private long position;
+
+        private int region;
+
+        ExpandingInputStream( InputStream data )
+        {
+            this.data = data;
+        }
+
+        public int read()
+            throws IOException
+        {
+            final byte[] b = new byte[1];
+            return read( b, 0, 1 ) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        public int read( byte[] b, int off, int len )
+            throws IOException
+        {
+            if ( len == 0 )
+            {
+                return 0;
+            }
+            while ( region < offsets.length && position >= offsets[region] + lengths[region] )
+            {
+                region++;
+            }
+            if ( position >= realSize )
+            {
+                return -1;
+            }
+            if ( region < offsets.length && position >= offsets[region] )
+            {
+                final long remaining = offsets[region] + lengths[region] - position;
+                final int n = data.read( b, off, (int) Math.min( len, remaining ) );
+                if ( n == -1 )
+                {
+                    throw new EOFException( "Truncated sparse entry" );
+                }
+                position += n;
+                return n;
+            }
+            final long holeEnd = region < offsets.length ? offsets[region] : realSize;
+            final int n = (int) Math.min( len, holeEnd - position );
+            for ( int i = off; i < off + n; i++ )
+            {
+                b[i] = 0;
+            }
+            position += n;
+            return n;
+        }
+    }
+
+    private static class Regions
+    {
+        private long[] offsets = new long[16];
+
+        private long[] lengths = new long[16];
+
+        private int count;
+
+        void add( long offset, long length )
+        {
+            if ( count == offsets.length )
+            {
+                offsets = grow( offsets );
+                lengths = grow( lengths );
+            }
+            offsets[count] = offset;
+            lengths[count] = length;
+            count++;
+        }
+
+        private static long[] grow( long[] array )
+        {
+            final long[] grown = new long[array.length * 2];
+            System.arraycopy( array, 0, grown, 0, array.length );
+            return grown;
+        }
+
+        TarSparseMap toMap( long realSize )
+        {
+            final long[] o = new long[count];
+            final long[] l = new long[count];
+            System.arraycopy( offsets, 0, o, 0, count );
+            System.arraycopy( lengths, 0, l, 0, count );
+            return new TarSparseMap( o, l, realSize );
+        }
+    }
+}
@@ -20,16 +20,35 @@
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
 import org.codehaus.plexus.archiver.AbstractUnArchiver;
 import org.codehaus.plexus.archiver.ArchiverException;
+import org.codehaus.plexus.archiver.bzip2.ParallelBZip2InputStream;
+import org.codehaus.plexus.archiver.snappy.ParallelSnappyInputStream;
+import org.codehaus.plexus.archiver.util.ExtractionState;
 import org.codehaus.plexus.util.IOUtil;
-import org.xerial.snappy.SnappyInputStream;
 
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 import java.util.zip.GZIPInputStream;
 
 /**
@@ -53,6 +72,20 @@ public TarUnArchiver( File sourceFile )
      */
     private UntarCompressionMethod compression = UntarCompressionMethod.NONE;
 
+    private int decompressionThreads = 1;
+
+    /**
+     * The default number of bytes of entry data, which may be buffered between the reading
+     * thread and the writing threads.
+     */
+    public static final int DEFAULT_PIPELINE_MEMORY = 32 * 1024 * 1024;
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private int extractionThreads = 1;
+
+    private int pipelineMemory = DEFAULT_PIPELINE_MEMORY;
+
     /**
      * Set decompression algorithm to use; default=none.
      * <p/>
@@ -62,6 +95,7 @@ public TarUnArchiver( File sourceFile )
      * <li>gzip - Gzip compression</li>
      * <li>bzip2 - Bzip2 compression</li>
      * <li>snappy - Snappy compression</li>
+     * <li>xz - xz compression</li>
      * </ul>
      *
      * @param method compression method
@@ -71,6 +105,81 @@ public void setCompression( UntarCompressionMethod method )
         compression = method;
     }
 
+    /**
+     * Sets the number of threads used for bzip2 and snappy decompression, see
+     * {@link ParallelBZip2InputStream} and {@link ParallelSnappyInputStream}. Defaults to 1.
+     *
+     * @since 3.0.1
+     */
+    public void setDecompressionThreads( int decompressionThreads )
+    {
+        this.decompressionThreads = decompressionThreads;
+    }
+
+    /**
+     * @since 3.0.1
+     */
+    public int getDecompressionThreads()
+    {
+        return decompressionThreads;
+    }
+
+    /**
+     * Sets the number of threads, which write the extracted files. With more than one thread,
+     * extraction is pipelined: the calling thread decompresses the archive and parses the
+     * headers, and hands the data of every file to a writing thread in chunks. Directories and
+     * symbolic links are still created by the calling thread, in the order of the archive.
+     * Defaults to 1, which extracts everything on the calling thread.
+     *
+     * @param extractionThreads the number of threads, at least 1.
+     * @since 3.0.1
+     */
+    public void setExtractionThreads( int extractionThreads )
+    {
+        if ( extractionThreads < 1 )
+        {
+            throw new IllegalArgumentException( "At least one extraction thread is required: " + extractionThreads );
+        }
+        this.extractionThreads = extractionThreads;
+    }
+
+    /**
+     * @since 3.0.1
+     */
+    public int getExtractionThreads()
+    {
+        return extractionThreads;
+    }
+
+    /**
+     * Sets the maximum number of bytes of file data, which have been read from the archive,
+     * but not yet written, when extracting on several threads. When the limit is reached, the
+     * reading thread waits for the writing threads. Defaults to {@link #DEFAULT_PIPELINE_MEMORY}.
+     *
+     * @since 3.0.1
+     */
+    public void setPipelineMemory( int pipelineMemory )
+    {
+        if ( pipelineMemory < CHUNK_SIZE )
+        {
+            throw new IllegalArgumentException( "The pipeline memory must be at least " + CHUNK_SIZE );
+        }
+        this.pipelineMemory = pipelineMemory;
+    }
+
+    /**
+     * @since 3.0.1
+     */
+    public int getPipelineMemory()
+    {
+        return pipelineMemory;
+    }
+
+    protected int getMetadataThreads()
+    {
+        return extractionThreads;
+    }
+
     /**
      * No encoding support in Untar.
      */
@@ -100,15 +209,23 @@ protected void execute( File sourceFile, File destDirectory )
             TarFile tarFile = new TarFile( sourceFile );
             tis = new TarArchiveInputStream(
                 decompress( compression, sourceFile, new BufferedInputStream( new FileInputStream( sourceFile ) ) ) );
+            if ( extractionThreads > 1 )
+            {
+                extractPipelined( sourceFile, destDirectory, tarFile, tis );
+                getLogger().debug( "expand complete" );
+                return;
+            }
             TarArchiveEntry te;
             while ( ( te = tis.getNextTarEntry() ) != null )
             {
                 TarResource fileInfo = new TarResource( tarFile, te );
-                if ( isSelected( te.getName(), fileInfo ) )
+                final Integer mode = te.getMode() != 0 ? te.getMode() : null;
+                // Tar headers have no CRC of the contents; the unread data of skipped entries is skipped by the stream
+                if ( isSelected( te.getName(), fileInfo )
+                    && !isUnchanged( te.getName(), getFileSize( te ), ExtractionState.UNKNOWN_CRC, mode,
+                                     te.getModTime() ) )
                 {
-                    final String symlinkDestination = te.isSymbolicLink() ? te.getLinkName() : null;
-                    extractFile( sourceFile, destDirectory, tis, te.getName(), te.getModTime(), te.isDirectory(),
-                                 te.getMode() != 0 ? te.getMode() : null, symlinkDestination );
+                    extractEntry( sourceFile, destDirectory, tis, te, mode );
                 }
 
             }
@@ -125,6 +242,345 @@ protected void execute( File sourceFile, File destDirectory )
         }
     }
 
+    /**
+     * Extracts the archive, reading it on the calling thread, and writing files on a pool of
+     * threads. The data of a file is passed to its writing thread in chunks, so large files
+     * don't have to fit in memory, and the total of the chunks in flight is bounded by
+     * the pipeline memory. Timestamps and permissions are applied after all entries have been
+     * written, so their order doesn't depend on the order, in which files complete.
+     */
+    private void extractPipelined( final File sourceFile, final File destDirectory, final TarFile tarFile,
+                                   final TarArchiveInputStream tis )
+        throws IOException
+    {
+        final ExecutorService executor = Executors.newFixedThreadPool( extractionThreads );
+        final Semaphore memory = new Semaphore( pipelineMemory );
+        final List<Future<Void>> pending = new ArrayList<Future<Void>>();
+        final Set<String> pendingNames = new HashSet<String>();
+        try
+        {
+            TarArchiveEntry te;
+            while ( ( te = tis.getNextTarEntry() ) != null )
+            {
+                // Stop early, if a file couldn't be written
+                checkCompleted( pending );
+
+                final Integer mode = te.getMode() != 0 ? te.getMode() : null;
+                if ( !isSelected( te.getName(), new TarResource( tarFile, te ) )
+                    || isUnchanged( te.getName(), getFileSize( te ), ExtractionState.UNKNOWN_CRC, mode,
+                                    te.getModTime() ) )
+                {
+                    continue;
+                }
+
+                if ( te.isDirectory() )
+                {
+                    extractFile( sourceFile, destDirectory, tis, te.getName(), te.getModTime(), true, mode, null,
+                                 te.getSize(), ExtractionState.UNKNOWN_CRC );
+                }
+                else if ( te.isSymbolicLink() || te.isLink() || te.isPaxGNUSparse()
+                    || !pendingNames.add( te.getName() ) )
+                {
+                    // A symbolic link may redirect files after it, a hard link needs its target to be
+                    // complete, and a later duplicate replaces an earlier one. Sparse files are
+                    // written by seeking, which a chunked copy can't do.
+                    awaitAll( pending );
+                    pendingNames.clear();
+                    extractEntry( sourceFile, destDirectory, tis, te, mode );
+                }
+                else
+                {
+                    final ChunkInputStream contents = new ChunkInputStream( memory );
+                    final String name = te.getName();
+                    final Date time = te.getModTime();
+                    final long size = te.getSize();
+                    pending.add( executor.submit( new Callable<Void>()
+                    {
+                        public Void call()
+                            throws IOException
+                        {
+                            try
+                            {
+                                extractFile( sourceFile, destDirectory, contents, name, time, false, mode, null,
+                                             size, ExtractionState.UNKNOWN_CRC );
+                            }
+                            finally
+                            {
+                                contents.discard();
+                            }
+                            return null;
+                        }
+                    } ) );
+                    contents.transferFrom( tis, size );
+                }
+            }
+            awaitAll( pending );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * The size of the extracted file, which differs from the size of the entry's data for links
+     * and sparse files.
+     */
+    private static long getFileSize( TarArchiveEntry te )
+    {
+        if ( te.isLink() || te.isSymbolicLink() )
+        {
+            return -1;
+        }
+        return te.isPaxGNUSparse() ? te.getRealSize() : te.getSize();
+    }
+
+    private void extractEntry( File sourceFile, File destDirectory, InputStream tis, TarArchiveEntry te,
+                               Integer mode )
+        throws IOException
+    {
+        if ( te.isLink() )
+        {
+            extractHardLink( destDirectory, te.getName(), te.getLinkName(), te.getModTime() );
+            return;
+        }
+        if ( te.isPaxGNUSparse() )
+        {
+            final TarSparseMap sparseMap = TarSparseMap.read( tis, te.getRealSize() );
+            extractFile( sourceFile, destDirectory, new SparseInputStream( sparseMap, tis ), te.getName(),
+                         te.getModTime(), false, mode, null, te.getSize(), ExtractionState.UNKNOWN_CRC );
+            return;
+        }
+        final String symlinkDestination = te.isSymbolicLink() ? te.getLinkName() : null;
+        extractFile( sourceFile, destDirectory, tis, te.getName(), te.getModTime(), te.isDirectory(), mode,
+                     symlinkDestination, te.getSize(), ExtractionState.UNKNOWN_CRC );
+    }
+
+    /**
+     * Writes sparse entries by seeking over their holes.
+     */
+    protected void writeFile( InputStream contents, File f )
+        throws IOException
+    {
+        if ( contents instanceof SparseInputStream )
+        {
+            final SparseInputStream sparse = (SparseInputStream) contents;
+            sparse.sparseMap.extract( sparse.data, f );
+            return;
+        }
+        super.writeFile( contents, f );
+    }
+
+    /**
+     * The contents of a sparse entry, with zeros for the holes, whose data regions may also be
+     * written to the file directly.
+     */
+    private static class SparseInputStream
+        extends FilterInputStream
+    {
+        private final TarSparseMap sparseMap;
+
+        private final InputStream data;
+
+        SparseInputStream( TarSparseMap sparseMap, InputStream data )
+        {
+            super( sparseMap.getInputStream( data ) );
+            this.sparseMap = sparseMap;
+            this.data = data;
+        }
+    }
+
+    private static void checkCompleted( List<Future<Void>> futures )
+        throws IOException
+    {
+        for ( Iterator<Future<Void>> it = futures.iterator(); it.hasNext(); )
+        {
+            final Future<Void> future = it.next();
+            if ( future.isDone() )
+            {
+                get( future );
+                it.remove();
+            }
+        }
+    }
+
+    private static void awaitAll( List<Future<Void>> futures )
+        throws IOException
+    {
+        for ( Future<Void> future : futures )
+        {
+            get( future );
+        }
+        futures.clear();
+    }
+
+    private static void get( Future<Void> future )
+        throws IOException
+    {
+        try
+        {
+            future.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new ArchiverException( "Interrupted while extracting", e );
+        }
+        catch ( ExecutionException e )
+        {
+            final Throwable cause = e.getCause();
+            if ( cause instanceof IOException )
+            {
+                throw (IOException) cause;
+            }
+            if ( cause instanceof RuntimeException )
+            {
+                throw (RuntimeException) cause;
+            }
+            if ( cause instanceof Error )
+            {
+                throw (Error) cause;
+            }
+            throw new ArchiverException( cause.getMessage(), cause );
+        }
+    }
+
+    /**
+     * The data of a file entry, handed from the reading thread to a writing thread in chunks.
+     * Every queued chunk holds permits of the shared memory semaphore, until it has been read.
+     */
+    private static class ChunkInputStream
+        extends InputStream
+    {
+        private static final byte[] END = new byte[0];
+
+        private final BlockingQueue<byte[]> chunks = new LinkedBlockingQueue<byte[]>();
+
+        private final Semaphore memory;
+
+        private byte[] current;
+
+        private int currentPos;
+
+        private boolean ended;
+
+        ChunkInputStream( Semaphore memory )
+        {
+            this.memory = memory;
+        }
+
+        /**
+         * Reads the entry's data from the archive, called by the reading thread. The end is
+         * always queued, unless reading the archive fails, in which case the writing threads
+         * are interrupted.
+         */
+        void transferFrom( InputStream in, long size )
+            throws IOException
+        {
+            long remaining = size;
+            try
+            {
+                while ( remaining > 0 )
+                {
+                    final byte[] chunk = new byte[(int) Math.min( CHUNK_SIZE, remaining )];
+                    int length = 0;
+                    while ( length < chunk.length )
+                    {
+                        final int n = in.read( chunk, length, chunk.length - length );
+                        if ( n == -1 )
+                        {
+                            throw new IOException( "Truncated tar entry" );
+                        }
+                        length += n;
+                    }
+                    memory.acquire( chunk.length );
+                    chunks.put( chunk );
+                    remaining -= chunk.length;
+                }
+                chunks.put( END );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException( "Interrupted while extracting" );
+            }
+        }
+
+        public int read()
+            throws IOException
+        {
+            final byte[] b = new byte[1];
+            return read( b, 0, 1 ) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        public int read( byte[] b, int off, int len )
+            throws IOException
+        {
+            if ( len == 0 )
+            {
+                return 0;
+            }
+            if ( !nextChunk() )
+            {
+                return -1;
+            }
+            final int n = Math.min( len, current.length - currentPos );
+            System.arraycopy( current, currentPos, b, off, n );
+            currentPos += n;
+            return n;
+        }
+
+        private boolean nextChunk()
+            throws IOException
+        {
+            while ( !ended && ( current == null || currentPos == current.length ) )
+            {
+                if ( current != null )
+                {
+                    memory.release( current.length );
+                    current = null;
+                }
+                final byte[] chunk;
+                try
+                {
+                    chunk = chunks.take();
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException( "Interrupted while extracting" );
+                }
+                if ( chunk == END )
+                {
+                    ended = true;
+                }
+                else
+                {
+                    current = chunk;
+                    currentPos = 0;
+                }
+            }
+            return !ended;
+        }
+
+        /**
+         * Releases the memory of the chunks, which haven't been read, because the file has been
+         * skipped, or couldn't be written.
+         */
+        void discard()
+            throws IOException
+        {
+            while ( !ended )
+            {
+                if ( current != null )
+                {
+                    currentPos = current.length;
+                }
+                nextChunk();
+            }
+        }
+    }
+
 	/**
 	 * This method wraps the input stream with the
 	 * corresponding decompression method
@@ -143,11 +599,19 @@ private InputStream decompress( UntarCompressionMethod compression, final File f
 		}
 		else if ( compression == UntarCompressionMethod.BZIP2 )
 		{
-			return new BZip2CompressorInputStream( istream );
+			if ( decompressionThreads > 1 )
+			{
+				return new ParallelBZip2InputStream( istream, decompressionThreads );
+			}
+			return new BZip2CompressorInputStream( istream, true );
 		}
         else if ( compression == UntarCompressionMethod.SNAPPY )
         {
-            return new SnappyInputStream( istream );
+            return new ParallelSnappyInputStream( istream, decompressionThreads );
+        }
+        else if ( compression == UntarCompressionMethod.XZ )
+        {
+            return new XZCompressorInputStream( istream, true );
         }
 		return istream;
 	}
@@ -157,7 +621,7 @@ else if ( compression == UntarCompressionMethod.SNAPPY )
      */
     public static enum UntarCompressionMethod
     {
-		NONE("none"), GZIP("gzip"), BZIP2("bzip2"), SNAPPY("snappy");
+		NONE("none"), GZIP("gzip"), BZIP2("bzip2"), SNAPPY("snappy"), XZ("xz");
 
 		final String value;
 
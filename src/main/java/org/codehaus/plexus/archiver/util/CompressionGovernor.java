@@ -0,0 +1,224 @@
+package org.codehaus.plexus.archiver.util;
+
+
+/*
+ * Copyright 2014 The Codehaus Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.codehaus.plexus.archiver.ArchiveEntry;
+import org.codehaus.plexus.archiver.ResourceIterator;
+
+/**
+ * Chooses deflate levels for the entries of an archive, so it is written at a target
+ * throughput, or within a time budget. After every entry, the throughput achieved for it is
+ * compared with the target: a slower entry lowers the level of the next ones, and an entry,
+ * which is faster by {@link #HEADROOM}, raises it. Entries smaller than
+ * {@link #MIN_SAMPLE_SIZE} are too fast to measure, and don't change the level.
+ * <p/>
+ * With a time budget, the target is the throughput, which completes the remaining bytes in the
+ * remaining time, so it rises, when entries take longer than planned, and falls otherwise.
+ * Entries, which are compressed on several threads, are measured on their threads, so the
+ * target is divided by the number of threads.
+ * <p/>
+ * Instances are thread safe.
+ *
+ * @since 3.0.1
+ */
+public class CompressionGovernor
+{
+    public static final int MIN_LEVEL = 1;
+
+    public static final int MAX_LEVEL = 9;
+
+    /**
+     * The level, which entries start with, the default level of zlib.
+     */
+    public static final int DEFAULT_LEVEL = 6;
+
+    /**
+     * The factor, by which an entry must exceed the target throughput to raise the level.
+     */
+    public static final double HEADROOM = 1.5;
+
+    /**
+     * The size of the smallest entries, which change the level.
+     */
+    public static final long MIN_SAMPLE_SIZE = 64 * 1024;
+
+    private final long targetThroughput;
+
+    private final long deadline;
+
+    private final long totalSize;
+
+    private final int threads;
+
+    private int level;
+
+    private long processedSize;
+
+    private final long[] entries = new long[MAX_LEVEL + 1];
+
+    private final long[] sizes = new long[MAX_LEVEL + 1];
+
+    private final long[] compressedSizes = new long[MAX_LEVEL + 1];
+
+    private final long[] nanos = new long[MAX_LEVEL + 1];
+
+    private CompressionGovernor( long targetThroughput, long deadline, long totalSize, int threads, int level )
+    {
+        if ( threads < 1 )
+        {
+            throw new IllegalArgumentException( "At least one thread is required: " + threads );
+        }
+        this.targetThroughput = targetThroughput;
+        this.deadline = deadline;
+        this.totalSize = totalSize;
+        this.threads = threads;
+        this.level = level >= MIN_LEVEL && level <= MAX_LEVEL ? level : DEFAULT_LEVEL;
+    }
+
+    /**
+     * @param bytesPerSecond the number of uncompressed bytes, which are to be written per second.
+     * @param threads        the number of threads, which compress entries concurrently.
+     * @param level          the level of the first entries, or -1 for {@link #DEFAULT_LEVEL}.
+     */
+    public static CompressionGovernor forThroughput( long bytesPerSecond, int threads, int level )
+    {
+        if ( bytesPerSecond <= 0 )
+        {
+            throw new IllegalArgumentException( "Invalid throughput: " + bytesPerSecond );
+        }
+        return new CompressionGovernor( bytesPerSecond, 0, 0, threads, level );
+    }
+
+    /**
+     * @param millis    the time, in which all entries are to be written, starting now.
+     * @param totalSize the uncompressed size of all entries.
+     * @param threads   the number of threads, which compress entries concurrently.
+     * @param level     the level of the first entries, or -1 for {@link #DEFAULT_LEVEL}.
+     */
+    public static CompressionGovernor forTimeBudget( long millis, long totalSize, int threads, int level )
+    {
+        if ( millis <= 0 )
+        {
+            throw new IllegalArgumentException( "Invalid time budget: " + millis );
+        }
+        return new CompressionGovernor( 0, System.nanoTime() + millis * 1000000L, totalSize, threads, level );
+    }
+
+    /**
+     * @return the uncompressed size of the files among the resources, for a time budget.
+     */
+    public static long getTotalSize( ResourceIterator resources )
+    {
+        long totalSize = 0;
+        while ( resources.hasNext() )
+        {
+            final ArchiveEntry entry = resources.next();
+            if ( entry.getType() == ArchiveEntry.FILE )
+            {
+                totalSize += Math.max( 0, entry.getResource().getSize() );
+            }
+        }
+        return totalSize;
+    }
+
+    /**
+     * @return the level for the next entry.
+     */
+    public synchronized int getLevel()
+    {
+        return level;
+    }
+
+    /**
+     * Records the compression of an entry, and adjusts the level for the next entries.
+     *
+     * @param entryLevel     the level, which the entry has been compressed with.
+     * @param size           the uncompressed size of the entry.
+     * @param compressedSize the compressed size of the entry.
+     * @param entryNanos     the time, which compressing the entry took.
+     */
+    public synchronized void record( int entryLevel, long size, long compressedSize, long entryNanos )
+    {
+        if ( entryLevel < MIN_LEVEL || entryLevel > MAX_LEVEL )
+        {
+            throw new IllegalArgumentException( "Invalid level: " + entryLevel );
+        }
+        entries[entryLevel]++;
+        sizes[entryLevel] += size;
+        compressedSizes[entryLevel] += compressedSize;
+        nanos[entryLevel] += entryNanos;
+        processedSize += size;
+
+        if ( size < MIN_SAMPLE_SIZE || entryNanos <= 0 )
+        {
+            return;
+        }
+        final double achieved = size * 1e9 / entryNanos;
+        final double target = getTargetThroughput() / threads;
+        if ( achieved < target )
+        {
+            level = Math.max( MIN_LEVEL, level - 1 );
+        }
+        else if ( achieved > target * HEADROOM )
+        {
+            level = Math.min( MAX_LEVEL, level + 1 );
+        }
+    }
+
+    /**
+     * @return the throughput, in bytes per second, which all threads together have to achieve.
+     */
+    private double getTargetThroughput()
+    {
+        if ( deadline == 0 )
+        {
+            return targetThroughput;
+        }
+        final long remainingNanos = deadline - System.nanoTime();
+        if ( remainingNanos <= 0 )
+        {
+            return Double.MAX_VALUE;
+        }
+        return Math.max( 0, totalSize - processedSize ) * 1e9 / remainingNanos;
+    }
+
+    /**
+     * @return a line for every level, which has been used, with the number of entries, their
+     *         sizes, the achieved ratio and throughput.
+     */
+    public synchronized List<String> getReport()
+    {
+        final List<String> report = new ArrayList<String>();
+        for ( int i = MIN_LEVEL; i <= MAX_LEVEL; i++ )
+        {
+            if ( entries[i] == 0 )
+            {
+                continue;
+            }
+            final double ratio = sizes[i] > 0 ? 100.0 * compressedSizes[i] / sizes[i] : 100.0;
+            final double throughput = nanos[i] > 0 ? sizes[i] * 1e9 / nanos[i] / ( 1024 * 1024 ) : 0;
+            report.add( String.format( Locale.ENGLISH, "level %d: %d entries, %d to %d bytes (%.1f%%), %.1f MB/s", i,
+                                       entries[i], sizes[i], compressedSizes[i], ratio, throughput ) );
+        }
+        return report;
+    }
+}
@@ -0,0 +1,158 @@
+package org.codehaus.plexus.archiver.util;
+
+
+/*
+ * Copyright 2014 The Codehaus Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Locale;
+import java.util.zip.Deflater;
+
+/**
+ * Tuning of the compressing writers: the compression level, the deflate strategy, and the
+ * sizes of the compressor's buffer and of the output buffer. Every writer applies what its
+ * method supports:
+ * <ul>
+ * <li>deflate, for zip and gzip, uses the level and the strategy, and deflates into a buffer of
+ * the given size. The deflate buffer of zip entries can't be changed.</li>
+ * <li>bzip2 uses the level as the block size, in units of 100k; level 0 is the smallest
+ * block size.</li>
+ * <li>xz uses the level as the preset.</li>
+ * <li>snappy uses the buffer size as the size of its blocks.</li>
+ * </ul>
+ * A level of -1, or a buffer size of 0, selects the default of the writer.
+ *
+ * @since 3.0.1
+ */
+public final class CompressionProfile
+{
+    /**
+     * The fastest level, with a larger output buffer, as compression keeps up with the disk.
+     */
+    public static final CompressionProfile FASTEST =
+        new CompressionProfile( "fastest", 1, Deflater.DEFAULT_STRATEGY, 0, 256 * 1024 );
+
+    /**
+     * The defaults of all writers.
+     */
+    public static final CompressionProfile BALANCED =
+        new CompressionProfile( "balanced", -1, Deflater.DEFAULT_STRATEGY, 0, 0 );
+
+    /**
+     * The best compression.
+     */
+    public static final CompressionProfile SMALLEST =
+        new CompressionProfile( "smallest", 9, Deflater.DEFAULT_STRATEGY, 0, 0 );
+
+    private final String name;
+
+    private final int level;
+
+    private final int strategy;
+
+    private final int bufferSize;
+
+    private final int outputBufferSize;
+
+    /**
+     * Creates a custom profile.
+     *
+     * @param level            the compression level, from 0 to 9, or -1 for the default.
+     * @param strategy         the deflate strategy, see {@link Deflater#setStrategy(int)}.
+     * @param bufferSize       the size of the compressor's buffer, or 0 for the default.
+     * @param outputBufferSize the size of the buffer in front of the file, or 0 for the default.
+     */
+    public CompressionProfile( int level, int strategy, int bufferSize, int outputBufferSize )
+    {
+        this( "custom", level, strategy, bufferSize, outputBufferSize );
+    }
+
+    private CompressionProfile( String name, int level, int strategy, int bufferSize, int outputBufferSize )
+    {
+        if ( level < -1 || level > 9 )
+        {
+            throw new IllegalArgumentException( "Invalid compression level: " + level );
+        }
+        if ( strategy != Deflater.DEFAULT_STRATEGY && strategy != Deflater.FILTERED
+            && strategy != Deflater.HUFFMAN_ONLY )
+        {
+            throw new IllegalArgumentException( "Invalid deflate strategy: " + strategy );
+        }
+        if ( bufferSize < 0 || outputBufferSize < 0 )
+        {
+            throw new IllegalArgumentException( "Invalid buffer size: " + Math.min( bufferSize, outputBufferSize ) );
+        }
+        this.name = name;
+        this.level = level;
+        this.strategy = strategy;
+        this.bufferSize = bufferSize;
+        this.outputBufferSize = outputBufferSize;
+    }
+
+    /**
+     * @param name the name of a preset, like "fastest", in any case.
+     */
+    public static CompressionProfile forName( String name )
+    {
+        for ( CompressionProfile profile : new CompressionProfile[]{ FASTEST, BALANCED, SMALLEST } )
+        {
+            if ( profile.name.equalsIgnoreCase( name ) )
+            {
+                return profile;
+            }
+        }
+        throw new IllegalArgumentException( "Unknown compression profile: " + name );
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public int getLevel()
+    {
+        return level;
+    }
+
+    public int getStrategy()
+    {
+        return strategy;
+    }
+
+    public int getBufferSize()
+    {
+        return bufferSize;
+    }
+
+    public int getOutputBufferSize()
+    {
+        return outputBufferSize;
+    }
+
+    /**
+     * @param defaultSize the size, which the writer uses by default.
+     * @return the size of the compressor's buffer.
+     */
+    public int getBufferSize( int defaultSize )
+    {
+        return bufferSize > 0 ? bufferSize : defaultSize;
+    }
+
+    public String toString()
+    {
+        return String.format( Locale.ENGLISH, "%s (level %d, strategy %d, buffer %d, output buffer %d)", name, level,
+                              strategy, bufferSize, outputBufferSize );
+    }
+}
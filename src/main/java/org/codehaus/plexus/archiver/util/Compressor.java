@@ -40,6 +40,8 @@
     private File destFile;
 
     private PlexusIoResource source;
+
+    private CompressionProfile profile = CompressionProfile.BALANCED;
     
     /**
      * the required destination file.
@@ -72,6 +74,36 @@ public PlexusIoResource getSource()
         return source;
     }
 
+    /**
+     * Sets the tuning of the compression, see {@link CompressionProfile} for what every
+     * compressor supports. Defaults to {@link CompressionProfile#BALANCED}.
+     *
+     * @since 3.0.1
+     */
+    public void setProfile( CompressionProfile profile )
+    {
+        this.profile = profile;
+    }
+
+    /**
+     * @since 3.0.1
+     */
+    public CompressionProfile getProfile()
+    {
+        return profile;
+    }
+
+    /**
+     * @return a buffered stream, writing to the destination file, with the output buffer size
+     *         of the profile.
+     * @since 3.0.1
+     */
+    protected OutputStream destFileOutputStream()
+        throws IOException
+    {
+        return Streams.bufferedOutputStream( Streams.fileOutputStream( destFile ), profile.getOutputBufferSize() );
+    }
+
     /**
      * compress a stream to an output stream
      *
@@ -82,14 +114,21 @@ public PlexusIoResource getSource()
     private void compressFile( InputStream in, OutputStream zOut )
         throws IOException
     {
-        byte[] buffer = new byte[8 * 1024];
-        int count = 0;
-        do
+        byte[] buffer = Streams.borrowBuffer();
+        try
+        {
+            int count = 0;
+            do
+            {
+                zOut.write( buffer, 0, count );
+                count = in.read( buffer, 0, buffer.length );
+            }
+            while ( count != -1 );
+        }
+        finally
         {
-            zOut.write( buffer, 0, count );
-            count = in.read( buffer, 0, buffer.length );
+            Streams.returnBuffer( buffer );
         }
-        while ( count != -1 );
     }
 
     /**
@@ -0,0 +1,123 @@
+package org.codehaus.plexus.archiver.util;
+
+/*
+ * Copyright 2014 The Codehaus Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A store of extracted file contents, which is shared by the extractions of the same archives
+ * into many directories. Extracted files are hard links to the stored files, so their contents
+ * are written, and take up disk space, only once. If a link can't be created, for example
+ * because the store is on another file system or the JVM predates Java 7, the stored file is
+ * copied.
+ * <p/>
+ * Files are stored by their size, checksum, mode and timestamp. As the mode and timestamp
+ * are part of the key, applying them to a linked file doesn't affect other extractions.
+ * Linked files share their contents with the store, so they must not be modified in place;
+ * the unarchivers replace existing files, rather than writing through them.
+ * <p/>
+ * Stored files are added by renaming a complete temporary file, so a store may be shared by
+ * several threads and processes.
+ *
+ * @since 3.0.1
+ */
+public class ExtractionCache
+{
+    private final File storeDirectory;
+
+    private boolean useDigest = false;
+
+    public ExtractionCache( File storeDirectory )
+    {
+        this.storeDirectory = storeDirectory;
+    }
+
+    public File getStoreDirectory()
+    {
+        return storeDirectory;
+    }
+
+    /**
+     * Sets, whether files are stored by a SHA-256 digest of their contents, even if the
+     * archive provides a CRC for them. Entries without a CRC, like those of tar archives, are
+     * always stored by their digest. Computing the digest requires decompressing every entry,
+     * so only disk space is saved. Defaults to false.
+     */
+    public void setUseDigest( boolean useDigest )
+    {
+        this.useDigest = useDigest;
+    }
+
+    public boolean isUseDigest()
+    {
+        return useDigest;
+    }
+
+    /**
+     * @param checksum the hexadecimal CRC or digest of the contents.
+     * @param mode     the unix mode of the file, or null if unknown.
+     * @return the location of the stored file, which may not exist yet.
+     */
+    public File getFile( String checksum, long size, Integer mode, long lastModified )
+    {
+        final String key = checksum + "-" + size + "-" + Integer.toOctalString( mode != null ? mode : 0 ) + "-"
+            + lastModified;
+        return new File( new File( storeDirectory, checksum.substring( 0, 2 ) ), key );
+    }
+
+    /**
+     * @return a new, empty file in the store, whose contents may be {@link #add(File, File) added} later.
+     */
+    public File createTempFile()
+        throws IOException
+    {
+        final File tempDirectory = new File( storeDirectory, "tmp" );
+        tempDirectory.mkdirs();
+        return File.createTempFile( "entry", ".tmp", tempDirectory );
+    }
+
+    /**
+     * Moves a complete temporary file to its location in the store. If another thread or process
+     * has stored the same contents meanwhile, the temporary file is discarded.
+     *
+     * @return the stored file.
+     */
+    public File add( File tempFile, File storedFile )
+        throws IOException
+    {
+        storedFile.getParentFile().mkdirs();
+        if ( !tempFile.renameTo( storedFile ) )
+        {
+            tempFile.delete();
+            if ( !storedFile.isFile() )
+            {
+                throw new IOException( "Unable to add " + storedFile + " to the extraction cache" );
+            }
+        }
+        return storedFile;
+    }
+
+    /**
+     * Replaces the target file with a hard link to the stored file, or with a copy of it.
+     */
+    public void link( File storedFile, File target )
+        throws IOException
+    {
+        HardLinks.link( storedFile, target );
+    }
+}
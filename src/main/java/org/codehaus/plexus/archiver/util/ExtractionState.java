@@ -0,0 +1,230 @@
+package org.codehaus.plexus.archiver.util;
+
+/*
+ * Copyright 2014 The Codehaus Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * The entries of an archive, as they have been extracted into a directory. Comparing the
+ * state of a previous extraction with the headers of the archive tells which entries need to
+ * be written again, and which files have disappeared from the archive.
+ * <p/>
+ * Entries may be recorded by several threads concurrently.
+ *
+ * @since 3.0.1
+ */
+public class ExtractionState
+{
+    private static final int MAGIC = 0x50585354;
+
+    private static final int VERSION = 1;
+
+    /**
+     * The value of a checksum, which isn't known, like for tar entries.
+     */
+    public static final long UNKNOWN_CRC = -1;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * Records an entry.
+     *
+     * @param mode the unix mode of the entry, or null if unknown.
+     * @return the previously recorded state of the entry, or null.
+     */
+    public Entry put( String name, long size, long crc, Integer mode, long lastModified )
+    {
+        return entries.put( name, new Entry( size, crc, mode != null ? mode : 0, lastModified ) );
+    }
+
+    /**
+     * Records an entry with a state of another extraction.
+     *
+     * @return the previously recorded state of the entry, or null.
+     */
+    public Entry put( String name, Entry entry )
+    {
+        return entries.put( name, entry );
+    }
+
+    /**
+     * @return the recorded state of the entry, or null.
+     */
+    public Entry get( String name )
+    {
+        return entries.get( name );
+    }
+
+    public Set<String> getNames()
+    {
+        return entries.keySet();
+    }
+
+    public boolean isEmpty()
+    {
+        return entries.isEmpty();
+    }
+
+    /**
+     * Reads a state file, written by {@link #save(File)}.
+     *
+     * @return the state, which is empty, if the file doesn't exist or can't be read.
+     */
+    public static ExtractionState load( File file )
+    {
+        final ExtractionState state = new ExtractionState();
+        if ( !file.isFile() )
+        {
+            return state;
+        }
+        DataInputStream in = null;
+        try
+        {
+            in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) );
+            if ( in.readInt() != MAGIC || in.readInt() != VERSION )
+            {
+                return state;
+            }
+            final int count = in.readInt();
+            for ( int i = 0; i < count; i++ )
+            {
+                final String name = in.readUTF();
+                state.entries.put( name, new Entry( in.readLong(), in.readLong(), in.readInt(), in.readLong() ) );
+            }
+            return state;
+        }
+        catch ( IOException e )
+        {
+            // Unreadable or truncated, so everything is extracted again
+            return new ExtractionState();
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+    }
+
+    /**
+     * Writes the state to a temporary file first, which replaces the given file, so an
+     * interrupted write doesn't leave a truncated state.
+     */
+    public void save( File file )
+        throws IOException
+    {
+        final File temp = new File( file.getPath() + ".tmp" );
+        final DataOutputStream out =
+            new DataOutputStream( new BufferedOutputStream( new FileOutputStream( temp ) ) );
+        try
+        {
+            out.writeInt( MAGIC );
+            out.writeInt( VERSION );
+            out.writeInt( entries.size() );
+            for ( Map.Entry<String, Entry> e : entries.entrySet() )
+            {
+                final Entry entry = e.getValue();
+                out.writeUTF( e.getKey() );
+                out.writeLong( entry.size );
+                out.writeLong( entry.crc );
+                out.writeInt( entry.mode );
+                out.writeLong( entry.lastModified );
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+        if ( !temp.renameTo( file ) && !( file.delete() && temp.renameTo( file ) ) )
+        {
+            temp.delete();
+            throw new IOException( "Unable to write " + file );
+        }
+    }
+
+    /**
+     * The recorded state of an entry.
+     */
+    public static final class Entry
+    {
+        private final long size;
+
+        private final long crc;
+
+        private final int mode;
+
+        private final long lastModified;
+
+        Entry( long size, long crc, int mode, long lastModified )
+        {
+            this.size = size;
+            this.crc = crc;
+            this.mode = mode;
+            this.lastModified = lastModified;
+        }
+
+        public long getSize()
+        {
+            return size;
+        }
+
+        public long getCrc()
+        {
+            return crc;
+        }
+
+        public int getMode()
+        {
+            return mode;
+        }
+
+        public long getLastModified()
+        {
+            return lastModified;
+        }
+
+        @Override
+        public boolean equals( Object o )
+        {
+            if ( !( o instanceof Entry ) )
+            {
+                return false;
+            }
+            final Entry other = (Entry) o;
+            return size == other.size && crc == other.crc && mode == other.mode && lastModified == other.lastModified;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            int result = (int) ( size ^ ( size >>> 32 ) );
+            result = 31 * result + (int) ( crc ^ ( crc >>> 32 ) );
+            result = 31 * result + mode;
+            return 31 * result + (int) ( lastModified ^ ( lastModified >>> 32 ) );
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package org.codehaus.plexus.archiver.util;
+
+/*
+ * Copyright 2014 The Codehaus Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.codehaus.plexus.components.io.attributes.Java7FileAttributes;
+import org.codehaus.plexus.components.io.attributes.Java7Reflector;
+import org.codehaus.plexus.components.io.attributes.PlexusIoResourceAttributeUtils;
+import org.codehaus.plexus.components.io.attributes.PlexusIoResourceAttributes;
+import org.codehaus.plexus.components.io.resources.PlexusIoResource;
+import org.codehaus.plexus.components.io.resources.ResourceFactory;
+
+/**
+ * Reads the attributes of files, resolving user and group ids to names through caches, which
+ * are shared by all files. {@link Java7FileAttributes} reads the <code>unix:*</code>
+ * attributes of a file in one call, and only looks up the names of ids, which aren't cached.
+ * <p/>
+ * The caches are bounded: once they are full, further names are looked up on every call, but
+ * cached names are never evicted. Instances are thread safe.
+ *
+ * @since 3.0.1
+ */
+public final class FileAttributesResolver
+{
+    /**
+     * The default maximum number of user names, and of group names, which are cached.
+     */
+    public static final int DEFAULT_MAX_NAMES = 1024;
+
+    private static final FileAttributesResolver SHARED = new FileAttributesResolver( DEFAULT_MAX_NAMES );
+
+    private final NameCache userNames;
+
+    private final NameCache groupNames;
+
+    public FileAttributesResolver( int maxNames )
+    {
+        userNames = new NameCache( maxNames );
+        groupNames = new NameCache( maxNames );
+    }
+
+    /**
+     * @return the resolver, which is used by the archivers and resource collections of this
+     *         project.
+     */
+    public static FileAttributesResolver getShared()
+    {
+        return SHARED;
+    }
+
+    public PlexusIoResourceAttributes getAttributes( File file )
+        throws IOException
+    {
+        if ( Java7Reflector.isAtLeastJava7() )
+        {
+            return new Java7FileAttributes( file, userNames, groupNames );
+        }
+        return PlexusIoResourceAttributeUtils.getFileAttributes( file );
+    }
+
+    /**
+     * Creates a resource for the file, like {@link ResourceFactory#createResource(File)}, with
+     * attributes read by this resolver.
+     */
+    public PlexusIoResource createResource( File file )
+        throws IOException
+    {
+        return ResourceFactory.createResource( file, file.getName(), null, getAttributes( file ) );
+    }
+
+    /**
+     * @return the number of cached user and group names.
+     */
+    public int size()
+    {
+        return userNames.size() + groupNames.size();
+    }
+
+    private static class NameCache
+        extends ConcurrentHashMap<Integer, String>
+    {
+        private final int maxNames;
+
+        NameCache( int maxNames )
+        {
+            this.maxNames = maxNames;
+        }
+
+        public String put( Integer id, String name )
+        {
+            // Without eviction, a name found by containsKey() is still there for get()
+            if ( name == null || ( size() >= maxNames && !containsKey( id ) ) )
+            {
+                return null;
+            }
+            return super.put( id, name );
+        }
+    }
+}
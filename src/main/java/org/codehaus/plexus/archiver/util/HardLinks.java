@@ -0,0 +1,138 @@
+package org.codehaus.plexus.archiver.util;
+
+/*
+ * Copyright 2014 The Codehaus Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+
+import org.codehaus.plexus.components.io.attributes.Java7Reflector;
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * Utility methods for hard links. Hard links require Java 7; on older JVMs, files are
+ * copied instead, and no file is reported as linked.
+ *
+ * @since 3.0.1
+ */
+public final class HardLinks
+{
+    private HardLinks()
+    {
+    }
+
+    /**
+     * Returns a key, which is equal for all hard links to the same file, like its device and
+     * inode number on unix.
+     *
+     * @return the key, or null, if the file has no other links, or if its links can't be
+     *         detected.
+     */
+    public static Object getFileKey( File file )
+    {
+        if ( !Java7Reflector.isAtLeastJava7() )
+        {
+            return null;
+        }
+        try
+        {
+            return Java7Links.getFileKey( file );
+        }
+        catch ( IOException e )
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the link with a hard link to the existing file, or with a copy of it, if a link
+     * can't be created, for example because they are on different file systems.
+     */
+    public static void link( File existing, File link )
+        throws IOException
+    {
+        if ( link.exists() && !link.delete() )
+        {
+            throw new IOException( "Unable to replace " + link );
+        }
+        if ( Java7Reflector.isAtLeastJava7() )
+        {
+            try
+            {
+                Java7Links.createLink( link, existing );
+                return;
+            }
+            catch ( IOException e )
+            {
+                // Another file system, or no support for hard links
+            }
+            catch ( UnsupportedOperationException e )
+            {
+                // No support for hard links
+            }
+        }
+        FileUtils.copyFile( existing, link );
+    }
+
+    /**
+     * Removes the file, if it exists, so writing to its path creates a new file, rather than
+     * changing the contents of other hard links to it, like the files of an
+     * {@link ExtractionCache}.
+     */
+    public static void unlink( File file )
+        throws IOException
+    {
+        if ( file.isFile() && !file.delete() )
+        {
+            throw new IOException( "Unable to replace " + file );
+        }
+    }
+
+    // Only loaded on Java 7 and later
+    private static class Java7Links
+    {
+        static Object getFileKey( File file )
+            throws IOException
+        {
+            final java.nio.file.Path path = file.toPath();
+            try
+            {
+                final Object links =
+                    java.nio.file.Files.getAttribute( path, "unix:nlink", java.nio.file.LinkOption.NOFOLLOW_LINKS );
+                if ( links instanceof Number && ( (Number) links ).intValue() < 2 )
+                {
+                    return null;
+                }
+            }
+            catch ( UnsupportedOperationException e )
+            {
+                // No unix attributes, the file key alone tells
+            }
+            catch ( IllegalArgumentException e )
+            {
+                // No unix attributes, the file key alone tells
+            }
+            return java.nio.file.Files.readAttributes( path, java.nio.file.attribute.BasicFileAttributes.class,
+                                                       java.nio.file.LinkOption.NOFOLLOW_LINKS ).fileKey();
+        }
+
+        static void createLink( File link, File existing )
+            throws IOException
+        {
+            java.nio.file.Files.createLink( link.toPath(), existing.toPath() );
+        }
+    }
+}
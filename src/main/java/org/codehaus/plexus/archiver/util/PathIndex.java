@@ -0,0 +1,240 @@
+package org.codehaus.plexus.archiver.util;
+
+/*
+ * Copyright 2014 The Codehaus Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A set of archive paths, stored as a trie of their '/' separated segments. Common
+ * parent directories are stored once, and lookups take time proportional to the
+ * depth of a path rather than to the number of paths.
+ * <p/>
+ * Paths ending with a '/' denote directories, and are distinct from the
+ * same path without the trailing slash. No normalization is applied.
+ *
+ * @since 3.0.1
+ */
+public class PathIndex
+{
+    private static final int FILE = 1;
+
+    private static final int DIRECTORY = 2;
+
+    private final Node root = new Node( "" );
+
+    private int size;
+
+    /**
+     * Adds a path.
+     *
+     * @return true, if the path has not been contained before.
+     */
+    public boolean add( String path )
+    {
+        Node node = root;
+        int start = 0;
+        int slash;
+        while ( ( slash = path.indexOf( '/', start ) ) != -1 )
+        {
+            node = node.getOrCreateChild( path, start, slash );
+            start = slash + 1;
+        }
+        int flag = DIRECTORY;
+        if ( start < path.length() )
+        {
+            node = node.getOrCreateChild( path, start, path.length() );
+            flag = FILE;
+        }
+        if ( ( node.flags & flag ) != 0 )
+        {
+            return false;
+        }
+        node.flags |= flag;
+        size++;
+        return true;
+    }
+
+    public boolean contains( String path )
+    {
+        Node node = root;
+        int start = 0;
+        int slash;
+        while ( ( slash = path.indexOf( '/', start ) ) != -1 )
+        {
+            node = node.getChild( path, start, slash );
+            if ( node == null )
+            {
+                return false;
+            }
+            start = slash + 1;
+        }
+        int flag = DIRECTORY;
+        if ( start < path.length() )
+        {
+            node = node.getChild( path, start, path.length() );
+            if ( node == null )
+            {
+                return false;
+            }
+            flag = FILE;
+        }
+        return ( node.flags & flag ) != 0;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    public void clear()
+    {
+        root.flags = 0;
+        root.children = null;
+        root.childMap = null;
+        root.childCount = 0;
+        size = 0;
+    }
+
+    /**
+     * @return all contained paths, parents before their children.
+     */
+    public List<String> getPaths()
+    {
+        final List<String> paths = new ArrayList<String>( size );
+        collect( root, new StringBuilder(), paths );
+        return paths;
+    }
+
+    /**
+     * @return the contained paths of files, which have no parent directory.
+     */
+    public List<String> getRootFiles()
+    {
+        final List<String> files = new ArrayList<String>();
+        for ( int i = 0; i < root.childCount; i++ )
+        {
+            final Node child = root.children[i];
+            if ( ( child.flags & FILE ) != 0 )
+            {
+                files.add( child.segment );
+            }
+        }
+        return files;
+    }
+
+    private static void collect( Node node, StringBuilder path, List<String> paths )
+    {
+        final int length = path.length();
+        for ( int i = 0; i < node.childCount; i++ )
+        {
+            final Node child = node.children[i];
+            path.append( child.segment );
+            if ( ( child.flags & FILE ) != 0 )
+            {
+                paths.add( path.toString() );
+            }
+            path.append( '/' );
+            if ( ( child.flags & DIRECTORY ) != 0 )
+            {
+                paths.add( path.toString() );
+            }
+            collect( child, path, paths );
+            path.setLength( length );
+        }
+    }
+
+    private static class Node
+    {
+        // above this number of children, they are looked up by hash
+        private static final int MAX_LINEAR_CHILDREN = 8;
+
+        private final String segment;
+
+        private int flags;
+
+        // children in insertion order
+        private Node[] children;
+
+        private int childCount;
+
+        private Map<String, Node> childMap;
+
+        Node( String segment )
+        {
+            this.segment = segment;
+        }
+
+        Node getChild( String path, int start, int end )
+        {
+            if ( childMap != null )
+            {
+                return childMap.get( path.substring( start, end ) );
+            }
+            final int length = end - start;
+            for ( int i = 0; i < childCount; i++ )
+            {
+                final Node child = children[i];
+                if ( child.segment.length() == length && path.regionMatches( start, child.segment, 0, length ) )
+                {
+                    return child;
+                }
+            }
+            return null;
+        }
+
+        Node getOrCreateChild( String path, int start, int end )
+        {
+            Node child = getChild( path, start, end );
+            if ( child == null )
+            {
+                child = new Node( path.substring( start, end ) );
+                if ( children == null )
+                {
+                    children = new Node[2];
+                }
+                else if ( childCount == children.length )
+                {
+                    final Node[] grown = new Node[childCount * 2];
+                    System.arraycopy( children, 0, grown, 0, childCount );
+                    children = grown;
+                }
+                children[childCount++] = child;
+                if ( childMap != null )
+                {
+                    childMap.put( child.segment, child );
+                }
+                else if ( childCount > MAX_LINEAR_CHILDREN )
+                {
+                    childMap = new HashMap<String, Node>( childCount * 2 );
+                    for ( int i = 0; i < childCount; i++ )
+                    {
+                        childMap.put( children[i].segment, children[i] );
+                    }
+                }
+            }
+            return child;
+        }
+    }
+}
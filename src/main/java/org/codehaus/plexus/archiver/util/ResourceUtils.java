@@ -83,7 +83,7 @@ public static void copyFile( PlexusIoResource in, File outFile )
         {
             input = in.getContents();
             output = new FileOutputStream( outFile );
-            IOUtil.copy( input, output );
+            Streams.copy( input, output );
         }
         finally
         {
@@ -102,7 +102,7 @@ public static void copyFile( InputStream input, File outFile )
         try
         {
             output = new FileOutputStream( outFile );
-            IOUtil.copy( input, output );
+            Streams.copy( input, output );
         }
         finally
         {
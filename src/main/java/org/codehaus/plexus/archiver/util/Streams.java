@@ -14,6 +14,7 @@
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.ref.SoftReference;
 
 /*
  * Copyright 2014 The Codehaus Foundation.
@@ -33,6 +34,13 @@
 public class Streams
 {
 
+    private static final int BUFFERS_PER_THREAD = 4;
+
+    private static volatile int bufferSize = 64 * 1024;
+
+    // softly referenced, so the pools of idle threads are reclaimed, when memory gets low
+    private static final ThreadLocal<SoftReference<byte[][]>> BUFFERS = new ThreadLocal<SoftReference<byte[][]>>();
+
     public static BufferedInputStream bufferedInputStream( InputStream is )
     {
         return new BufferedInputStream( is, 65536 );
@@ -43,11 +51,137 @@ public static BufferedOutputStream bufferedOutputStream( OutputStream os )
         return new BufferedOutputStream( os, 65536 );
     }
 
+    /**
+     * @param size the size of the buffer, or 0 for the default of 64k.
+     * @since 3.0.1
+     */
+    public static BufferedOutputStream bufferedOutputStream( OutputStream os, int size )
+    {
+        return new BufferedOutputStream( os, size > 0 ? size : 65536 );
+    }
+
+    /**
+     * @deprecated Use {@link #borrowBuffer()} and {@link #returnBuffer(byte[])}, which reuse
+     *             the buffers of the current thread.
+     */
+    @Deprecated
     public static byte[] cacheBuffer()
     {
         return new byte[8 * 1024];
     }
 
+    /**
+     * Sets the size of the buffers handed out by {@link #borrowBuffer()}. Buffers of a
+     * different size, that are already pooled, are dropped when they are returned.
+     * Defaults to 64k.
+     *
+     * @since 3.0.1
+     */
+    public static void setBufferSize( int bufferSize )
+    {
+        if ( bufferSize <= 0 )
+        {
+            throw new IllegalArgumentException( "Buffer size must be positive: " + bufferSize );
+        }
+        Streams.bufferSize = bufferSize;
+    }
+
+    /**
+     * @since 3.0.1
+     */
+    public static int getBufferSize()
+    {
+        return bufferSize;
+    }
+
+    /**
+     * Takes a copy buffer from the current thread's pool, or allocates one if the pool is
+     * exhausted. The buffer must not be used anymore after passing it to
+     * {@link #returnBuffer(byte[])}. A thread pools at most four buffers, which the garbage
+     * collector may reclaim, when memory gets low.
+     *
+     * @since 3.0.1
+     */
+    public static byte[] borrowBuffer()
+    {
+        final byte[][] buffers = getBuffers();
+        final int size = bufferSize;
+        for ( int i = 0; i < buffers.length; i++ )
+        {
+            final byte[] buffer = buffers[i];
+            if ( buffer != null )
+            {
+                buffers[i] = null;
+                if ( buffer.length == size )
+                {
+                    return buffer;
+                }
+            }
+        }
+        return new byte[size];
+    }
+
+    /**
+     * Returns a buffer obtained by {@link #borrowBuffer()} to the current thread's pool.
+     *
+     * @since 3.0.1
+     */
+    public static void returnBuffer( byte[] buffer )
+    {
+        if ( buffer.length != bufferSize )
+        {
+            return;
+        }
+        final byte[][] buffers = getBuffers();
+        for ( int i = 0; i < buffers.length; i++ )
+        {
+            if ( buffers[i] == null )
+            {
+                buffers[i] = buffer;
+                return;
+            }
+        }
+    }
+
+    private static byte[][] getBuffers()
+    {
+        final SoftReference<byte[][]> reference = BUFFERS.get();
+        byte[][] buffers = reference != null ? reference.get() : null;
+        if ( buffers == null )
+        {
+            buffers = new byte[BUFFERS_PER_THREAD][];
+            BUFFERS.set( new SoftReference<byte[][]>( buffers ) );
+        }
+        return buffers;
+    }
+
+    /**
+     * Copies the input to the output using a pooled buffer. Neither stream is closed.
+     *
+     * @return the number of bytes copied
+     * @since 3.0.1
+     */
+    public static long copy( @WillNotClose InputStream input, @WillNotClose OutputStream output )
+        throws IOException
+    {
+        final byte[] buffer = borrowBuffer();
+        try
+        {
+            long size = 0;
+            int n;
+            while ( ( n = input.read( buffer ) ) != -1 )
+            {
+                output.write( buffer, 0, n );
+                size += n;
+            }
+            return size;
+        }
+        finally
+        {
+            returnBuffer( buffer );
+        }
+    }
+
     public static FileInputStream fileInputStream( File file )
         throws FileNotFoundException
     {
@@ -107,9 +241,9 @@ public static void copyFullyDontCloseOutput( @WillClose InputStream zIn, @WillNo
         throws ArchiverException
     {
         // There must be 1 million libs out there that do this
+        final byte[] buffer = borrowBuffer();
         try
         {
-            byte[] buffer = cacheBuffer();
             int count = 0;
             do
             {
@@ -133,6 +267,7 @@ public static void copyFullyDontCloseOutput( @WillClose InputStream zIn, @WillNo
         }
         finally
         {
+            returnBuffer( buffer );
             IOUtil.close( zIn );
         }
     }
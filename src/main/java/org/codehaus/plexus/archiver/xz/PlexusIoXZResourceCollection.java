@@ -0,0 +1,65 @@
+package org.codehaus.plexus.archiver.xz;
+
+/*
+ * Copyright 2014 The Codehaus Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.codehaus.plexus.archiver.util.FileAttributesResolver;
+import org.codehaus.plexus.components.io.attributes.PlexusIoResourceAttributes;
+import org.codehaus.plexus.components.io.resources.PlexusIoCompressedFileResourceCollection;
+import org.codehaus.plexus.util.IOUtil;
+
+import javax.annotation.Nonnull;
+import javax.annotation.WillNotClose;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * @since 3.0.1
+ */
+public class PlexusIoXZResourceCollection
+    extends PlexusIoCompressedFileResourceCollection
+{
+    @Nonnull
+    protected @WillNotClose InputStream getInputStream( File file )
+        throws IOException
+    {
+        InputStream fis = new FileInputStream( file );
+        try
+        {
+            final InputStream result = XZUnArchiver.getXZInputStream( fis );
+            fis = null;
+            return result;
+        }
+        finally
+        {
+            IOUtil.close( fis );
+        }
+    }
+
+    @Override
+    protected PlexusIoResourceAttributes getAttributes( File file )
+        throws IOException
+    {
+        return FileAttributesResolver.getShared().getAttributes( file );
+    }
+
+    protected String getDefaultExtension()
+    {
+        return ".xz";
+    }
+}
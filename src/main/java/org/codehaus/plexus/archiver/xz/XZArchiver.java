@@ -0,0 +1,92 @@
+package org.codehaus.plexus.archiver.xz;
+
+/*
+ * Copyright 2014 The Codehaus Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.codehaus.plexus.archiver.AbstractArchiver;
+import org.codehaus.plexus.archiver.ArchiveEntry;
+import org.codehaus.plexus.archiver.ArchiverException;
+import org.codehaus.plexus.archiver.ResourceIterator;
+import org.codehaus.plexus.archiver.util.CompressionProfile;
+
+import java.io.IOException;
+
+/**
+ * @since 3.0.1
+ */
+public class XZArchiver
+    extends AbstractArchiver
+{
+    private XZCompressor compressor = new XZCompressor();
+
+    /**
+     * Sets the xz preset, see {@link XZCompressor#setLevel(int)}.
+     */
+    public void setCompressionLevel( int level )
+    {
+        compressor.setLevel( level );
+    }
+
+    public int getCompressionLevel()
+    {
+        return compressor.getLevel();
+    }
+
+    /**
+     * Sets the profile, whose level is the preset, unless a
+     * {@link #setCompressionLevel(int) compression level} is set, see {@link CompressionProfile}.
+     *
+     * @since 3.0.1
+     */
+    public void setCompressionProfile( CompressionProfile compressionProfile )
+    {
+        compressor.setProfile( compressionProfile );
+    }
+
+    public void execute()
+        throws ArchiverException, IOException
+    {
+        if ( !checkForced() )
+        {
+            return;
+        }
+
+        ResourceIterator iter = getResources();
+        ArchiveEntry entry = iter.next();
+        if ( iter.hasNext() )
+        {
+            throw new ArchiverException( "There is more than one file in input." );
+        }
+        compressor.setSource( entry.getResource() );
+        compressor.setDestFile( getDestFile() );
+        compressor.compress();
+    }
+
+    public boolean isSupportingForced()
+    {
+        return true;
+    }
+
+    protected void close()
+    {
+        compressor.close();
+    }
+
+    protected String getArchiveType()
+    {
+        return "xz";
+    }
+}
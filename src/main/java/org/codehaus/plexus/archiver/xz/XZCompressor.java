@@ -0,0 +1,93 @@
+package org.codehaus.plexus.archiver.xz;
+
+/*
+ * Copyright 2014 The Codehaus Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.commons.compress.compressors.xz.XZCompressorOutputStream;
+import org.codehaus.plexus.archiver.ArchiverException;
+import org.codehaus.plexus.archiver.util.Compressor;
+import org.codehaus.plexus.util.IOUtil;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * @since 3.0.1
+ */
+public class XZCompressor
+    extends Compressor
+{
+    /**
+     * The preset, which xz uses by default.
+     */
+    public static final int DEFAULT_LEVEL = 6;
+
+    private OutputStream zOut;
+
+    private int level = -1;
+
+    /**
+     * Sets the xz preset, from 0, the fastest, to 9, the best compression. Presets above 6
+     * need much more memory, for compressing and for decompressing. Defaults to the level of
+     * the {@link #setProfile(org.codehaus.plexus.archiver.util.CompressionProfile) profile},
+     * or {@link #DEFAULT_LEVEL}.
+     */
+    public void setLevel( int level )
+    {
+        if ( level < 0 || level > 9 )
+        {
+            throw new IllegalArgumentException( "Invalid xz level: " + level );
+        }
+        this.level = level;
+    }
+
+    /**
+     * @return the preset, or -1, if it is taken from the profile.
+     */
+    public int getLevel()
+    {
+        return level;
+    }
+
+    /**
+     * perform the xz compression operation.
+     */
+    public void compress()
+        throws ArchiverException
+    {
+        try
+        {
+            int preset = level >= 0 ? level : getProfile().getLevel();
+            if ( preset < 0 )
+            {
+                preset = DEFAULT_LEVEL;
+            }
+            zOut = new XZCompressorOutputStream( destFileOutputStream(), preset );
+            compress( getSource(), zOut );
+        }
+        catch ( IOException ioe )
+        {
+            String msg = "Problem creating xz " + ioe.getMessage();
+            throw new ArchiverException( msg, ioe );
+        }
+    }
+
+    public void close()
+    {
+        IOUtil.close( zOut );
+        zOut = null;
+    }
+}
@@ -0,0 +1,87 @@
+package org.codehaus.plexus.archiver.xz;
+
+/*
+ * Copyright 2014 The Codehaus Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
+import org.codehaus.plexus.archiver.AbstractUnArchiver;
+import org.codehaus.plexus.archiver.ArchiverException;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.codehaus.plexus.archiver.util.Streams.bufferedInputStream;
+import static org.codehaus.plexus.archiver.util.Streams.bufferedOutputStream;
+import static org.codehaus.plexus.archiver.util.Streams.copyFully;
+import static org.codehaus.plexus.archiver.util.Streams.fileInputStream;
+import static org.codehaus.plexus.archiver.util.Streams.fileOutputStream;
+
+/**
+ * @since 3.0.1
+ */
+public class XZUnArchiver
+    extends AbstractUnArchiver
+{
+    private final static String OPERATION_XZ = "xz";
+
+    public XZUnArchiver()
+    {
+    }
+
+    public XZUnArchiver( File sourceFile )
+    {
+        super( sourceFile );
+    }
+
+    protected void execute()
+        throws ArchiverException
+    {
+        if ( getSourceFile().lastModified() > getDestFile().lastModified() )
+        {
+            getLogger().info(
+                "Expanding " + getSourceFile().getAbsolutePath() + " to " + getDestFile().getAbsolutePath() );
+
+            copyFully( getXZInputStream( bufferedInputStream( fileInputStream( getSourceFile(), OPERATION_XZ ) ) ),
+                       bufferedOutputStream( fileOutputStream( getDestFile(), OPERATION_XZ ) ), OPERATION_XZ );
+        }
+    }
+
+    /**
+     * @return a stream, which decompresses all concatenated xz streams of the input, like the
+     *         xz tool does.
+     */
+    public static
+    @Nonnull
+    XZCompressorInputStream getXZInputStream( InputStream bis )
+        throws ArchiverException
+    {
+        try
+        {
+            return new XZCompressorInputStream( bis, true );
+        }
+        catch ( IOException e )
+        {
+            throw new ArchiverException( "Trouble creating xz decompressor, invalid file ?", e );
+        }
+    }
+
+    protected void execute( String path, File outputDirectory )
+    {
+        throw new UnsupportedOperationException( "Targeted extraction not supported in xz format." );
+    }
+}
@@ -18,22 +18,31 @@
  */
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.CRC32;
 
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.apache.commons.compress.archivers.zip.ZipEncoding;
 import org.apache.commons.compress.archivers.zip.ZipEncodingHelper;
+import org.apache.commons.compress.parallel.InputStreamSupplier;
 import org.codehaus.plexus.archiver.AbstractArchiver;
 import org.codehaus.plexus.archiver.ArchiveEntry;
 import org.codehaus.plexus.archiver.Archiver;
 import org.codehaus.plexus.archiver.ArchiverException;
 import org.codehaus.plexus.archiver.ResourceIterator;
 import org.codehaus.plexus.archiver.UnixStat;
+import org.codehaus.plexus.archiver.util.CompressionGovernor;
+import org.codehaus.plexus.archiver.util.CompressionProfile;
 import org.codehaus.plexus.archiver.util.DefaultArchivedFileSet;
+import org.codehaus.plexus.archiver.util.PathIndex;
 import org.codehaus.plexus.archiver.util.ResourceUtils;
+import org.codehaus.plexus.archiver.util.Streams;
+import org.codehaus.plexus.components.io.functions.FileSupplier;
 import org.codehaus.plexus.components.io.functions.SymlinkDestinationSupplier;
+import org.codehaus.plexus.components.io.resources.AbstractPlexusIoResourceCollection;
 import org.codehaus.plexus.components.io.resources.PlexusIoArchivedResourceCollection;
 import org.codehaus.plexus.components.io.resources.PlexusIoResource;
 import org.codehaus.plexus.components.io.resources.PlexusIoResourceCollection;
@@ -77,10 +86,21 @@
     //not used: private boolean keepCompression = false;
     private boolean doFilesonly = false;
 
+    /**
+     * @deprecated Use {@link #getEntryIndex()} instead, which is faster to search.
+     */
     protected final Hashtable<String, String> entries = new Hashtable<String, String>();
 
+    /**
+     * @deprecated Use {@link #getAddedDirIndex()} instead, which is faster to search.
+     */
     protected final Hashtable<String, String> addedDirs = new Hashtable<String, String>();
 
+    // the same paths as the above tables, which are kept for compatibility
+    private final PathIndex entryIndex = new PathIndex();
+
+    private final PathIndex addedDirIndex = new PathIndex();
+
     private static final long EMPTY_CRC = new CRC32().getValue();
 
     protected boolean doubleFilePass = false;
@@ -127,6 +147,44 @@
 
     private ZipArchiveOutputStream zOut;
 
+    /**
+     * The number of threads used to compress entries, 1 means all entries are
+     * compressed on the calling thread.
+     */
+    private int compressionThreads = 1;
+
+    // non-null while entries are compressed in parallel
+    private ConcurrentZipCreator concurrentCreator;
+
+    private CompressibilityDetector compressibilityDetector;
+
+    private CompressionProfile compressionProfile = CompressionProfile.BALANCED;
+
+    private long targetThroughput;
+
+    private long timeBudget;
+
+    private CompressionGovernor governor;
+
+    // number of entries stored, because the compressibility detector judged them incompressible
+    private final AtomicInteger incompressibleEntries = new AtomicInteger();
+
+    // entries of added zip files, whose compressed data may be copied as it is
+    private final Map<ArchiveEntry, ZipResource> rawSources = new IdentityHashMap<ArchiveEntry, ZipResource>();
+
+    // while updating, the contents of the original file
+    private PlexusIoZipFileResourceCollection originalContents;
+
+    // while updating, the original file, from which unchanged entries are copied
+    private org.apache.commons.compress.archivers.zip.ZipFile originalZip;
+
+    // entries from the original file, which are kept as they are while updating
+    private final Set<ArchiveEntry> originalEntries =
+        Collections.newSetFromMap( new IdentityHashMap<ArchiveEntry, Boolean>() );
+
+    // whether a subclass overrides the deprecated zipFile(InputStream, ...), which is invoked for resources then
+    private final boolean streamZipFileOverridden = isStreamZipFileOverridden( getClass() );
+
     public String getComment()
     {
         return comment;
@@ -193,6 +251,138 @@ public boolean isFilesonly()
         return doFilesonly;
     }
 
+    /**
+     * Sets the number of threads used to compress entries. With more than one thread,
+     * entries are deflated concurrently into scatter buffers and then written to the
+     * archive in the order they were added. Defaults to 1, which compresses all entries
+     * on the calling thread.
+     * <p/>
+     * The entries are the same either way, but the archive's bytes are not: entries, which
+     * are compressed in parallel, carry their sizes and CRC in the local file header, while
+     * entries deflated on the calling thread are followed by a data descriptor instead.
+     *
+     * @param compressionThreads the number of compressing threads
+     * @since 3.0.1
+     */
+    public void setCompressionThreads( int compressionThreads )
+    {
+        if ( compressionThreads < 1 )
+        {
+            throw new IllegalArgumentException( "compressionThreads must be at least 1, got " + compressionThreads );
+        }
+        this.compressionThreads = compressionThreads;
+    }
+
+    /**
+     * @since 3.0.1
+     */
+    public int getCompressionThreads()
+    {
+        return compressionThreads;
+    }
+
+    /**
+     * Sets the detector deciding, which entries are stored rather than deflated, because
+     * compressing them would hardly save any space. By default, only added zip files are
+     * stored, and only if {@link #setRecompressAddedZips(boolean) recompressAddedZips} is false.
+     *
+     * @param compressibilityDetector the detector, or null to deflate all entries
+     * @see DefaultCompressibilityDetector
+     * @since 3.0.1
+     */
+    public void setCompressibilityDetector( CompressibilityDetector compressibilityDetector )
+    {
+        this.compressibilityDetector = compressibilityDetector;
+    }
+
+    /**
+     * @since 3.0.1
+     */
+    public CompressibilityDetector getCompressibilityDetector()
+    {
+        return compressibilityDetector;
+    }
+
+
+    /**
+     * Sets the deflate level and strategy of the entries, and the size of the output buffer,
+     * see {@link CompressionProfile}. Defaults to {@link CompressionProfile#BALANCED}.
+     * <p/>
+     * The output buffer size doesn't apply to archives, which aren't {@link #setCompress(boolean)
+     * compressed}: {@link ZipArchiveOutputStream} writes them to an unbuffered
+     * {@link java.io.RandomAccessFile} of its own, so it can fill in sizes and CRCs afterwards. The
+     * data of their entries is written in chunks of the {@link Streams#borrowBuffer() copy buffer}.
+     *
+     * @since 3.0.1
+     */
+    public void setCompressionProfile( CompressionProfile compressionProfile )
+    {
+        this.compressionProfile = compressionProfile;
+    }
+
+    /**
+     * @since 3.0.1
+     */
+    public CompressionProfile getCompressionProfile()
+    {
+        return compressionProfile;
+    }
+
+    /**
+     * Lets the deflate level of every entry be chosen, so the archive is written at the given
+     * throughput, see {@link CompressionGovernor}. The chosen levels are reported at the end.
+     *
+     * @param bytesPerSecond the uncompressed bytes written per second, or 0 to deflate all
+     *                       entries at the default level.
+     * @since 3.0.1
+     */
+    public void setTargetThroughput( long bytesPerSecond )
+    {
+        this.targetThroughput = bytesPerSecond;
+    }
+
+    /**
+     * @since 3.0.1
+     */
+    public long getTargetThroughput()
+    {
+        return targetThroughput;
+    }
+
+    /**
+     * Lets the deflate level of every entry be chosen, so the archive is written within the
+     * given time, see {@link CompressionGovernor}. Ignored, if a target throughput is set.
+     *
+     * @param millis the time budget, or 0 to deflate all entries at the default level.
+     * @since 3.0.1
+     */
+    public void setTimeBudget( long millis )
+    {
+        this.timeBudget = millis;
+    }
+
+    /**
+     * @since 3.0.1
+     */
+    public long getTimeBudget()
+    {
+        return timeBudget;
+    }
+
+    private CompressionGovernor createGovernor()
+    {
+        if ( targetThroughput > 0 )
+        {
+            return CompressionGovernor.forThroughput( targetThroughput, compressionThreads,
+                                                      compressionProfile.getLevel() );
+        }
+        if ( timeBudget > 0 )
+        {
+            return CompressionGovernor.forTimeBudget( timeBudget, CompressionGovernor.getTotalSize( getResources() ),
+                                                      compressionThreads, compressionProfile.getLevel() );
+        }
+        return null;
+    }
 
     protected void execute()
         throws ArchiverException, IOException
@@ -215,6 +405,24 @@ protected void execute()
         }
 
         finalizeZipOutputStream( zOut );
+
+        if ( concurrentCreator != null )
+        {
+            concurrentCreator.flush();
+        }
+
+        if ( compressibilityDetector != null )
+        {
+            getLogger().debug( "Stored " + incompressibleEntries.get() + " incompressible entries" );
+        }
+
+        if ( governor != null )
+        {
+            for ( String line : governor.getReport() )
+            {
+                getLogger().info( "Deflated at " + line );
+            }
+        }
     }
 
     protected void finalizeZipOutputStream( ZipArchiveOutputStream zOut )
@@ -290,12 +498,16 @@ private void createArchiveMain()
                     + ") to temporary file", e );
             }
 
-            // Add original zip content the the resources
-            PlexusIoZipFileResourceCollection resourceCollection = new PlexusIoZipFileResourceCollection();
-            
-            resourceCollection.setFile( renamedFile );
-            
-            addResources( resourceCollection );
+            // Add original zip content the the resources. Entries are copied without
+            // recompressing them, also if an added file has not been modified since.
+            org.apache.commons.compress.archivers.zip.ZipFile.closeQuietly( originalZip );
+            originalZip = new org.apache.commons.compress.archivers.zip.ZipFile( renamedFile, encoding );
+
+            originalContents = new PlexusIoZipFileResourceCollection();
+
+            originalContents.setFile( renamedFile );
+
+            addResources( originalContents );
         }
 
         String action = doUpdate ? "Updating " : "Building ";
@@ -304,17 +516,36 @@ private void createArchiveMain()
 
         if ( !skipWriting )
         {
-            zOut = new ZipArchiveOutputStream( bufferedOutputStream( fileOutputStream( zipFile, "zip" ) ) );
+            if ( doCompress )
+            {
+                final OutputStream out = bufferedOutputStream( fileOutputStream( zipFile, "zip" ),
+                                                               compressionProfile.getOutputBufferSize() );
+                zOut = new StrategyZipArchiveOutputStream( out, compressionProfile.getStrategy() );
+            }
+            else
+            {
+                // All entries are stored, so let the stream seek back and fill in sizes and CRCs,
+                // rather than reading every entry upfront. The output buffer size doesn't apply here.
+                zOut = seekableOutputStream( zipFile );
+            }
             zOut.setCreateUnicodeExtraFields( ZipArchiveOutputStream.UnicodeExtraFieldPolicy.NOT_ENCODEABLE );
             zOut.setEncoding( encoding );
             if ( doCompress )
             {
                 zOut.setMethod( ZipArchiveOutputStream.DEFLATED );
+                zOut.setLevel( compressionProfile.getLevel() );
             }
             else
             {
                 zOut.setMethod( ZipArchiveOutputStream.STORED );
             }
+            governor = doCompress ? createGovernor() : null;
+            if ( compressionThreads > 1 )
+            {
+                concurrentCreator = new ConcurrentZipCreator( zOut, compressionThreads, compressionProfile.getLevel(),
+                                                              compressionProfile.getStrategy() );
+                concurrentCreator.setGovernor( governor );
+            }
         }
         initZipOutputStream( zOut );
 
@@ -343,10 +574,17 @@ protected Map<String, Long> getZipEntryNames( File file )
         }
         final Map<String, Long> entries = new HashMap<String, Long>();
         final org.apache.commons.compress.archivers.zip.ZipFile zipFile = new org.apache.commons.compress.archivers.zip.ZipFile( file );
-        for ( Enumeration en = zipFile.getEntries();  en.hasMoreElements();  )
+        try
         {
-            ZipArchiveEntry ze = (ZipArchiveEntry) en.nextElement();
-            entries.put( ze.getName(), ze.getLastModifiedDate().getTime());
+            for ( Enumeration en = zipFile.getEntries();  en.hasMoreElements();  )
+            {
+                ZipArchiveEntry ze = (ZipArchiveEntry) en.nextElement();
+                entries.put( ze.getName(), ze.getLastModifiedDate().getTime());
+            }
+        }
+        finally
+        {
+            zipFile.close();
         }
         return entries;
     }
@@ -362,6 +600,35 @@ protected static boolean isFileUpdated(ArchiveEntry entry, Map entries)
         return l != null && (l == -1 || !ResourceUtils.isUptodate(entry.getResource(), l));
     }
 
+    /**
+     * While updating, looks up the entry of the original archive, which an added file
+     * replaces, if the file hasn't been modified since, and still has the size of the entry.
+     * Zip files store modification times with a granularity of two seconds.
+     *
+     * @return the original entry, or null if the file must be added
+     */
+    private ZipResource getUnchangedOriginal( ArchiveEntry entry, String vPath )
+    {
+        if ( originalZip == null )
+        {
+            return null;
+        }
+        final ZipArchiveEntry ze = originalZip.getEntry( vPath );
+        if ( ze == null || ze.isDirectory() || ze.getGeneralPurposeBit().usesEncryption() )
+        {
+            return null;
+        }
+        final long archived = ze.getTime();
+        final PlexusIoResource resource = entry.getResource();
+        if ( archived == -1 || !ResourceUtils.isUptodate( resource, archived + 2000 )
+            || ze.getSize() < 0 || resource.getSize() != ze.getSize() )
+        {
+            return null;
+        }
+        getLogger().debug( "keeping original entry " + vPath + ", it is up to date" );
+        return new ZipResource( originalZip, ze, AbstractPlexusIoResourceCollection.identityTransformer );
+    }
+
     /**
      * Add the given resources.
      *
@@ -428,7 +695,7 @@ private void addParentDirs( ArchiveEntry archiveEntry, File baseDir, String entr
             {
                 String dir = entry.substring( 0, slashPos + 1 );
 
-                if ( addedDirs.contains( prefix + dir ) )
+                if ( addedDirIndex.contains( prefix + dir ) )
                 {
                     break;
                 }
@@ -456,68 +723,84 @@ private void addParentDirs( ArchiveEntry archiveEntry, File baseDir, String entr
         }
     }
 
-    private void readWithZipStats( InputStream in, byte[] header, int headerRead, ZipArchiveEntry ze,
-                                   ByteArrayOutputStream bos ) throws IOException {
-        byte[] buffer = new byte[8 * 1024];
+    private ZipArchiveOutputStream seekableOutputStream( File zipFile )
+        throws ArchiverException
+    {
+        try
+        {
+            return new ZipArchiveOutputStream( zipFile );
+        }
+        catch ( IOException e )
+        {
+            throw new ArchiverException(
+                "Problem creating output file for zip " + zipFile.getParent() + ", " + e.getMessage(), e );
+        }
+    }
 
-        CRC32 cal2 = new CRC32();
+    private void readWithZipStats( InputStream in, byte[] header, int headerRead, ZipArchiveEntry ze,
+                                   DeferredScatterOutputStream spool ) throws IOException {
+        byte[] buffer = Streams.borrowBuffer();
+        try
+        {
+            CRC32 cal2 = new CRC32();
 
-        long size = 0;
+            long size = 0;
 
-        for (int i = 0; i < headerRead; i++){
-            cal2.update(header[i]);
-            size++;
-        }
+            for (int i = 0; i < headerRead; i++){
+                cal2.update(header[i]);
+                size++;
+            }
 
-        int count = 0;
-        do
-        {
-            size += count;
-            cal2.update( buffer, 0, count );
-            if (bos != null)
+            int count = 0;
+            do
             {
-                bos.write( buffer, 0, count );
+                size += count;
+                cal2.update( buffer, 0, count );
+                spool.writeOut( buffer, 0, count );
+                count = in.read( buffer, 0, buffer.length );
             }
-            count = in.read( buffer, 0, buffer.length );
+            while ( count != -1 );
+            ze.setSize(size);
+            ze.setCrc(cal2.getValue());
+        }
+        finally
+        {
+            Streams.returnBuffer( buffer );
         }
-        while ( count != -1 );
-        ze.setSize(size);
-        ze.setCrc(cal2.getValue());
     }
 
+    /**
+     * @param bufferSize ignored, the pooled buffer of {@link Streams#borrowBuffer()} is used.
+     * @deprecated Use {@link Streams#copy(InputStream, OutputStream)}.
+     */
+    @Deprecated
     public static long copy( final InputStream input,
                              final OutputStream output,
                              final int bufferSize )
             throws IOException
     {
-        final byte[] buffer = new byte[bufferSize];
-        long size = 0;
-        int n;
-        while ( -1 != ( n = input.read( buffer ) ) )
-        {
-            size += n;
-            output.write( buffer, 0, n );
-        }
-        return size;
+        return Streams.copy( input, output );
     }
 
     /**
      * Adds a new entry to the archive, takes care of duplicates as well.
      *
-     * @param in           the stream to read data for the entry from.
+     * @param in           supplies the stream to read data for the entry from.
      * @param zOut         the stream to write to.
      * @param vPath        the name this entry shall have in the archive.
      * @param lastModified last modification time for the entry.
      * @param fromArchive  the original archive we are copying this
      * @param symlinkDestination
+     * @param addInParallel whether the stream may be read from another thread, when compressing in parallel.
      */
     @SuppressWarnings({"JavaDoc"})
-    protected void zipFile( InputStream in, ZipArchiveOutputStream zOut, String vPath, long lastModified, File fromArchive,
-                            int mode, String symlinkDestination )
+    protected void zipFile( InputStreamSupplier in, ZipArchiveOutputStream zOut, String vPath, long lastModified,
+                            File fromArchive, int mode, String symlinkDestination, boolean addInParallel )
         throws IOException, ArchiverException
     {
         getLogger().debug( "adding entry " + vPath );
 
+        entryIndex.add( vPath );
         entries.put( vPath, vPath );
 
         if ( !skipWriting )
@@ -525,58 +808,310 @@ protected void zipFile( InputStream in, ZipArchiveOutputStream zOut, String vPat
             ZipArchiveEntry ze = new ZipArchiveEntry( vPath );
             setTime(ze, lastModified);
 
-            byte[] header = new byte[4];
-            int read = in.read(header);
+            if ( in instanceof RawEntrySupplier && symlinkDestination == null
+                && isRawCopyable( (RawEntrySupplier) in ) )
+            {
+                zipRawEntry( (RawEntrySupplier) in, zOut, ze, mode );
+                return;
+            }
 
-            boolean compressThis = doCompress;
-            if (!recompressAddedZips && isZipHeader(header)){
-                compressThis = false;
+            if ( concurrentCreator != null )
+            {
+                ze.setMethod( doCompress ? ZipArchiveEntry.DEFLATED : ZipArchiveEntry.STORED );
+                ze.setUnixMode( UnixStat.FILE_FLAG | mode );
+                if ( ze.isUnixSymlink() )
+                {
+                    final byte[] bytes = encodeSymlink( symlinkDestination );
+                    concurrentCreator.addArchiveEntry( ze, createInputStreamSupplier( bytes ), true );
+                }
+                else
+                {
+                    concurrentCreator.addArchiveEntry( ze, storeIfIncompressible( ze, in ), addInParallel );
+                }
+                return;
             }
 
-            ze.setMethod( compressThis ? ZipArchiveEntry.DEFLATED : ZipArchiveEntry.STORED );
-            ze.setUnixMode( UnixStat.FILE_FLAG | mode );
-            /*
-             * ZipOutputStream.putNextEntry expects the ZipEntry to
-             * know its size and the CRC sum before you start writing
-             * the data when using STORED mode - unless it is seekable.
-             *
-             * This forces us to process the data twice.
-             */
+            InputStream is = in.get();
+            try
+            {
+                zipFile( is, zOut, ze, mode, symlinkDestination );
+            }
+            finally
+            {
+                IOUtil.close( is );
+            }
+        }
+    }
 
+    /**
+     * Adds a new entry to the archive, takes care of duplicates as well.
+     *
+     * @param in           the stream to read data for the entry from.
+     * @param zOut         the stream to write to.
+     * @param vPath        the name this entry shall have in the archive.
+     * @param lastModified last modification time for the entry.
+     * @param fromArchive  the original archive we are copying this
+     * @param symlinkDestination
+     * @deprecated Override {@link #zipFile(InputStreamSupplier, ZipArchiveOutputStream, String, long, File, int,
+     *             String, boolean)} instead. This method is only invoked for added resources, if a subclass
+     *             overrides it, and these entries are neither compressed in parallel, nor copied from added
+     *             zip files without recompressing them.
+     */
+    @Deprecated
+    @SuppressWarnings({"JavaDoc"})
+    protected void zipFile( final InputStream in, ZipArchiveOutputStream zOut, String vPath, long lastModified,
+                            File fromArchive, int mode, String symlinkDestination )
+        throws IOException, ArchiverException
+    {
+        zipFile( new InputStreamSupplier()
+        {
+            public InputStream get()
+            {
+                return in;
+            }
+        }, zOut, vPath, lastModified, fromArchive, mode, symlinkDestination, false );
+    }
 
-            if (ze.isUnixSymlink()){
-                zOut.putArchiveEntry( ze );
-                ZipEncoding enc = ZipEncodingHelper.getZipEncoding( getEncoding() );
-                final byte[] bytes =  enc.encode( symlinkDestination).array();
-                zOut.write( bytes, 0, bytes.length);
-            } else if (zOut.isSeekable() || compressThis) {
+    private void zipFile( InputStream in, ZipArchiveOutputStream zOut, ZipArchiveEntry ze, int mode,
+                          String symlinkDestination )
+        throws IOException
+    {
+        byte[] header = new byte[compressibilityDetector != null ? CompressibilityDetector.SAMPLE_SIZE : 4];
+        int read = readSample( in, header );
+
+        boolean compressThis = isCompressible( ze.getName(), header, read );
+
+        ze.setMethod( compressThis ? ZipArchiveEntry.DEFLATED : ZipArchiveEntry.STORED );
+        ze.setUnixMode( UnixStat.FILE_FLAG | mode );
+        /*
+         * ZipOutputStream.putNextEntry expects the ZipEntry to
+         * know its size and the CRC sum before you start writing
+         * the data when using STORED mode - unless it is seekable.
+         *
+         * This forces us to spool the data, which is kept in memory
+         * for small entries only.
+         */
+
+
+        if (ze.isUnixSymlink()){
+            zOut.putArchiveEntry( ze );
+            final byte[] bytes = encodeSymlink( symlinkDestination );
+            zOut.write( bytes, 0, bytes.length);
+        } else if ( compressThis && governor != null ) {
+            final int level = governor.getLevel();
+            final long start = System.nanoTime();
+            zOut.setLevel( level );
+            zOut.putArchiveEntry( ze );
+            if (read > 0) zOut.write(header, 0, read);
+            Streams.copy( in, zOut );
+            zOut.closeArchiveEntry();
+            governor.record( level, ze.getSize(), ze.getCompressedSize(), System.nanoTime() - start );
+            return;
+        } else if (zOut.isSeekable() || compressThis) {
+            zOut.putArchiveEntry( ze );
+            if (read > 0) zOut.write(header, 0, read);
+            Streams.copy( in, zOut );
+        } else {
+            DeferredScatterOutputStream spool =
+                new DeferredScatterOutputStream( ConcurrentZipCreator.IN_MEMORY_THRESHOLD );
+            try
+            {
+                readWithZipStats( in, header, read, ze, spool );
+                spool.closeForWriting();
                 zOut.putArchiveEntry( ze );
                 if (read > 0) zOut.write(header, 0, read);
-                IOUtil.copy( in, zOut, 8 * 1024);
-            } else {
-                if (in.markSupported())
+                InputStream spooled = spool.getInputStream();
+                try
                 {
-                    in.mark( Integer.MAX_VALUE );
-                    readWithZipStats(in, header, read, ze, null);
-                    in.reset();
-                    zOut.putArchiveEntry( ze);
-                    if (read > 0) zOut.write(header, 0, read);
-                    IOUtil.copy(in, zOut, 8 * 1024);
+                    Streams.copy( spooled, zOut );
                 }
-                else
+                finally
                 {
-                    // Store data into a byte[]
-                    // todo: explain how on earth this code works with zip streams > 128KB ???
-                    ByteArrayOutputStream bos = new ByteArrayOutputStream(128 * 1024);
-                    readWithZipStats(in, header,read, ze, bos);
-                    zOut.putArchiveEntry(ze);
-                    if (read > 0) zOut.write(header, 0, read);
-                    bos.writeTo( zOut);
+                    IOUtil.close( spooled );
                 }
             }
+            finally
+            {
+                spool.close();
+            }
+        }
 
-            zOut.closeArchiveEntry();
+        zOut.closeArchiveEntry();
+    }
+
+    /**
+     * Checks, whether the compressed data of an entry from an added zip file can be copied
+     * as it is, because it would have been compressed using the same method anyways.
+     */
+    private boolean isRawCopyable( RawEntrySupplier in )
+        throws IOException
+    {
+        final int method = in.getSourceEntry().getMethod();
+        if ( method != ZipArchiveEntry.DEFLATED && method != ZipArchiveEntry.STORED )
+        {
+            return false;
+        }
+        if ( in.isOriginal() )
+        {
+            // Entries kept while updating remain as they are
+            return true;
         }
+        if ( !doCompress )
+        {
+            return method == ZipArchiveEntry.STORED;
+        }
+        if ( recompressAddedZips && compressibilityDetector == null )
+        {
+            return method == ZipArchiveEntry.DEFLATED;
+        }
+        final byte[] header = new byte[compressibilityDetector != null ? CompressibilityDetector.SAMPLE_SIZE : 4];
+        final int read;
+        final InputStream is = in.get();
+        try
+        {
+            read = readSample( is, header );
+        }
+        finally
+        {
+            IOUtil.close( is );
+        }
+        return ( method == ZipArchiveEntry.DEFLATED ) == isCompressible( in.getSourceEntry().getName(), header, read );
+    }
+
+    /**
+     * Decides, whether an entry gets deflated, judging by its first bytes.
+     */
+    private boolean isCompressible( String vPath, byte[] sample, int length )
+    {
+        if ( !doCompress )
+        {
+            return false;
+        }
+        if ( !recompressAddedZips && isZipHeader( sample ) )
+        {
+            return false;
+        }
+        if ( compressibilityDetector != null && !compressibilityDetector.isCompressible( vPath, sample, length ) )
+        {
+            getLogger().debug( "Storing " + vPath + ", it is not compressible" );
+            incompressibleEntries.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads until the sample is full, or the end of the stream is reached.
+     *
+     * @return the number of bytes read
+     */
+    private static int readSample( InputStream in, byte[] sample )
+        throws IOException
+    {
+        int read = 0;
+        int n;
+        while ( read < sample.length && ( n = in.read( sample, read, sample.length - read ) ) != -1 )
+        {
+            read += n;
+        }
+        return read;
+    }
+
+    private void zipRawEntry( final RawEntrySupplier in, ZipArchiveOutputStream zOut, ZipArchiveEntry ze, int mode )
+        throws IOException
+    {
+        final ZipArchiveEntry source = in.getSourceEntry();
+        ze.setMethod( source.getMethod() );
+        ze.setUnixMode( UnixStat.FILE_FLAG | mode );
+        ze.setSize( source.getSize() );
+        ze.setCompressedSize( source.getCompressedSize() );
+        ze.setCrc( source.getCrc() );
+
+        if ( concurrentCreator != null )
+        {
+            concurrentCreator.addRawArchiveEntry( ze, new InputStreamSupplier()
+            {
+                public InputStream get()
+                {
+                    return in.getRawContents();
+                }
+            } );
+            return;
+        }
+
+        final InputStream raw = in.getRawContents();
+        try
+        {
+            zOut.addRawArchiveEntry( ze, raw );
+        }
+        finally
+        {
+            IOUtil.close( raw );
+        }
+    }
+
+    /**
+     * Wraps the supplier of an entry's contents, so that the entry gets stored rather than
+     * deflated if the contents turn out to be incompressible, like added zips that must not be
+     * recompressed. The decision is taken when the compressing thread opens the stream.
+     */
+    private InputStreamSupplier storeIfIncompressible( final ZipArchiveEntry ze, final InputStreamSupplier in )
+    {
+        if ( !doCompress || ( recompressAddedZips && compressibilityDetector == null ) )
+        {
+            return in;
+        }
+        final int sampleSize = compressibilityDetector != null ? CompressibilityDetector.SAMPLE_SIZE : 4;
+        return new InputStreamSupplier()
+        {
+            public InputStream get()
+            {
+                final PushbackInputStream is = new PushbackInputStream( in.get(), sampleSize );
+                try
+                {
+                    byte[] header = new byte[sampleSize];
+                    int read = readSample( is, header );
+                    if ( read > 0 )
+                    {
+                        is.unread( header, 0, read );
+                    }
+                    if ( !isCompressible( ze.getName(), header, read ) )
+                    {
+                        ze.setMethod( ZipArchiveEntry.STORED );
+                    }
+                    return is;
+                }
+                catch ( IOException e )
+                {
+                    IOUtil.close( is );
+                    throw new ArchiverException( "IOException when zipping " + ze.getName() + ": " + e.getMessage(),
+                                                 e );
+                }
+            }
+        };
+    }
+
+    private byte[] encodeSymlink( String symlinkDestination )
+        throws IOException
+    {
+        ZipEncoding enc = ZipEncodingHelper.getZipEncoding( getEncoding() );
+        final ByteBuffer encoded = enc.encode( symlinkDestination );
+        return Arrays.copyOfRange( encoded.array(), encoded.arrayOffset(), encoded.arrayOffset() + encoded.limit() );
+    }
+
+    /**
+     * @param bytes the contents to supply
+     * @return a supplier of streams reading the given bytes
+     */
+    protected static InputStreamSupplier createInputStreamSupplier( final byte[] bytes )
+    {
+        return new InputStreamSupplier()
+        {
+            public InputStream get()
+            {
+                return new ByteArrayInputStream( bytes );
+            }
+        };
     }
 
     private boolean isZipHeader(byte[] header) {
@@ -593,7 +1128,7 @@ private boolean isZipHeader(byte[] header) {
      * @param vPath the name this entry shall have in the archive
      */
     @SuppressWarnings({"JavaDoc"})
-    protected void zipFile( ArchiveEntry entry, ZipArchiveOutputStream zOut, String vPath )
+    protected void zipFile( final ArchiveEntry entry, ZipArchiveOutputStream zOut, String vPath )
         throws IOException, ArchiverException
     {
 		final PlexusIoResource resource = entry.getResource();
@@ -604,18 +1139,158 @@ protected void zipFile( ArchiveEntry entry, ZipArchiveOutputStream zOut, String
 
         final boolean b = entry.getResource() instanceof SymlinkDestinationSupplier;
         String symlinkTarget = b ? ((SymlinkDestinationSupplier)entry.getResource()).getSymlinkDestination() : null;
-        InputStream in = entry.getInputStream();
+        ZipResource rawSource = rawSources.remove( entry );
+        boolean original = originalEntries.remove( entry );
+        if ( !original && doUpdate && resource.isFile() && symlinkTarget == null )
+        {
+            final ZipResource unchanged = getUnchangedOriginal( entry, vPath );
+            if ( unchanged != null )
+            {
+                rawSource = unchanged;
+                original = true;
+            }
+        }
+        InputStreamSupplier in = rawSource != null ? new RawEntrySupplier( entry, rawSource, original ) : new InputStreamSupplier()
+        {
+            public InputStream get()
+            {
+                try
+                {
+                    return entry.getInputStream();
+                }
+                catch ( IOException e )
+                {
+                    throw new ArchiverException( "IOException when zipping r" + entry.getName() + ": "
+                                                     + e.getMessage(), e );
+                }
+            }
+        };
+        // Only plain files are known to be safely readable from the compressing threads
+        final boolean addInParallel = resource instanceof FileSupplier;
         try
         {
-			zipFile( in, zOut, vPath, resource.getLastModified(), null, entry.getMode(), symlinkTarget );
+            if ( streamZipFileOverridden )
+            {
+                final InputStream is = entry.getInputStream();
+                try
+                {
+                    zipFile( is, zOut, vPath, resource.getLastModified(), null, entry.getMode(), symlinkTarget );
+                }
+                finally
+                {
+                    IOUtil.close( is );
+                }
+                return;
+            }
+			zipFile( in, zOut, vPath, resource.getLastModified(), null, entry.getMode(), symlinkTarget,
+                     addInParallel );
         }
         catch ( IOException e )
         {
             throw new ArchiverException( "IOException when zipping r" + entry.getName() + ": " + e.getMessage(), e );
         }
-        finally
+    }
+
+    private static boolean isStreamZipFileOverridden( Class<?> type )
+    {
+        for ( Class<?> c = type; c != AbstractZipArchiver.class; c = c.getSuperclass() )
         {
-            IOUtil.close( in );
+            try
+            {
+                c.getDeclaredMethod( "zipFile", InputStream.class, ZipArchiveOutputStream.class, String.class,
+                                     long.class, File.class, int.class, String.class );
+                return true;
+            }
+            catch ( NoSuchMethodException e )
+            {
+                // not overridden here
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Remembers files from added zip files, so their compressed data can be copied
+     * without recompressing it.
+     */
+    protected ArchiveEntry asArchiveEntry( PlexusIoResource resource, String destFileName, int permissions,
+                                           PlexusIoResourceCollection collection )
+        throws ArchiverException
+    {
+        final ArchiveEntry entry = super.asArchiveEntry( resource, destFileName, permissions, collection );
+        if ( resource instanceof ZipResource && resource.isFile() && ( (ZipResource) resource ).isRawCopyable() )
+        {
+            rawSources.put( entry, (ZipResource) resource );
+        }
+        if ( collection != null && collection == originalContents )
+        {
+            originalEntries.add( entry );
+        }
+        return entry;
+    }
+
+    /**
+     * Sets the strategy of the deflater, which {@link ZipArchiveOutputStream} doesn't expose.
+     */
+    private static class StrategyZipArchiveOutputStream
+        extends ZipArchiveOutputStream
+    {
+        StrategyZipArchiveOutputStream( OutputStream out, int strategy )
+        {
+            super( out );
+            def.setStrategy( strategy );
+        }
+    }
+
+    /**
+     * Supplies the contents of an entry from an added zip file, and gives access to its
+     * compressed data, so the entry can be copied without recompressing it.
+     */
+    private static class RawEntrySupplier
+        implements InputStreamSupplier
+    {
+        private final ArchiveEntry entry;
+
+        private final ZipResource source;
+
+        private final boolean original;
+
+        RawEntrySupplier( ArchiveEntry entry, ZipResource source, boolean original )
+        {
+            this.entry = entry;
+            this.source = source;
+            this.original = original;
+        }
+
+        public InputStream get()
+        {
+            try
+            {
+                return entry.getInputStream();
+            }
+            catch ( IOException e )
+            {
+                throw new ArchiverException( "IOException when zipping r" + entry.getName() + ": "
+                                                 + e.getMessage(), e );
+            }
+        }
+
+        /**
+         * @return true, if the entry is kept from the archive being updated.
+         */
+        boolean isOriginal()
+        {
+            return original;
+        }
+
+        ZipArchiveEntry getSourceEntry()
+        {
+            return source.getEntry();
+        }
+
+        InputStream getRawContents()
+        {
+            return source.getRawContents();
         }
     }
 
@@ -639,7 +1314,7 @@ private void setTime(java.util.zip.ZipEntry zipEntry, long lastModified){
     protected void zipDir( PlexusIoResource dir, ZipArchiveOutputStream zOut, String vPath, int mode )
         throws IOException
     {
-        if ( addedDirs.get( vPath ) != null )
+        if ( addedDirIndex.contains( vPath ) )
         {
             // don't add directories we've already added.
             // no warning if we try, it is harmless in and of itself
@@ -647,6 +1322,7 @@ protected void zipDir( PlexusIoResource dir, ZipArchiveOutputStream zOut, String
         }
 
         getLogger().debug( "adding directory " + vPath );
+        addedDirIndex.add( vPath );
         addedDirs.put( vPath, vPath );
 
         if ( !skipWriting )
@@ -687,17 +1363,27 @@ protected void zipDir( PlexusIoResource dir, ZipArchiveOutputStream zOut, String
                 // This is faintly ridiculous:
                 ze.setCrc( EMPTY_CRC );
             }
+            else
+            {
+                ze.setMethod( doCompress ? ZipArchiveEntry.DEFLATED : ZipArchiveEntry.STORED );
+            }
             ze.setUnixMode( mode );
 
+            final byte[] bytes = isSymlink
+                ? encodeSymlink( ( (SymlinkDestinationSupplier) dir ).getSymlinkDestination() )
+                : new byte[0];
+
+            if ( concurrentCreator != null )
+            {
+                concurrentCreator.addArchiveEntry( ze, createInputStreamSupplier( bytes ), true );
+                return;
+            }
+
             zOut.putArchiveEntry( ze );
 
             if ( isSymlink )
             {
-                String symlinkDestination = ( (SymlinkDestinationSupplier) dir ).getSymlinkDestination();
-                ZipEncoding enc = ZipEncodingHelper.getZipEncoding( zOut.getEncoding() );
-                final byte[] bytes = enc.encode( symlinkDestination ).array();
                 zOut.write( bytes, 0, bytes.length );
-
             }
 
             zOut.closeArchiveEntry();
@@ -742,6 +1428,24 @@ protected boolean createEmptyZip( File zipFile )
         return true;
     }
 
+    /**
+     * @return the paths of the entries, which have been written so far.
+     * @since 3.0.1
+     */
+    protected PathIndex getEntryIndex()
+    {
+        return entryIndex;
+    }
+
+    /**
+     * @return the paths of the directory entries, which have been written so far.
+     * @since 3.0.1
+     */
+    protected PathIndex getAddedDirIndex()
+    {
+        return addedDirIndex;
+    }
+
     /**
      * Do any clean up necessary to allow this instance to be used again.
      * <p/>
@@ -762,10 +1466,21 @@ protected void cleanUp()
         super.cleanUp();
         addedDirs.clear();
         entries.clear();
+        addedDirIndex.clear();
+        entryIndex.clear();
         addingNewFiles = false;
         doUpdate = savedDoUpdate;
         success = false;
         zOut = null;
+        concurrentCreator = null;
+        rawSources.clear();
+        originalContents = null;
+        if ( originalZip != null )
+        {
+            originalZip.close();
+            originalZip = null;
+        }
+        originalEntries.clear();
         renamedFile = null;
         zipFile = null;
     }
@@ -833,6 +1548,11 @@ protected boolean revert( StringBuffer messageBuffer )
     protected void close()
         throws IOException
     {
+        if ( concurrentCreator != null )
+        {
+            concurrentCreator.close();
+        }
+
         // Close the output stream.
         try
         {
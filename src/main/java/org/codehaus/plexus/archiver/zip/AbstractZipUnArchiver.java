@@ -18,11 +18,26 @@
  */
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
 
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipFile;
@@ -30,6 +45,8 @@
 import org.codehaus.plexus.archiver.AbstractUnArchiver;
 import org.codehaus.plexus.archiver.ArchiveFilterException;
 import org.codehaus.plexus.archiver.ArchiverException;
+import org.codehaus.plexus.archiver.util.HardLinks;
+import org.codehaus.plexus.archiver.util.Streams;
 import org.codehaus.plexus.components.io.resources.PlexusIoResource;
 import org.codehaus.plexus.util.IOUtil;
 
@@ -44,6 +61,20 @@
 
     private String encoding = "UTF8";
 
+    /**
+     * The number of threads used to extract entries, 1 means all entries are
+     * extracted on the calling thread.
+     */
+    private int extractionThreads = 1;
+
+    private boolean verifyStoredChecksums = false;
+
+    // ZipArchiveEntry.getDataOffset() of newer commons-compress releases, or null
+    private static final Method GET_DATA_OFFSET = findGetDataOffset();
+
+    // while extracting, the archive, which stored entries are transferred from, or null
+    private RandomAccessFile source;
+
     public AbstractZipUnArchiver()
     {
     }
@@ -69,6 +100,62 @@ public void setEncoding( String encoding )
         this.encoding = encoding;
     }
 
+    /**
+     * Sets the number of threads used to extract entries. With more than one thread, files
+     * are inflated and written concurrently. Directories and symbolic links are still created
+     * on the calling thread in the order of the archive; a symbolic link, or a name occurring
+     * twice, is only extracted once all files before it have been written. File selectors are
+     * always invoked on the calling thread. Defaults to 1, which extracts all entries on the
+     * calling thread.
+     *
+     * @param extractionThreads the number of threads, at least 1.
+     * @since 3.0.1
+     */
+    public void setExtractionThreads( int extractionThreads )
+    {
+        if ( extractionThreads < 1 )
+        {
+            throw new IllegalArgumentException( "At least one extraction thread is required: " + extractionThreads );
+        }
+        this.extractionThreads = extractionThreads;
+    }
+
+    /**
+     * @since 3.0.1
+     */
+    public int getExtractionThreads()
+    {
+        return extractionThreads;
+    }
+
+    @Override
+    protected int getMetadataThreads()
+    {
+        return extractionThreads;
+    }
+
+    /**
+     * Sets, whether the CRC of stored entries is verified. Stored entries are transferred from
+     * the archive to the extracted file directly, without passing through the heap, if the
+     * commons-compress release in use provides the offsets of the entries' data; otherwise,
+     * they are copied, and this setting has no effect. Verifying the CRC means reading the data
+     * once more, a file failing the verification is deleted. Defaults to false.
+     *
+     * @since 3.0.1
+     */
+    public void setVerifyStoredChecksums( boolean verifyStoredChecksums )
+    {
+        this.verifyStoredChecksums = verifyStoredChecksums;
+    }
+
+    /**
+     * @since 3.0.1
+     */
+    public boolean isVerifyStoredChecksums()
+    {
+        return verifyStoredChecksums;
+    }
+
     private static class ZipEntryFileInfo
         implements PlexusIoResource
     {
@@ -140,21 +227,24 @@ protected void execute()
         try
         {
             zf = new org.apache.commons.compress.archivers.zip.ZipFile( getSourceFile(), encoding );
-            final Enumeration e = zf.getEntries();
-            while ( e.hasMoreElements() )
+            source = openSource();
+            if ( extractionThreads > 1 )
             {
-                final ZipArchiveEntry ze = (ZipArchiveEntry) e.nextElement();
-                final ZipEntryFileInfo fileInfo = new ZipEntryFileInfo( zf, ze );
-                if ( isSelected( ze.getName(), fileInfo ) )
+                extractInParallel( zf, null, getDestDirectory() );
+            }
+            else
+            {
+                final Enumeration e = zf.getEntries();
+                while ( e.hasMoreElements() )
                 {
-					InputStream in = zf.getInputStream( ze );
-					extractFileIfIncluded(getSourceFile(), getDestDirectory(), in, ze.getName(),
-							new Date(ze.getTime()), ze.isDirectory(), ze.getUnixMode() != 0 ? ze.getUnixMode() : null,
-                            resolveSymlink( zf, ze ) );
-					IOUtil.close(in);
-				}
-
-			}
+                    final ZipArchiveEntry ze = (ZipArchiveEntry) e.nextElement();
+                    final ZipEntryFileInfo fileInfo = new ZipEntryFileInfo( zf, ze );
+                    if ( isSelected( ze.getName(), fileInfo ) )
+                    {
+                        extractEntry( zf, ze, getDestDirectory() );
+                    }
+                }
+            }
 
             getLogger().debug( "expand complete" );
         }
@@ -165,6 +255,7 @@ protected void execute()
         finally
         {
 			IOUtils.closeQuietly( zf);
+            closeSource();
         }
     }
 
@@ -176,12 +267,319 @@ private String resolveSymlink( ZipFile zf, ZipArchiveEntry ze )
         else return null;
     }
 
+    private static Method findGetDataOffset()
+    {
+        try
+        {
+            return ZipArchiveEntry.class.getMethod( "getDataOffset" );
+        }
+        catch ( final NoSuchMethodException e )
+        {
+            return null;
+        }
+    }
+
+    private RandomAccessFile openSource()
+    {
+        if ( GET_DATA_OFFSET == null )
+        {
+            return null;
+        }
+        try
+        {
+            return new RandomAccessFile( getSourceFile(), "r" );
+        }
+        catch ( IOException e )
+        {
+            getLogger().debug( "Stored entries will be copied: " + e.getMessage() );
+            return null;
+        }
+    }
+
+    private void closeSource()
+    {
+        if ( source != null )
+        {
+            try
+            {
+                source.close();
+            }
+            catch ( IOException ignore )
+            {
+                // Only read from
+            }
+            source = null;
+        }
+    }
+
+    /**
+     * @return the offset of the data of a stored file entry in the archive, or -1 if it is unknown.
+     */
+    private long getDataOffset( ZipArchiveEntry ze )
+    {
+        if ( source == null || ze.getMethod() != ZipArchiveEntry.STORED || ze.isDirectory() || ze.isUnixSymlink()
+            || ze.getSize() < 0 || ze.getCompressedSize() != ze.getSize() )
+        {
+            return -1;
+        }
+        try
+        {
+            final long offset = (Long) GET_DATA_OFFSET.invoke( ze );
+            return offset >= 0 && offset + ze.getSize() <= source.length() ? offset : -1;
+        }
+        catch ( final Exception e )
+        {
+            return -1;
+        }
+    }
+
+    private void extractEntry( ZipFile zf, ZipArchiveEntry ze, File outputDirectory )
+        throws IOException
+    {
+        final Integer mode = ze.getUnixMode() != 0 ? ze.getUnixMode() : null;
+        final Date time = new Date( ze.getTime() );
+        // The data of a symbolic link is the path of its target
+        final long size = ze.isUnixSymlink() ? -1 : ze.getSize();
+        if ( isUnchanged( ze.getName(), size, ze.getCrc(), mode, time ) )
+        {
+            return;
+        }
+        final long offset = getDataOffset( ze );
+        final InputStream in = offset != -1 ? new StoredEntryInputStream( zf, ze, offset ) : zf.getInputStream( ze );
+        try
+        {
+            extractFileIfIncluded( getSourceFile(), outputDirectory, in, ze.getName(), time, ze.isDirectory(), mode,
+                                   resolveSymlink( zf, ze ), ze.getSize(), ze.getCrc() );
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+    }
+
+    /**
+     * Extracts the selected entries, whose names start with {@code path}, writing files on a
+     * pool of worker threads. The zip file is shared by the workers, its input streams may be
+     * read concurrently.
+     *
+     * @param path the prefix of the entries to extract, or null to extract all selected entries.
+     */
+    private void extractInParallel( final ZipFile zf, final String path, final File outputDirectory )
+        throws IOException
+    {
+        final ExecutorService executor = Executors.newFixedThreadPool( extractionThreads );
+        final List<Future<Void>> pending = new ArrayList<Future<Void>>();
+        final Set<String> pendingNames = new HashSet<String>();
+        try
+        {
+            final Enumeration e = zf.getEntries();
+            while ( e.hasMoreElements() )
+            {
+                final ZipArchiveEntry ze = (ZipArchiveEntry) e.nextElement();
+                if ( !isSelected( ze.getName(), new ZipEntryFileInfo( zf, ze ) )
+                    || ( path != null && !ze.getName().startsWith( path ) ) )
+                {
+                    continue;
+                }
+
+                if ( ze.isDirectory() )
+                {
+                    extractEntry( zf, ze, outputDirectory );
+                }
+                else if ( ze.isUnixSymlink() || !pendingNames.add( ze.getName() ) )
+                {
+                    // The link may redirect files after it, and a later duplicate replaces an earlier one
+                    awaitAll( pending );
+                    pendingNames.clear();
+                    extractEntry( zf, ze, outputDirectory );
+                }
+                else
+                {
+                    pending.add( executor.submit( new Callable<Void>()
+                    {
+                        public Void call()
+                            throws IOException
+                        {
+                            extractEntry( zf, ze, outputDirectory );
+                            return null;
+                        }
+                    } ) );
+                }
+            }
+            awaitAll( pending );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void awaitAll( List<Future<Void>> futures )
+        throws IOException
+    {
+        try
+        {
+            for ( Future<Void> future : futures )
+            {
+                future.get();
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new ArchiverException( "Interrupted while extracting", e );
+        }
+        catch ( ExecutionException e )
+        {
+            final Throwable cause = e.getCause();
+            if ( cause instanceof IOException )
+            {
+                throw (IOException) cause;
+            }
+            if ( cause instanceof RuntimeException )
+            {
+                throw (RuntimeException) cause;
+            }
+            if ( cause instanceof Error )
+            {
+                throw (Error) cause;
+            }
+            throw new ArchiverException( cause.getMessage(), cause );
+        }
+        futures.clear();
+    }
+
+    /**
+     * Transfers stored entries from the archive's channel to the file directly.
+     */
+    protected void writeFile( final InputStream contents, final File f )
+        throws IOException
+    {
+        if ( !( contents instanceof StoredEntryInputStream ) )
+        {
+            super.writeFile( contents, f );
+            return;
+        }
+        final StoredEntryInputStream stored = (StoredEntryInputStream) contents;
+        final FileChannel channel = source.getChannel();
+        final long size = stored.entry.getSize();
+        HardLinks.unlink( f );
+        final FileOutputStream out = new FileOutputStream( f );
+        try
+        {
+            final FileChannel target = out.getChannel();
+            long position = 0;
+            while ( position < size )
+            {
+                final long n = channel.transferTo( stored.offset + position, size - position, target );
+                if ( n <= 0 )
+                {
+                    throw new IOException( "Truncated entry " + stored.entry.getName() );
+                }
+                position += n;
+            }
+        }
+        finally
+        {
+            IOUtil.close( out );
+        }
+        if ( verifyStoredChecksums && !hasValidChecksum( channel, stored ) )
+        {
+            f.delete();
+            throw new IOException( "CRC mismatch for entry " + stored.entry.getName() );
+        }
+    }
+
+    private static boolean hasValidChecksum( FileChannel channel, StoredEntryInputStream stored )
+        throws IOException
+    {
+        final byte[] buffer = Streams.borrowBuffer();
+        try
+        {
+            final CRC32 crc = new CRC32();
+            final long size = stored.entry.getSize();
+            long position = 0;
+            while ( position < size )
+            {
+                final ByteBuffer bb = ByteBuffer.wrap( buffer, 0, (int) Math.min( buffer.length, size - position ) );
+                final int n = channel.read( bb, stored.offset + position );
+                if ( n <= 0 )
+                {
+                    throw new IOException( "Truncated entry " + stored.entry.getName() );
+                }
+                crc.update( buffer, 0, n );
+                position += n;
+            }
+            return crc.getValue() == stored.entry.getCrc();
+        }
+        finally
+        {
+            Streams.returnBuffer( buffer );
+        }
+    }
+
+    /**
+     * The contents of a stored entry, whose data may also be transferred from the archive's
+     * channel directly. The entry's input stream is only opened, if it is read after all.
+     */
+    private static class StoredEntryInputStream
+        extends InputStream
+    {
+        private final ZipFile zipFile;
+
+        private final ZipArchiveEntry entry;
+
+        private final long offset;
+
+        private InputStream in;
+
+        StoredEntryInputStream( ZipFile zipFile, ZipArchiveEntry entry, long offset )
+        {
+            this.zipFile = zipFile;
+            this.entry = entry;
+            this.offset = offset;
+        }
+
+        private InputStream getStream()
+            throws IOException
+        {
+            if ( in == null )
+            {
+                in = zipFile.getInputStream( entry );
+            }
+            return in;
+        }
+
+        public int read()
+            throws IOException
+        {
+            return getStream().read();
+        }
+
+        public int read( byte[] b, int off, int len )
+            throws IOException
+        {
+            return getStream().read( b, off, len );
+        }
+
+        public void close()
+            throws IOException
+        {
+            if ( in != null )
+            {
+                in.close();
+            }
+        }
+    }
+
     private void extractFileIfIncluded( final File sourceFile, final File destDirectory, final InputStream inputStream,
                                         final String name, final Date time, final boolean isDirectory,
-                                        final Integer mode, String symlinkDestination )
+                                        final Integer mode, String symlinkDestination, final long size,
+                                        final long crc )
         throws IOException, ArchiverException
     {
-          extractFile( sourceFile, destDirectory, inputStream, name, time, isDirectory, mode, symlinkDestination );
+          extractFile( sourceFile, destDirectory, inputStream, name, time, isDirectory, mode, symlinkDestination,
+                       size, crc );
     }
 
     protected void execute( final String path, final File outputDirectory )
@@ -192,6 +590,13 @@ protected void execute( final String path, final File outputDirectory )
         try
         {
             zipFile = new org.apache.commons.compress.archivers.zip.ZipFile( getSourceFile(), encoding );
+            source = openSource();
+
+            if ( extractionThreads > 1 )
+            {
+                extractInParallel( zipFile, path, outputDirectory );
+                return;
+            }
 
             final Enumeration e = zipFile.getEntries();
 
@@ -206,11 +611,7 @@ protected void execute( final String path, final File outputDirectory )
 
                 if ( ze.getName().startsWith( path ) )
                 {
-                    final InputStream inputStream = zipFile.getInputStream( ze );
-                    extractFileIfIncluded( getSourceFile(), outputDirectory, inputStream,
-                                           ze.getName(), new Date( ze.getTime() ), ze.isDirectory(),
-                                           ze.getUnixMode() != 0 ? ze.getUnixMode() : null, resolveSymlink( zipFile, ze ) );
-					IOUtil.close(inputStream);
+                    extractEntry( zipFile, ze, outputDirectory );
                 }
             }
         }
@@ -221,6 +622,7 @@ protected void execute( final String path, final File outputDirectory )
         finally
         {
 			IOUtils.closeQuietly( zipFile);
+            closeSource();
         }
     }
 }
@@ -0,0 +1,41 @@
+package org.codehaus.plexus.archiver.zip;
+
+/*
+ * Copyright 2014 The Codehaus Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Decides, whether deflating an entry is worth the effort. Entries that are judged
+ * incompressible are stored instead.
+ *
+ * @see AbstractZipArchiver#setCompressibilityDetector(CompressibilityDetector)
+ * @since 3.0.1
+ */
+public interface CompressibilityDetector
+{
+    /**
+     * The maximum number of bytes passed to {@link #isCompressible(String, byte[], int)}.
+     */
+    int SAMPLE_SIZE = 4 * 1024;
+
+    /**
+     * @param name   the name of the entry in the archive.
+     * @param sample the first bytes of the entry's contents.
+     * @param length the number of valid bytes in {@code sample}, which is less than
+     *               {@link #SAMPLE_SIZE} only if the entry is smaller.
+     * @return false, if the entry should be stored rather than deflated.
+     */
+    boolean isCompressible( String name, byte[] sample, int length );
+}
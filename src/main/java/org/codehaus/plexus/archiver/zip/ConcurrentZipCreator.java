@@ -0,0 +1,445 @@
+package org.codehaus.plexus.archiver.zip;
+
+/*
+ * Copyright 2014 The Codehaus Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.parallel.InputStreamSupplier;
+import org.codehaus.plexus.archiver.ArchiverException;
+import org.codehaus.plexus.archiver.util.CompressionGovernor;
+import org.codehaus.plexus.archiver.util.Streams;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Compresses zip entries on a pool of worker threads and writes them to the target
+ * {@link ZipArchiveOutputStream} in the order they were added.
+ * <p/>
+ * Every entry is deflated into its own scatter buffer, which is kept in memory up to
+ * {@link #IN_MEMORY_THRESHOLD} bytes and offloaded to a temporary file beyond that. The
+ * compressed data is then copied into the target with
+ * {@link ZipArchiveOutputStream#addRawArchiveEntry(ZipArchiveEntry, InputStream)}, so
+ * entry order, compressed data and CRCs do not depend on the number of threads.
+ * <p/>
+ * The number of entries that are compressed but not yet written is bounded; once the
+ * bound is reached, {@link #addArchiveEntry} writes finished entries on the calling thread.
+ *
+ * @since 3.0.1
+ */
+public class ConcurrentZipCreator
+{
+    /**
+     * The number of compressed bytes a single entry keeps in memory before it is offloaded
+     * to a temporary file.
+     */
+    public static final int IN_MEMORY_THRESHOLD = 512 * 1024;
+
+    private final ZipArchiveOutputStream target;
+
+    private final ExecutorService executor;
+
+    private final int maxPending;
+
+    private final int level;
+
+    private final int strategy;
+
+    private CompressionGovernor governor;
+
+    private final LinkedList<Future<CompressedEntry>> pending = new LinkedList<Future<CompressedEntry>>();
+
+    private final ConcurrentLinkedQueue<Deflater> deflaters = new ConcurrentLinkedQueue<Deflater>();
+
+    private final ThreadLocal<Deflater> deflater = new ThreadLocal<Deflater>()
+    {
+        protected Deflater initialValue()
+        {
+            final Deflater def = new Deflater( level, true );
+            def.setStrategy( strategy );
+            deflaters.add( def );
+            return def;
+        }
+    };
+
+    /**
+     * @param target   the stream receiving the compressed entries.
+     * @param nThreads the number of compressing threads.
+     */
+    public ConcurrentZipCreator( ZipArchiveOutputStream target, int nThreads )
+    {
+        this( target, nThreads, Deflater.DEFAULT_COMPRESSION );
+    }
+
+    /**
+     * @param target   the stream receiving the compressed entries.
+     * @param nThreads the number of compressing threads.
+     * @param level    the {@link Deflater} level used for deflated entries.
+     */
+    public ConcurrentZipCreator( ZipArchiveOutputStream target, int nThreads, int level )
+    {
+        this( target, nThreads, level, Deflater.DEFAULT_STRATEGY );
+    }
+
+    /**
+     * @param target   the stream receiving the compressed entries.
+     * @param nThreads the number of compressing threads.
+     * @param level    the {@link Deflater} level used for deflated entries.
+     * @param strategy the {@link Deflater} strategy used for deflated entries.
+     * @since 3.0.1
+     */
+    public ConcurrentZipCreator( ZipArchiveOutputStream target, int nThreads, int level, int strategy )
+    {
+        this.target = target;
+        this.level = level;
+        this.strategy = strategy;
+        this.maxPending = nThreads * 2;
+        this.executor = Executors.newFixedThreadPool( nThreads );
+    }
+
+    /**
+     * Sets the governor, which chooses the level of every deflated entry, instead of the
+     * level given to the constructor.
+     *
+     * @param governor the governor, or null to deflate all entries at the same level.
+     */
+    public void setGovernor( CompressionGovernor governor )
+    {
+        this.governor = governor;
+    }
+
+    /**
+     * Adds an entry. The entry must have its name, time, unix mode and method set. The
+     * {@code source} is opened before the method of the entry is read, so the supplier may
+     * still change it.
+     *
+     * @param zipArchiveEntry the entry to add.
+     * @param source          supplies the uncompressed contents of the entry.
+     * @param addInParallel   false, if {@code source} must only be read from the calling thread.
+     * @throws IOException if writing previously compressed entries fails.
+     */
+    public void addArchiveEntry( ZipArchiveEntry zipArchiveEntry, InputStreamSupplier source, boolean addInParallel )
+        throws IOException
+    {
+        final EntryCompressor compressor = new EntryCompressor( zipArchiveEntry, source );
+        if ( addInParallel )
+        {
+            pending.add( executor.submit( compressor ) );
+        }
+        else
+        {
+            final FutureTask<CompressedEntry> task = new FutureTask<CompressedEntry>( compressor );
+            task.run();
+            pending.add( task );
+        }
+
+        while ( pending.size() > maxPending )
+        {
+            writeNext();
+        }
+    }
+
+    /**
+     * Adds an entry whose data is already compressed. The entry must have its name, time,
+     * unix mode, method, sizes and CRC set. The data is copied to the target stream on the
+     * calling thread, once all previously added entries have been written.
+     *
+     * @param zipArchiveEntry the entry to add.
+     * @param rawSource       supplies the compressed contents of the entry.
+     * @throws IOException if writing previously compressed entries fails.
+     */
+    public void addRawArchiveEntry( final ZipArchiveEntry zipArchiveEntry, final InputStreamSupplier rawSource )
+        throws IOException
+    {
+        final FutureTask<CompressedEntry> task = new FutureTask<CompressedEntry>( new Callable<CompressedEntry>()
+        {
+            public CompressedEntry call()
+            {
+                return new CompressedEntry( zipArchiveEntry, rawSource );
+            }
+        } );
+        task.run();
+        pending.add( task );
+
+        while ( pending.size() > maxPending )
+        {
+            writeNext();
+        }
+    }
+
+    /**
+     * Waits for all added entries and writes them to the target stream.
+     *
+     * @throws IOException if compressing or writing fails.
+     */
+    public void flush()
+        throws IOException
+    {
+        while ( !pending.isEmpty() )
+        {
+            writeNext();
+        }
+    }
+
+    /**
+     * Stops the worker threads and discards all entries that have not been written yet.
+     * This does not close the target stream.
+     */
+    public void close()
+    {
+        executor.shutdownNow();
+        try
+        {
+            executor.awaitTermination( 1, TimeUnit.MINUTES );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+        for ( Future<CompressedEntry> future : pending )
+        {
+            if ( !future.isDone() )
+            {
+                // Never started, as shutdownNow() drained the queue
+                future.cancel( true );
+                continue;
+            }
+            try
+            {
+                future.get().close();
+            }
+            catch ( Exception ignore )
+            {
+                // We are discarding the entry anyway
+            }
+        }
+        pending.clear();
+        Deflater def;
+        while ( ( def = deflaters.poll() ) != null )
+        {
+            def.end();
+        }
+    }
+
+    private void writeNext()
+        throws IOException
+    {
+        final CompressedEntry compressed = get( pending.removeFirst() );
+        try
+        {
+            compressed.writeTo( target );
+        }
+        finally
+        {
+            compressed.close();
+        }
+    }
+
+    private static CompressedEntry get( Future<CompressedEntry> future )
+        throws IOException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new ArchiverException( "Interrupted while waiting for a compressed entry", e );
+        }
+        catch ( ExecutionException e )
+        {
+            final Throwable cause = e.getCause();
+            if ( cause instanceof IOException )
+            {
+                throw (IOException) cause;
+            }
+            if ( cause instanceof RuntimeException )
+            {
+                throw (RuntimeException) cause;
+            }
+            if ( cause instanceof Error )
+            {
+                throw (Error) cause;
+            }
+            throw new ArchiverException( cause.getMessage(), cause );
+        }
+    }
+
+    private class EntryCompressor
+        implements Callable<CompressedEntry>
+    {
+        private final ZipArchiveEntry entry;
+
+        private final InputStreamSupplier source;
+
+        EntryCompressor( ZipArchiveEntry entry, InputStreamSupplier source )
+        {
+            this.entry = entry;
+            this.source = source;
+        }
+
+        public CompressedEntry call()
+            throws IOException
+        {
+            final DeferredScatterOutputStream store = new DeferredScatterOutputStream( IN_MEMORY_THRESHOLD );
+            final InputStream in = source.get();
+            byte[] buffer = null;
+            byte[] output = null;
+            try
+            {
+                final boolean deflate = entry.getMethod() == ZipArchiveEntry.DEFLATED;
+                final Deflater def = deflater.get();
+                final int entryLevel = governor != null ? governor.getLevel() : level;
+                final long start = System.nanoTime();
+                buffer = Streams.borrowBuffer();
+                output = Streams.borrowBuffer();
+                final CRC32 crc = new CRC32();
+                long size = 0;
+                int n;
+
+                def.reset();
+                def.setLevel( entryLevel );
+                while ( ( n = in.read( buffer ) ) != -1 )
+                {
+                    crc.update( buffer, 0, n );
+                    size += n;
+                    if ( deflate )
+                    {
+                        def.setInput( buffer, 0, n );
+                        while ( !def.needsInput() )
+                        {
+                            deflate( def, output, store );
+                        }
+                    }
+                    else
+                    {
+                        store.writeOut( buffer, 0, n );
+                    }
+                }
+                if ( deflate )
+                {
+                    def.finish();
+                    while ( !def.finished() )
+                    {
+                        deflate( def, output, store );
+                    }
+                }
+                store.closeForWriting();
+
+                entry.setSize( size );
+                entry.setCompressedSize( store.size() );
+                entry.setCrc( crc.getValue() );
+                if ( deflate && governor != null )
+                {
+                    governor.record( entryLevel, size, store.size(), System.nanoTime() - start );
+                }
+                return new CompressedEntry( entry, store );
+            }
+            catch ( IOException e )
+            {
+                store.close();
+                throw e;
+            }
+            catch ( RuntimeException e )
+            {
+                store.close();
+                throw e;
+            }
+            finally
+            {
+                if ( buffer != null )
+                {
+                    Streams.returnBuffer( buffer );
+                }
+                if ( output != null )
+                {
+                    Streams.returnBuffer( output );
+                }
+                IOUtil.close( in );
+            }
+        }
+
+        private void deflate( Deflater def, byte[] output, DeferredScatterOutputStream store )
+            throws IOException
+        {
+            final int len = def.deflate( output, 0, output.length );
+            if ( len > 0 )
+            {
+                store.writeOut( output, 0, len );
+            }
+        }
+    }
+
+    private static class CompressedEntry
+    {
+        private final ZipArchiveEntry entry;
+
+        private final DeferredScatterOutputStream store;
+
+        private final InputStreamSupplier rawSource;
+
+        CompressedEntry( ZipArchiveEntry entry, DeferredScatterOutputStream store )
+        {
+            this.entry = entry;
+            this.store = store;
+            this.rawSource = null;
+        }
+
+        CompressedEntry( ZipArchiveEntry entry, InputStreamSupplier rawSource )
+        {
+            this.entry = entry;
+            this.store = null;
+            this.rawSource = rawSource;
+        }
+
+        void writeTo( ZipArchiveOutputStream target )
+            throws IOException
+        {
+            final InputStream raw = store != null ? store.getInputStream() : rawSource.get();
+            try
+            {
+                target.addRawArchiveEntry( entry, raw );
+            }
+            finally
+            {
+                IOUtil.close( raw );
+            }
+        }
+
+        void close()
+            throws IOException
+        {
+            if ( store != null )
+            {
+                store.close();
+            }
+        }
+    }
+}
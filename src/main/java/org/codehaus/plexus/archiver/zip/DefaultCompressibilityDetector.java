@@ -0,0 +1,201 @@
+package org.codehaus.plexus.archiver.zip;
+
+/*
+ * Copyright 2014 The Codehaus Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * A {@link CompressibilityDetector}, which considers entries incompressible if
+ * <ul>
+ * <li>their name has the extension of a compressed file format, or</li>
+ * <li>their contents start with the magic number of a compressed file format, or</li>
+ * <li>entropy sampling is enabled, and the entropy of the sample exceeds the threshold.</li>
+ * </ul>
+ *
+ * @since 3.0.1
+ */
+public class DefaultCompressibilityDetector
+    implements CompressibilityDetector
+{
+    /**
+     * The extensions of compressed file formats, which are incompressible by default.
+     */
+    public static final String[] DEFAULT_EXTENSIONS =
+        { "7z", "avi", "bz2", "ear", "gif", "gz", "jar", "jpeg", "jpg", "lz4", "lzma", "m4a", "mov", "mp3", "mp4",
+            "ogg", "png", "rar", "sar", "tbz2", "tgz", "txz", "war", "webm", "webp", "woff", "woff2", "xz", "zip",
+            "zst" };
+
+    /**
+     * The default entropy threshold in bits per byte.
+     */
+    public static final double DEFAULT_ENTROPY_THRESHOLD = 7.5;
+
+    // Samples smaller than this don't tell anything about the entropy of the entry
+    private static final int MIN_ENTROPY_SAMPLE = 512;
+
+    private static final Magic[] MAGICS = {
+        new Magic( 0, 0x50, 0x4b, 0x03, 0x04 ), // zip, jar, war, ear
+        new Magic( 0, 0x1f, 0x8b ), // gzip
+        new Magic( 0, 'B', 'Z', 'h' ), // bzip2
+        new Magic( 0, 0xfd, '7', 'z', 'X', 'Z', 0x00 ), // xz
+        new Magic( 0, '7', 'z', 0xbc, 0xaf, 0x27, 0x1c ), // 7z
+        new Magic( 0, 0x28, 0xb5, 0x2f, 0xfd ), // zstd
+        new Magic( 0, 0x04, 0x22, 0x4d, 0x18 ), // lz4
+        new Magic( 0, 0xff, 0x06, 0x00, 0x00, 's', 'N', 'a', 'P', 'p', 'Y' ), // framed snappy
+        new Magic( 0, 'R', 'a', 'r', '!' ), // rar
+        new Magic( 0, 0x89, 'P', 'N', 'G' ), // png
+        new Magic( 0, 0xff, 0xd8, 0xff ), // jpeg
+        new Magic( 0, 'G', 'I', 'F', '8' ), // gif
+        new Magic( 8, 'W', 'E', 'B', 'P' ), // webp
+        new Magic( 0, 'w', 'O', 'F', 'F' ), // woff
+        new Magic( 0, 'w', 'O', 'F', '2' ), // woff2
+        new Magic( 4, 'f', 't', 'y', 'p' ), // mp4, mov, m4a
+        new Magic( 0, 'O', 'g', 'g', 'S' ), // ogg
+        new Magic( 0, 'I', 'D', '3' ), // mp3
+        new Magic( 0, 0x1a, 0x45, 0xdf, 0xa3 ) // webm, mkv
+    };
+
+    private final Set<String> extensions = new HashSet<String>( Arrays.asList( DEFAULT_EXTENSIONS ) );
+
+    private boolean entropySampling;
+
+    private double entropyThreshold = DEFAULT_ENTROPY_THRESHOLD;
+
+    public boolean isCompressible( String name, byte[] sample, int length )
+    {
+        if ( hasIncompressibleExtension( name ) )
+        {
+            return false;
+        }
+        for ( Magic magic : MAGICS )
+        {
+            if ( magic.matches( sample, length ) )
+            {
+                return false;
+            }
+        }
+        return !entropySampling || length < MIN_ENTROPY_SAMPLE || entropy( sample, length ) < entropyThreshold;
+    }
+
+    /**
+     * Sets the extensions of entries, which are considered incompressible. Defaults to
+     * {@link #DEFAULT_EXTENSIONS}.
+     */
+    public void setIncompressibleExtensions( Collection<String> extensions )
+    {
+        this.extensions.clear();
+        for ( String extension : extensions )
+        {
+            this.extensions.add( extension.toLowerCase( Locale.ENGLISH ) );
+        }
+    }
+
+    public Set<String> getIncompressibleExtensions()
+    {
+        return extensions;
+    }
+
+    /**
+     * Sets, whether entries with an unknown file format are considered incompressible,
+     * if their first bytes look random. Disabled by default.
+     */
+    public void setEntropySampling( boolean entropySampling )
+    {
+        this.entropySampling = entropySampling;
+    }
+
+    public boolean isEntropySampling()
+    {
+        return entropySampling;
+    }
+
+    /**
+     * Sets the entropy in bits per byte, above which a sample is considered random.
+     * Defaults to {@link #DEFAULT_ENTROPY_THRESHOLD}.
+     */
+    public void setEntropyThreshold( double entropyThreshold )
+    {
+        this.entropyThreshold = entropyThreshold;
+    }
+
+    public double getEntropyThreshold()
+    {
+        return entropyThreshold;
+    }
+
+    private boolean hasIncompressibleExtension( String name )
+    {
+        final int dot = name.lastIndexOf( '.' );
+        return dot > name.lastIndexOf( '/' )
+            && extensions.contains( name.substring( dot + 1 ).toLowerCase( Locale.ENGLISH ) );
+    }
+
+    /**
+     * @return the Shannon entropy of the sample in bits per byte.
+     */
+    static double entropy( byte[] sample, int length )
+    {
+        final int[] counts = new int[256];
+        for ( int i = 0; i < length; i++ )
+        {
+            counts[sample[i] & 0xff]++;
+        }
+        double entropy = 0;
+        for ( int count : counts )
+        {
+            if ( count > 0 )
+            {
+                final double p = (double) count / length;
+                entropy -= p * Math.log( p );
+            }
+        }
+        return entropy / Math.log( 2 );
+    }
+
+    private static class Magic
+    {
+        private final int offset;
+
+        private final int[] bytes;
+
+        Magic( int offset, int... bytes )
+        {
+            this.offset = offset;
+            this.bytes = bytes;
+        }
+
+        boolean matches( byte[] sample, int length )
+        {
+            if ( length < offset + bytes.length )
+            {
+                return false;
+            }
+            for ( int i = 0; i < bytes.length; i++ )
+            {
+                if ( ( sample[offset + i] & 0xff ) != bytes[i] )
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package org.codehaus.plexus.archiver.zip;
+
+/*
+ * Copyright 2014 The Codehaus Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.commons.compress.parallel.ScatterGatherBackingStore;
+import org.codehaus.plexus.util.IOUtil;
+
+import static org.codehaus.plexus.archiver.util.Streams.bufferedOutputStream;
+import static org.codehaus.plexus.archiver.util.Streams.fileOutputStream;
+
+/**
+ * A {@link ScatterGatherBackingStore} that keeps its data in memory until a threshold
+ * is reached, and offloads to a temporary file from then on.
+ *
+ * @since 3.0.1
+ */
+public class DeferredScatterOutputStream
+    implements ScatterGatherBackingStore
+{
+    private final int threshold;
+
+    private ExposedByteArrayOutputStream memory = new ExposedByteArrayOutputStream();
+
+    private File file;
+
+    private OutputStream fileOut;
+
+    private long size;
+
+    public DeferredScatterOutputStream( int threshold )
+    {
+        this.threshold = threshold;
+    }
+
+    public void writeOut( byte[] data, int offset, int length )
+        throws IOException
+    {
+        if ( fileOut == null && memory.size() + length > threshold )
+        {
+            file = File.createTempFile( "parallelscatter", ".tmp" );
+            fileOut = bufferedOutputStream( fileOutputStream( file ) );
+            memory.writeTo( fileOut );
+            memory = null;
+        }
+        if ( fileOut != null )
+        {
+            fileOut.write( data, offset, length );
+        }
+        else
+        {
+            memory.write( data, offset, length );
+        }
+        size += length;
+    }
+
+    /**
+     * @return the number of bytes written so far.
+     */
+    public long size()
+    {
+        return size;
+    }
+
+    public InputStream getInputStream()
+        throws IOException
+    {
+        if ( file != null )
+        {
+            return new FileInputStream( file );
+        }
+        return new ByteArrayInputStream( memory.getBuffer(), 0, memory.size() );
+    }
+
+    public void closeForWriting()
+        throws IOException
+    {
+        if ( fileOut != null )
+        {
+            fileOut.close();
+        }
+    }
+
+    public void close()
+        throws IOException
+    {
+        IOUtil.close( fileOut );
+        if ( file != null && !file.delete() )
+        {
+            file.deleteOnExit();
+        }
+        file = null;
+        memory = null;
+    }
+
+    private static class ExposedByteArrayOutputStream
+        extends ByteArrayOutputStream
+    {
+        byte[] getBuffer()
+        {
+            return buf;
+        }
+    }
+}
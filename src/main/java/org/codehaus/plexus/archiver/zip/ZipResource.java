@@ -12,6 +12,7 @@
 import org.codehaus.plexus.components.io.functions.InputStreamTransformer;
 import org.codehaus.plexus.components.io.functions.ResourceAttributeSupplier;
 import org.codehaus.plexus.components.io.resources.AbstractPlexusIoResource;
+import org.codehaus.plexus.components.io.resources.AbstractPlexusIoResourceCollection;
 import org.codehaus.plexus.components.io.resources.ClosingInputStream;
 import org.codehaus.plexus.components.io.resources.PlexusIoResource;
 
@@ -79,4 +80,30 @@ public InputStream getContents()
         return new ClosingInputStream( streamTransformer.transform( this, inputStream ), inputStream);
     }
 
+    /**
+     * @return true, if the contents of this resource are not transformed, so the compressed
+     *         data of the entry may be copied as it is.
+     */
+    boolean isRawCopyable()
+    {
+        return streamTransformer == AbstractPlexusIoResourceCollection.identityTransformer
+            && !entry.getGeneralPurposeBit().usesEncryption();
+    }
+
+    /**
+     * @return the entry of the underlying zip file.
+     */
+    ZipArchiveEntry getEntry()
+    {
+        return entry;
+    }
+
+    /**
+     * @return the still compressed data of the entry.
+     */
+    InputStream getRawContents()
+    {
+        return zipFile.getRawInputStream( entry );
+    }
+
 }
@@ -24,6 +24,8 @@
  * SOFTWARE.
  */
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
@@ -31,6 +33,7 @@
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
 import org.codehaus.plexus.archiver.Archiver;
 import org.codehaus.plexus.archiver.BasePlexusArchiverTest;
 import org.codehaus.plexus.archiver.zip.ZipArchiver;
@@ -91,6 +94,35 @@ public void testCreateResourceCollection()
         juZipFile.close();
     }
     
+    public void testParallelDecompressionOfHighlyCompressibleData()
+        throws Exception
+    {
+        // Many blocks in a single small stream, which expand far beyond the buffered size
+        byte[] pattern = "0123456789abcdef".getBytes( "US-ASCII" );
+        byte[] data = new byte[3 * ParallelBZip2InputStream.MAX_EXPANDED_SIZE];
+        for ( int i = 0; i < data.length; i++ )
+        {
+            data[i] = pattern[i % pattern.length];
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        BZip2CompressorOutputStream bzOut = new BZip2CompressorOutputStream( compressed );
+        bzOut.write( data );
+        bzOut.close();
+        // Followed by a second stream, which is decompressed concurrently again
+        bzOut = new BZip2CompressorOutputStream( compressed );
+        bzOut.write( pattern );
+        bzOut.close();
+
+        InputStream in = new ParallelBZip2InputStream( new ByteArrayInputStream( compressed.toByteArray() ), 4 );
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        IOUtil.copy( in, result );
+        in.close();
+        byte[] actual = result.toByteArray();
+        assertEquals( data.length + pattern.length, actual.length );
+        assertTrue( Arrays.equals( data, Arrays.copyOf( actual, data.length ) ) );
+        assertTrue( Arrays.equals( pattern, Arrays.copyOfRange( actual, data.length, actual.length ) ) );
+    }
+
     /**
      * Tests the .bzip2 archiver is forced set to true, and after that
      * tests the behavior when the forced is set to false.
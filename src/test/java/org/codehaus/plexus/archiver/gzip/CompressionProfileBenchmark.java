@@ -0,0 +1,91 @@
+package org.codehaus.plexus.archiver.gzip;
+
+
+/*
+ * Copyright 2014 The Codehaus Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+
+import org.codehaus.plexus.archiver.bzip2.BZip2Compressor;
+import org.codehaus.plexus.archiver.snappy.SnappyCompressor;
+import org.codehaus.plexus.archiver.util.CompressionProfile;
+import org.codehaus.plexus.archiver.util.Compressor;
+import org.codehaus.plexus.archiver.xz.XZCompressor;
+import org.codehaus.plexus.components.io.resources.ResourceFactory;
+
+/**
+ * Compares the throughput and the ratio of the {@link CompressionProfile} presets, for every
+ * compressor. Not run as a test; run it with the size of the input in megabytes:
+ * <pre>
+ * java -cp ... org.codehaus.plexus.archiver.gzip.CompressionProfileBenchmark 256
+ * </pre>
+ */
+public class CompressionProfileBenchmark
+{
+    private static final int RUNS = 3;
+
+    private static final CompressionProfile[] PROFILES =
+        { CompressionProfile.FASTEST, CompressionProfile.BALANCED, CompressionProfile.SMALLEST };
+
+    public static void main( String[] args )
+        throws Exception
+    {
+        final long size = ( args.length > 0 ? Long.parseLong( args[0] ) : 128 ) * 1024 * 1024;
+        final File input = File.createTempFile( "benchmark", ".dat" );
+        final File output = File.createTempFile( "benchmark", ".out" );
+        input.deleteOnExit();
+        output.deleteOnExit();
+        GZipCompressorBenchmark.writeInput( input, size );
+
+        for ( int run = 0; run < RUNS; run++ )
+        {
+            for ( String method : new String[]{ "gzip", "bzip2", "xz", "snappy" } )
+            {
+                for ( CompressionProfile profile : PROFILES )
+                {
+                    final Compressor compressor = createCompressor( method );
+                    compressor.setProfile( profile );
+                    compressor.setSource( ResourceFactory.createResource( input ) );
+                    compressor.setDestFile( output );
+                    final long start = System.nanoTime();
+                    compressor.compress();
+                    compressor.close();
+                    final double seconds = ( System.nanoTime() - start ) / 1e9;
+                    System.out.println( String.format( "%-6s %-8s %8.1f MB/s %6.1f%%", method, profile.getName(),
+                                                       size / seconds / ( 1024 * 1024 ),
+                                                       100.0 * output.length() / size ) );
+                }
+            }
+        }
+    }
+
+    private static Compressor createCompressor( String method )
+    {
+        if ( "gzip".equals( method ) )
+        {
+            return new GZipCompressor();
+        }
+        if ( "bzip2".equals( method ) )
+        {
+            return new BZip2Compressor();
+        }
+        if ( "xz".equals( method ) )
+        {
+            return new XZCompressor();
+        }
+        return new SnappyCompressor();
+    }
+}
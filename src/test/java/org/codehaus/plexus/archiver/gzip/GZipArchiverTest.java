@@ -24,15 +24,20 @@
  * SOFTWARE.
  */
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 import org.codehaus.plexus.archiver.Archiver;
 import org.codehaus.plexus.archiver.BasePlexusArchiverTest;
+import org.codehaus.plexus.archiver.util.CompressionProfile;
 import org.codehaus.plexus.archiver.zip.ZipArchiver;
 import org.codehaus.plexus.util.FileUtils;
 import org.codehaus.plexus.util.IOUtil;
@@ -88,6 +93,85 @@ public void testCreateResourceCollection()
         juZipFile.close();
     }
     
+    public void testCreateArchiveWithThreads()
+        throws Exception
+    {
+        final File zipFile = getTestFile( "target/output/archiveForParallelGzip.zip" );
+        ZipArchiver zipArchiver = (ZipArchiver) lookup( Archiver.ROLE, "zip" );
+        zipArchiver.addDirectory( getTestFile( "src" ) );
+        zipArchiver.setCompress( false );
+        zipArchiver.setDestFile( zipFile );
+        zipArchiver.createArchive();
+
+        final File gzFile = getTestFile( "target/output/archiveForParallelGzip.zip.gz" );
+        GZipArchiver archiver = (GZipArchiver) lookup( Archiver.ROLE, "gzip" );
+        archiver.setCompressionThreads( 4 );
+        archiver.addFile( zipFile, zipFile.getName() );
+        archiver.setDestFile( gzFile );
+        FileUtils.removePath( gzFile.getPath() );
+        archiver.createArchive();
+
+        final InputStream expected = new FileInputStream( zipFile );
+        final InputStream actual = new GZIPInputStream( new FileInputStream( gzFile ) );
+        assertTrue( Arrays.equals( IOUtil.toByteArray( expected ), IOUtil.toByteArray( actual ) ) );
+        expected.close();
+        actual.close();
+    }
+
+    public void testCreateArchiveFromLargeFile()
+        throws Exception
+    {
+        // Many times the deflate buffer
+        final File file = getTestFile( "target/output/large.txt" );
+        file.getParentFile().mkdirs();
+        final byte[] line = "A line of text, which compresses well\n".getBytes( "US-ASCII" );
+        final OutputStream out = new BufferedOutputStream( new FileOutputStream( file ) );
+        for ( long written = 0; written < 33 * 1024 * 1024; written += line.length )
+        {
+            out.write( line );
+        }
+        out.close();
+
+        final File gzFile = getTestFile( "target/output/large.txt.gz" );
+        GZipArchiver archiver = (GZipArchiver) lookup( Archiver.ROLE, "gzip" );
+        archiver.addFile( file, file.getName() );
+        archiver.setDestFile( gzFile );
+        FileUtils.removePath( gzFile.getPath() );
+        archiver.createArchive();
+
+        final InputStream expected = new FileInputStream( file );
+        final InputStream actual = new GZIPInputStream( new FileInputStream( gzFile ) );
+        assertTrue( Arrays.equals( IOUtil.toByteArray( expected ), IOUtil.toByteArray( actual ) ) );
+        expected.close();
+        actual.close();
+    }
+
+    public void testCreateArchiveWithProfiles()
+        throws Exception
+    {
+        final File file = getTestFile( "src/main/java/org/codehaus/plexus/archiver/AbstractArchiver.java" );
+        final long[] sizes = new long[2];
+        final CompressionProfile[] profiles = { CompressionProfile.FASTEST, CompressionProfile.SMALLEST };
+        for ( int i = 0; i < profiles.length; i++ )
+        {
+            final File gzFile = getTestFile( "target/output/profile-" + profiles[i].getName() + ".gz" );
+            GZipArchiver archiver = (GZipArchiver) lookup( Archiver.ROLE, "gzip" );
+            archiver.setCompressionProfile( profiles[i] );
+            archiver.addFile( file, file.getName() );
+            archiver.setDestFile( gzFile );
+            FileUtils.removePath( gzFile.getPath() );
+            archiver.createArchive();
+            sizes[i] = gzFile.length();
+
+            final InputStream expected = new FileInputStream( file );
+            final InputStream actual = new GZIPInputStream( new FileInputStream( gzFile ) );
+            assertTrue( Arrays.equals( IOUtil.toByteArray( expected ), IOUtil.toByteArray( actual ) ) );
+            expected.close();
+            actual.close();
+        }
+        assertTrue( sizes[1] < sizes[0] );
+    }
+
     /**
      * Tests the .gzip archiver is forced set to true, and after that
      * tests the behavior when the forced is set to false.
@@ -0,0 +1,169 @@
+package org.codehaus.plexus.archiver.gzip;
+
+
+/*
+ * Copyright 2014 The Codehaus Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import org.codehaus.plexus.archiver.util.Streams;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Measures, what the input and the deflate buffer of gzip compression cost: reading through a
+ * stream with the 512 byte deflate buffer of {@link GZIPOutputStream}, reading through a
+ * stream with the 64k buffer of {@link GZipCompressor}, and reading from a mapping of the
+ * file with the same 64k buffer. Not run as a test; run it with the size of the input in
+ * megabytes:
+ * <pre>
+ * java -cp ... org.codehaus.plexus.archiver.gzip.GZipCompressorBenchmark 2048
+ * </pre>
+ */
+public class GZipCompressorBenchmark
+{
+    private static final int RUNS = 5;
+
+    private static final int DEFLATED_BUFFER_SIZE = 64 * 1024;
+
+    private static final int WINDOW_SIZE = 32 * 1024 * 1024;
+
+    public static void main( String[] args )
+        throws Exception
+    {
+        final long size = ( args.length > 0 ? Long.parseLong( args[0] ) : 512 ) * 1024 * 1024;
+        final File input = File.createTempFile( "benchmark", ".dat" );
+        final File output = File.createTempFile( "benchmark", ".gz" );
+        input.deleteOnExit();
+        output.deleteOnExit();
+        writeInput( input, size );
+
+        for ( int run = 0; run < RUNS; run++ )
+        {
+            long start = System.nanoTime();
+            final OutputStream defaultBuffer =
+                new GZIPOutputStream( Streams.bufferedOutputStream( new FileOutputStream( output ) ) );
+            compressStream( input, defaultBuffer );
+            report( "buffer 512", size, start );
+
+            start = System.nanoTime();
+            compressStream( input, newOutputStream( output ) );
+            report( "stream", size, start );
+
+            start = System.nanoTime();
+            compressMapped( input, newOutputStream( output ) );
+            report( "mapped", size, start );
+        }
+    }
+
+    private static OutputStream newOutputStream( File output )
+        throws IOException
+    {
+        return new GZIPOutputStream( Streams.bufferedOutputStream( new FileOutputStream( output ) ),
+                                     DEFLATED_BUFFER_SIZE );
+    }
+
+    private static void compressStream( File input, OutputStream out )
+        throws IOException
+    {
+        final InputStream in = Streams.bufferedInputStream( new FileInputStream( input ) );
+        try
+        {
+            IOUtil.copy( in, out, 8192 );
+        }
+        finally
+        {
+            in.close();
+            out.close();
+        }
+    }
+
+    private static void compressMapped( File input, OutputStream out )
+        throws IOException
+    {
+        final FileInputStream fis = new FileInputStream( input );
+        try
+        {
+            final byte[] buffer = new byte[8192];
+            final FileChannel channel = fis.getChannel();
+            final long size = channel.size();
+            for ( long position = 0; position < size; position += WINDOW_SIZE )
+            {
+                final MappedByteBuffer window =
+                    channel.map( FileChannel.MapMode.READ_ONLY, position, Math.min( WINDOW_SIZE, size - position ) );
+                while ( window.hasRemaining() )
+                {
+                    final int count = Math.min( buffer.length, window.remaining() );
+                    window.get( buffer, 0, count );
+                    out.write( buffer, 0, count );
+                }
+            }
+        }
+        finally
+        {
+            fis.close();
+            out.close();
+        }
+    }
+
+    /**
+     * Writes text like data, which compresses about as well as logs do.
+     */
+    static void writeInput( File file, long size )
+        throws IOException
+    {
+        final Random random = new Random( 0 );
+        final String[] words = { "INFO", "DEBUG", "request", "completed", "in", "ms", "user", "session", "=", ":" };
+        final OutputStream out = new BufferedOutputStream( new FileOutputStream( file ) );
+        try
+        {
+            long written = 0;
+            final StringBuilder line = new StringBuilder();
+            while ( written < size )
+            {
+                line.setLength( 0 );
+                line.append( random.nextInt( 100000 ) );
+                for ( int i = 0; i < 10; i++ )
+                {
+                    line.append( ' ' ).append( words[random.nextInt( words.length )] );
+                }
+                line.append( '\n' );
+                final byte[] bytes = line.toString().getBytes( "US-ASCII" );
+                out.write( bytes );
+                written += bytes.length;
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    private static void report( String name, long size, long start )
+    {
+        final double seconds = ( System.nanoTime() - start ) / 1e9;
+        System.out.println( String.format( "%-10s %8.1f MB/s", name, size / seconds / ( 1024 * 1024 ) ) );
+    }
+}
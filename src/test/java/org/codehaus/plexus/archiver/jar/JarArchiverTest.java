@@ -1,9 +1,13 @@
 package org.codehaus.plexus.archiver.jar;
 
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
 import org.codehaus.plexus.archiver.ArchiverException;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 
 import junit.framework.TestCase;
 
@@ -42,4 +46,30 @@ public void testNonCompressed()
         archiver.createArchive();
     }
 
+    public void testCompressionThreadsWithIndex()
+        throws IOException, ManifestException, ArchiverException
+    {
+        File jarFile = new File( "target/output/jarArchiveCompressionThreads.jar" );
+
+        JarArchiver archiver = new JarArchiver();
+        archiver.setDestFile( jarFile );
+        archiver.setCompressionThreads( 4 );
+        archiver.setIndex( true );
+        archiver.addDirectory( new File( "src/test/resources/mjar179" ) );
+        archiver.createArchive();
+
+        ZipFile zf = new ZipFile( jarFile );
+        try
+        {
+            List<ZipArchiveEntry> entries = Collections.list( zf.getEntriesInPhysicalOrder() );
+            assertEquals( "META-INF/", entries.get( 0 ).getName() );
+            assertEquals( "META-INF/MANIFEST.MF", entries.get( 1 ).getName() );
+            assertEquals( "META-INF/INDEX.LIST", entries.get( entries.size() - 1 ).getName() );
+        }
+        finally
+        {
+            zf.close();
+        }
+    }
+
 }
@@ -27,6 +27,8 @@
 import org.codehaus.plexus.PlexusTestCase;
 import org.codehaus.plexus.archiver.Archiver;
 import org.codehaus.plexus.archiver.UnArchiver;
+import org.codehaus.plexus.archiver.tar.TarXZUnArchiver;
+import org.codehaus.plexus.archiver.xz.XZUnArchiver;
 
 import java.io.File;
 
@@ -122,6 +124,15 @@ public void testLookupUnArchiverUsingFile()
 
         unarchiver = manager.getUnArchiver( new File( "test.tar" ) );
         assertNotNull( unarchiver );
+
+        unarchiver = manager.getUnArchiver( new File( "test.tar.xz" ) );
+        assertTrue( unarchiver instanceof TarXZUnArchiver );
+
+        unarchiver = manager.getUnArchiver( new File( "test.txz" ) );
+        assertTrue( unarchiver instanceof TarXZUnArchiver );
+
+        unarchiver = manager.getUnArchiver( new File( "test.xz" ) );
+        assertTrue( unarchiver instanceof XZUnArchiver );
         
     }    
     
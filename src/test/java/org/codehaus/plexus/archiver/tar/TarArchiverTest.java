@@ -29,12 +29,15 @@
 import org.codehaus.plexus.PlexusTestCase;
 import org.codehaus.plexus.archiver.Archiver;
 import org.codehaus.plexus.archiver.ArchiverException;
+import org.codehaus.plexus.archiver.UnArchiver;
 import org.codehaus.plexus.archiver.UnixStat;
 import org.codehaus.plexus.archiver.bzip2.BZip2Compressor;
 import org.codehaus.plexus.archiver.gzip.GZipCompressor;
 import org.codehaus.plexus.archiver.util.ArchiveEntryUtils;
 import org.codehaus.plexus.archiver.util.Compressor;
+import org.codehaus.plexus.archiver.util.HardLinks;
 import org.codehaus.plexus.archiver.zip.ArchiveFileComparator;
+import org.codehaus.plexus.components.io.attributes.Java7Reflector;
 import org.codehaus.plexus.components.io.attributes.PlexusIoResourceAttributeUtils;
 import org.codehaus.plexus.components.io.attributes.PlexusIoResourceAttributes;
 import org.codehaus.plexus.logging.Logger;
@@ -47,11 +50,14 @@
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.Enumeration;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Random;
 
 import static org.codehaus.plexus.archiver.util.Streams.bufferedInputStream;
 import static org.codehaus.plexus.components.io.resources.ResourceFactory.createResource;
@@ -339,6 +345,209 @@ else if ( te.getName().equals( "two.txt" ) )
 
     }
 
+    public void testDeduplicateContents()
+        throws Exception
+    {
+        File sourceDirectory = getTestFile( "target/output/dedup-source" );
+        FileUtils.deleteDirectory( sourceDirectory );
+        sourceDirectory.mkdirs();
+        File a = new File( sourceDirectory, "a.txt" );
+        File b = new File( sourceDirectory, "b.txt" );
+        File c = new File( sourceDirectory, "c.txt" );
+        FileUtils.fileWrite( a, "same contents" );
+        FileUtils.fileWrite( b, "same contents" );
+        FileUtils.fileWrite( c, "same length!!" );
+        a.setLastModified( 1000000000000L );
+        b.setLastModified( 1000000000000L );
+        c.setLastModified( 1000000000000L );
+
+        TarArchiver archiver = getPosixTarArchiver();
+        archiver.setDeduplicateContents( true );
+        archiver.setDestFile( getTestFile( "target/output/dedup.tar" ) );
+        archiver.addDirectory( sourceDirectory );
+        archiver.createArchive();
+
+        Map<String, String> links = new LinkedHashMap<String, String>();
+        TarArchiveInputStream tis =
+            new TarArchiveInputStream( bufferedInputStream( new FileInputStream( archiver.getDestFile() ) ) );
+        try
+        {
+            TarArchiveEntry te;
+            while ( ( te = tis.getNextTarEntry() ) != null )
+            {
+                if ( te.isLink() )
+                {
+                    assertEquals( 0, te.getSize() );
+                    links.put( te.getName(), te.getLinkName() );
+                }
+            }
+        }
+        finally
+        {
+            tis.close();
+        }
+        assertEquals( 1, links.size() );
+        Map.Entry<String, String> link = links.entrySet().iterator().next();
+        assertTrue( link.getKey().equals( "a.txt" ) ? link.getValue().equals( "b.txt" )
+                        : link.getKey().equals( "b.txt" ) && link.getValue().equals( "a.txt" ) );
+
+        File outputDirectory = getTestFile( "target/output/dedup-extracted" );
+        FileUtils.deleteDirectory( outputDirectory );
+        TarUnArchiver unArchiver = (TarUnArchiver) lookup( UnArchiver.ROLE, "tar" );
+        unArchiver.setSourceFile( archiver.getDestFile() );
+        unArchiver.setDestDirectory( outputDirectory );
+        unArchiver.extract();
+
+        assertEquals( "same contents", FileUtils.fileRead( new File( outputDirectory, "a.txt" ) ) );
+        assertEquals( "same contents", FileUtils.fileRead( new File( outputDirectory, "b.txt" ) ) );
+        assertEquals( "same length!!", FileUtils.fileRead( new File( outputDirectory, "c.txt" ) ) );
+
+        // b.txt isn't a duplicate anymore, replacing it leaves the file it was linked to alone
+        FileUtils.fileWrite( b, "other contents" );
+        archiver = getPosixTarArchiver();
+        archiver.setDeduplicateContents( true );
+        archiver.setDestFile( getTestFile( "target/output/dedup-changed.tar" ) );
+        archiver.addDirectory( sourceDirectory );
+        archiver.createArchive();
+
+        unArchiver = (TarUnArchiver) lookup( UnArchiver.ROLE, "tar" );
+        unArchiver.setSourceFile( archiver.getDestFile() );
+        unArchiver.setDestDirectory( outputDirectory );
+        unArchiver.extract();
+
+        assertEquals( "same contents", FileUtils.fileRead( new File( outputDirectory, "a.txt" ) ) );
+        assertEquals( "other contents", FileUtils.fileRead( new File( outputDirectory, "b.txt" ) ) );
+    }
+
+    public void testDetectHardLinksKeepsModes()
+        throws Exception
+    {
+        if ( !Java7Reflector.isAtLeastJava7() || Os.isFamily( Os.FAMILY_WINDOWS ) )
+        {
+            return;
+        }
+        File sourceDirectory = getTestFile( "target/output/links-source" );
+        FileUtils.deleteDirectory( sourceDirectory );
+        sourceDirectory.mkdirs();
+        File a = new File( sourceDirectory, "a.txt" );
+        File b = new File( sourceDirectory, "b.txt" );
+        FileUtils.fileWrite( a, "linked" );
+        HardLinks.link( a, b );
+
+        for ( int bMode : new int[]{ 0644, 0755 } )
+        {
+            TarArchiver archiver = getPosixTarArchiver();
+            archiver.setDetectHardLinks( true );
+            archiver.setDestFile( getTestFile( "target/output/links-" + Integer.toOctalString( bMode ) + ".tar" ) );
+            archiver.addFile( a, "a.txt", 0644 );
+            archiver.addFile( b, "b.txt", bMode );
+            archiver.createArchive();
+
+            Map<String, Integer> modes = new LinkedHashMap<String, Integer>();
+            int links = 0;
+            TarArchiveInputStream tis =
+                new TarArchiveInputStream( bufferedInputStream( new FileInputStream( archiver.getDestFile() ) ) );
+            try
+            {
+                TarArchiveEntry te;
+                while ( ( te = tis.getNextTarEntry() ) != null )
+                {
+                    modes.put( te.getName(), te.getMode() & UnixStat.PERM_MASK );
+                    if ( te.isLink() )
+                    {
+                        links++;
+                    }
+                }
+            }
+            finally
+            {
+                tis.close();
+            }
+            // Files are only linked, if their modes agree
+            assertEquals( bMode == 0644 ? 1 : 0, links );
+            assertEquals( Integer.valueOf( bMode ), modes.get( "b.txt" ) );
+        }
+    }
+
+    public void testSparseFile()
+        throws Exception
+    {
+        File sourceDirectory = getTestFile( "target/output/sparse-source" );
+        FileUtils.deleteDirectory( sourceDirectory );
+        sourceDirectory.mkdirs();
+        File image = new File( sourceDirectory, "image.bin" );
+        RandomAccessFile raf = new RandomAccessFile( image, "rw" );
+        try
+        {
+            raf.seek( 10000 );
+            raf.write( "first".getBytes( "US-ASCII" ) );
+            raf.seek( 5000000 );
+            raf.write( "second".getBytes( "US-ASCII" ) );
+            raf.setLength( 9000000 );
+        }
+        finally
+        {
+            raf.close();
+        }
+        // Scanned, but without holes, so written as a regular entry
+        File dense = new File( sourceDirectory, "dense.bin" );
+        byte[] random = new byte[5 * TarSparseMap.BLOCK_SIZE];
+        new Random( 0 ).nextBytes( random );
+        FileOutputStream fos = new FileOutputStream( dense );
+        try
+        {
+            fos.write( random );
+        }
+        finally
+        {
+            fos.close();
+        }
+
+        TarArchiver archiver = getPosixTarArchiver();
+        archiver.setDetectSparseFiles( true );
+        archiver.setDestFile( getTestFile( "target/output/sparse.tar" ) );
+        archiver.addDirectory( sourceDirectory );
+        archiver.createArchive();
+        assertTrue( archiver.getDestFile().length() < 100000 );
+
+        TarArchiveInputStream tis =
+            new TarArchiveInputStream( bufferedInputStream( new FileInputStream( archiver.getDestFile() ) ) );
+        try
+        {
+            TarArchiveEntry te;
+            while ( ( te = tis.getNextTarEntry() ) != null )
+            {
+                if ( te.getName().equals( "image.bin" ) )
+                {
+                    assertTrue( te.isPaxGNUSparse() );
+                    assertEquals( image.length(), te.getRealSize() );
+                }
+                else
+                {
+                    assertEquals( "dense.bin", te.getName() );
+                    assertFalse( te.isPaxGNUSparse() );
+                    assertEquals( dense.length(), te.getSize() );
+                }
+            }
+        }
+        finally
+        {
+            tis.close();
+        }
+
+        File outputDirectory = getTestFile( "target/output/sparse-extracted" );
+        FileUtils.deleteDirectory( outputDirectory );
+        TarUnArchiver unArchiver = (TarUnArchiver) lookup( UnArchiver.ROLE, "tar" );
+        unArchiver.setSourceFile( archiver.getDestFile() );
+        unArchiver.setDestDirectory( outputDirectory );
+        unArchiver.extract();
+
+        File extracted = new File( outputDirectory, "image.bin" );
+        assertEquals( image.length(), extracted.length() );
+        assertTrue( FileUtils.contentEquals( image, extracted ) );
+        assertTrue( FileUtils.contentEquals( dense, new File( outputDirectory, "dense.bin" ) ) );
+    }
+
 	public void testCreateArchiveWithJiustASymlink()
 			throws Exception
 	{
@@ -30,6 +30,7 @@
 import org.codehaus.plexus.archiver.Archiver;
 import org.codehaus.plexus.archiver.UnArchiver;
 import org.codehaus.plexus.archiver.bzip2.BZip2Archiver;
+import org.codehaus.plexus.util.FileUtils;
 
 /**
  * @author Dan Tran
@@ -78,6 +79,33 @@ public void testExtract()
 
     }
 
+    public void testExtractWithThreads()
+        throws Exception
+    {
+        // More than one bzip2 block, so the blocks are compressed and decompressed concurrently
+        File outputDirectory = getTestFile( "target/output/tbz2-threads" );
+        FileUtils.deleteDirectory( outputDirectory );
+        File testBZip2File = getTestFile( "target/output/archive-threads.tar.bz2" );
+
+        TarArchiver tarArchiver = (TarArchiver) lookup( Archiver.ROLE, "tar" );
+        tarArchiver.setLongfile( TarLongFileMode.posix );
+        tarArchiver.setCompression( TarArchiver.TarCompressionMethod.bzip2 );
+        tarArchiver.setCompressionThreads( 4 );
+        tarArchiver.addDirectory( getTestFile( "src" ) );
+        tarArchiver.setDestFile( testBZip2File );
+        tarArchiver.createArchive();
+
+        TarBZip2UnArchiver tarBZip2UnArchiver = (TarBZip2UnArchiver) lookup( UnArchiver.ROLE, "tbz2" );
+        tarBZip2UnArchiver.setDecompressionThreads( 4 );
+        tarBZip2UnArchiver.setDestDirectory( outputDirectory );
+        tarBZip2UnArchiver.setSourceFile( testBZip2File );
+        tarBZip2UnArchiver.extract();
+
+        File source = getTestFile( "src/main/java/org/codehaus/plexus/archiver/tar/TarArchiver.java" );
+        File extracted = new File( outputDirectory, "main/java/org/codehaus/plexus/archiver/tar/TarArchiver.java" );
+        assertEquals( FileUtils.fileRead( source ), FileUtils.fileRead( extracted ) );
+    }
+
     public void testLookup()
         throws Exception
     {
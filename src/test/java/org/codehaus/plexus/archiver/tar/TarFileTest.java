@@ -2,15 +2,22 @@
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
 import org.codehaus.plexus.PlexusTestCase;
 import org.codehaus.plexus.archiver.Archiver;
 import org.codehaus.plexus.archiver.bzip2.BZip2Compressor;
+import org.codehaus.plexus.archiver.gzip.GZipIndex;
 import org.codehaus.plexus.archiver.gzip.GZipCompressor;
 import org.codehaus.plexus.archiver.util.Compressor;
 import org.codehaus.plexus.util.FileUtils;
@@ -74,6 +81,176 @@ public TarFile newTarFile( File file )
         } );
     }
 
+    /**
+     * Test for reading the entries of an uncompressed tar file in reverse order, using the index.
+     */
+    public void testRandomAccess() throws Exception
+    {
+        final File file = new File( "target/output/TarFileRandomAccessTest.tar" );
+        final TarArchiver archiver = (TarArchiver) lookup( Archiver.ROLE, "tar" );
+        archiver.setLongfile( TarLongFileMode.posix );
+        archiver.setDestFile( file );
+        archiver.addDirectory( new File( "src/main" ) );
+        FileUtils.removePath( file.getPath() );
+        archiver.createArchive();
+        final File indexFile = new File( file.getPath() + ".index" );
+        indexFile.delete();
+
+        final List<TarArchiveEntry> entries = new ArrayList<TarArchiveEntry>();
+        TarFile tarFile = new TarFile( file );
+        tarFile.setPersistIndex( true );
+        for ( Enumeration en = tarFile.getEntries(); en.hasMoreElements(); )
+        {
+            final TarArchiveEntry te = (TarArchiveEntry) en.nextElement();
+            if ( !te.isDirectory() && !te.isSymbolicLink() )
+            {
+                entries.add( te );
+            }
+        }
+        Collections.reverse( entries );
+        assertReverseContents( tarFile, entries );
+        tarFile.close();
+        assertTrue( indexFile.isFile() );
+
+        // Without enumerating the entries first
+        tarFile = new TarFile( file );
+        tarFile.setPersistIndex( true );
+        assertReverseContents( tarFile, entries );
+        tarFile.close();
+    }
+
+    /**
+     * Test for reading entries with the same name, like those appended by <code>tar -r</code>,
+     * out of order, using the index.
+     */
+    public void testDuplicateNames() throws Exception
+    {
+        final File file = new File( "target/output/TarFileDuplicateNamesTest.tar" );
+        file.getParentFile().mkdirs();
+        new File( file.getPath() + ".index" ).delete();
+        final TarArchiveOutputStream tos = new TarArchiveOutputStream( new FileOutputStream( file ) );
+        try
+        {
+            final String[][] contents = { { "a.txt", "first" }, { "b.txt", "other" }, { "a.txt", "second" } };
+            for ( String[] content : contents )
+            {
+                final byte[] data = content[1].getBytes( "UTF-8" );
+                final TarArchiveEntry te = new TarArchiveEntry( content[0] );
+                te.setSize( data.length );
+                tos.putArchiveEntry( te );
+                tos.write( data );
+                tos.closeArchiveEntry();
+            }
+        }
+        finally
+        {
+            tos.close();
+        }
+
+        for ( int run = 0; run < 2; run++ )
+        {
+            final TarFile tarFile = new TarFile( file );
+            tarFile.setPersistIndex( true );
+            final List<TarArchiveEntry> entries = new ArrayList<TarArchiveEntry>();
+            for ( Enumeration en = tarFile.getEntries(); en.hasMoreElements(); )
+            {
+                entries.add( (TarArchiveEntry) en.nextElement() );
+            }
+            assertEquals( 3, entries.size() );
+            assertEquals( "second", IOUtil.toString( tarFile.getInputStream( entries.get( 2 ) ), "UTF-8" ) );
+            assertEquals( "other", IOUtil.toString( tarFile.getInputStream( entries.get( 1 ) ), "UTF-8" ) );
+            assertEquals( "first", IOUtil.toString( tarFile.getInputStream( entries.get( 0 ) ), "UTF-8" ) );
+            tarFile.close();
+        }
+    }
+
+    /**
+     * Test for reading the entries of a gzip compressed tar file, which consists of several
+     * members, in reverse order, using checkpoints.
+     */
+    public void testGZipIndex() throws Exception
+    {
+        final File file = new File( "target/output/TarFileGZipIndexTest.tar" );
+        final TarArchiver archiver = (TarArchiver) lookup( Archiver.ROLE, "tar" );
+        archiver.setLongfile( TarLongFileMode.posix );
+        archiver.setDestFile( file );
+        archiver.addDirectory( new File( "src/main" ) );
+        FileUtils.removePath( file.getPath() );
+        archiver.createArchive();
+
+        final FileInputStream in = new FileInputStream( file );
+        final byte[] tar = IOUtil.toByteArray( in );
+        in.close();
+
+        // Compress blocks of 64k as separate members
+        final File gzFile = new File( file.getPath() + ".gz" );
+        FileOutputStream out = new FileOutputStream( gzFile );
+        for ( int offset = 0; offset < tar.length; offset += 64 * 1024 )
+        {
+            final GZIPOutputStream member = new GZIPOutputStream( out );
+            member.write( tar, offset, Math.min( 64 * 1024, tar.length - offset ) );
+            member.finish();
+        }
+        out.close();
+        assertTrue( assertReverseContentsWithIndex( gzFile ).size() > 1 );
+
+        // A single member has no checkpoints to resume at
+        final File singleFile = new File( file.getPath() + ".single.gz" );
+        out = new FileOutputStream( singleFile );
+        final GZIPOutputStream member = new GZIPOutputStream( out );
+        member.write( tar );
+        member.close();
+        assertEquals( 1, assertReverseContentsWithIndex( singleFile ).size() );
+    }
+
+    /**
+     * Reads the entries in reverse order, with checkpoints recorded while the entries are
+     * listed, and with the persisted checkpoints.
+     *
+     * @return the persisted checkpoints.
+     */
+    private GZipIndex assertReverseContentsWithIndex( File gzFile )
+        throws IOException
+    {
+        final File gzIndexFile = new File( gzFile.getPath() + ".gzindex" );
+        gzIndexFile.delete();
+        new File( gzFile.getPath() + ".index" ).delete();
+
+        for ( int i = 0; i < 2; i++ )
+        {
+            final List<TarArchiveEntry> entries = new ArrayList<TarArchiveEntry>();
+            final GZipTarFile tarFile = new GZipTarFile( gzFile );
+            tarFile.setUseIndex( true );
+            tarFile.setPersistIndex( true );
+            tarFile.setCheckpointInterval( 256 * 1024 );
+            for ( Enumeration en = tarFile.getEntries(); en.hasMoreElements(); )
+            {
+                final TarArchiveEntry te = (TarArchiveEntry) en.nextElement();
+                if ( !te.isDirectory() && !te.isSymbolicLink() )
+                {
+                    entries.add( te );
+                }
+            }
+            Collections.reverse( entries );
+            assertReverseContents( tarFile, entries );
+            tarFile.close();
+        }
+        return GZipIndex.load( gzIndexFile, gzFile );
+    }
+
+    private void assertReverseContents( TarFile tarFile, List<TarArchiveEntry> entries )
+        throws IOException
+    {
+        for ( TarArchiveEntry te : entries )
+        {
+            final InputStream teStream = tarFile.getInputStream( te );
+            final InputStream fileStream = new FileInputStream( new File( "src/main", te.getName() ) );
+            assertTrue( te.getName(), Arrays.equals( IOUtil.toByteArray( teStream ), IOUtil.toByteArray( fileStream ) ) );
+            teStream.close();
+            fileStream.close();
+        }
+    }
+
     private void testTarFile( Compressor compressor, String extension,
                               TarFileCreator tarFileCreator )
         throws Exception
@@ -25,11 +25,13 @@
  */
 
 import java.io.File;
+import java.util.List;
 
 import org.codehaus.plexus.PlexusTestCase;
 import org.codehaus.plexus.archiver.Archiver;
 import org.codehaus.plexus.archiver.UnArchiver;
 import org.codehaus.plexus.archiver.gzip.GZipArchiver;
+import org.codehaus.plexus.util.FileUtils;
 
 /**
  * @author Dan Tran
@@ -77,6 +79,42 @@ public void testExtract()
 
     }
 
+    public void testExtractPipelined()
+        throws Exception
+    {
+        File outputDirectory = getTestFile( "target/output/tgz-pipelined" );
+        FileUtils.deleteDirectory( outputDirectory );
+        File testGZipFile = getTestFile( "target/output/archive-pipelined.tar.gz" );
+
+        TarArchiver tarArchiver = (TarArchiver) lookup( Archiver.ROLE, "tar" );
+        tarArchiver.setLongfile( TarLongFileMode.posix );
+        tarArchiver.setCompression( TarArchiver.TarCompressionMethod.gzip );
+        tarArchiver.addDirectory( getTestFile( "src" ) );
+        tarArchiver.setDestFile( testGZipFile );
+        tarArchiver.createArchive();
+
+        TarGZipUnArchiver tarGZipUnArchiver = (TarGZipUnArchiver) lookup( UnArchiver.ROLE, "tgz" );
+        tarGZipUnArchiver.setExtractionThreads( 4 );
+        // Small enough for the reading thread to wait for the writing threads
+        tarGZipUnArchiver.setPipelineMemory( 128 * 1024 );
+        tarGZipUnArchiver.setDestDirectory( outputDirectory );
+        tarGZipUnArchiver.setSourceFile( testGZipFile );
+        tarGZipUnArchiver.extract();
+
+        List<String> names = FileUtils.getFileNames( getTestFile( "src" ), null, null, false );
+        assertEquals( names.size(), FileUtils.getFileNames( outputDirectory, null, null, false ).size() );
+        for ( String name : names )
+        {
+            File source = new File( getTestFile( "src" ), name );
+            File extracted = new File( outputDirectory, name );
+            assertEquals( name, source.length(), extracted.length() );
+            assertEquals( name, source.lastModified() / 1000, extracted.lastModified() / 1000 );
+        }
+        File source = getTestFile( "src/main/java/org/codehaus/plexus/archiver/tar/TarArchiver.java" );
+        File extracted = new File( outputDirectory, "main/java/org/codehaus/plexus/archiver/tar/TarArchiver.java" );
+        assertEquals( FileUtils.fileRead( source ), FileUtils.fileRead( extracted ) );
+    }
+
     public void testLookup()
         throws Exception
     {
@@ -28,6 +28,7 @@
 import org.codehaus.plexus.archiver.Archiver;
 import org.codehaus.plexus.archiver.UnArchiver;
 import org.codehaus.plexus.archiver.snappy.SnappyArchiver;
+import org.codehaus.plexus.util.FileUtils;
 
 import java.io.File;
 
@@ -74,6 +75,33 @@ public void testExtract()
         assertEquals(testSnappyFile, tarSnappyUnArchiver.getSourceFile());
     }
 
+    public void testExtractWithThreads()
+        throws Exception
+    {
+        // More than one batch of snappy blocks, so they are compressed and decompressed concurrently
+        File outputDirectory = getTestFile( "target/output/tsnappy-threads" );
+        FileUtils.deleteDirectory( outputDirectory );
+        File testSnappyFile = getTestFile( "target/output/archive-threads.tar.snappy" );
+
+        TarArchiver tarArchiver = (TarArchiver) lookup( Archiver.ROLE, "tar" );
+        tarArchiver.setLongfile( TarLongFileMode.posix );
+        tarArchiver.setCompression( TarArchiver.TarCompressionMethod.snappy );
+        tarArchiver.setCompressionThreads( 4 );
+        tarArchiver.addDirectory( getTestFile( "src" ) );
+        tarArchiver.setDestFile( testSnappyFile );
+        tarArchiver.createArchive();
+
+        TarSnappyUnArchiver tarSnappyUnArchiver = (TarSnappyUnArchiver) lookup( UnArchiver.ROLE, "tar.snappy" );
+        tarSnappyUnArchiver.setDecompressionThreads( 4 );
+        tarSnappyUnArchiver.setDestDirectory( outputDirectory );
+        tarSnappyUnArchiver.setSourceFile( testSnappyFile );
+        tarSnappyUnArchiver.extract();
+
+        File source = getTestFile( "src/main/java/org/codehaus/plexus/archiver/tar/TarArchiver.java" );
+        File extracted = new File( outputDirectory, "main/java/org/codehaus/plexus/archiver/tar/TarArchiver.java" );
+        assertEquals( FileUtils.fileRead( source ), FileUtils.fileRead( extracted ) );
+    }
+
     public void testLookup()
         throws Exception
     {
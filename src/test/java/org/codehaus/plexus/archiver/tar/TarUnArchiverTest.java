@@ -1,12 +1,17 @@
 package org.codehaus.plexus.archiver.tar;
 
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarConstants;
 import org.codehaus.plexus.PlexusTestCase;
+import org.codehaus.plexus.archiver.ArchiverException;
 import org.codehaus.plexus.archiver.UnArchiver;
 import org.codehaus.plexus.components.io.fileselectors.FileSelector;
 import org.codehaus.plexus.components.io.fileselectors.IncludeExcludeFileSelector;
 import org.codehaus.plexus.util.FileUtils;
 
 import java.io.File;
+import java.io.FileOutputStream;
 
 /**
  * @author <a href="mailto:viktor@jv-ration.com">Viktor Sadovnikov</a>
@@ -65,4 +70,54 @@ public void testSelectors()
         fileSelector.setExcludes( new String[]{ "resources/artifactId/directory/test.properties" } );
         runUnarchiver( new FileSelector[]{ fileSelector }, new boolean[]{ true, false, false } );
     }
+
+    public void testHardLinkOutsideOfDestination()
+        throws Exception
+    {
+        File secret = getTestFile( "target/tar-unarchiver-secret.txt" );
+        FileUtils.fileWrite( secret, "secret" );
+        assertHardLinkRejected( "../tar-unarchiver-secret.txt" );
+        assertHardLinkRejected( secret.getAbsolutePath() );
+        assertEquals( "secret", FileUtils.fileRead( secret ) );
+    }
+
+    private void assertHardLinkRejected( String linkName )
+        throws Exception
+    {
+        File tarFile = getTestFile( "target/tar-unarchiver-link.tar" );
+        TarArchiveOutputStream tos = new TarArchiveOutputStream( new FileOutputStream( tarFile ) );
+        try
+        {
+            TarArchiveEntry te = new TarArchiveEntry( "link.txt", TarConstants.LF_LINK );
+            te.setLinkName( linkName );
+            tos.putArchiveEntry( te );
+            tos.closeArchiveEntry();
+            // Would be written through the link
+            te = new TarArchiveEntry( "link.txt" );
+            te.setSize( 7 );
+            tos.putArchiveEntry( te );
+            tos.write( "changed".getBytes( "US-ASCII" ) );
+            tos.closeArchiveEntry();
+        }
+        finally
+        {
+            tos.close();
+        }
+
+        File outputDirectory = getTestFile( "target/tar-unarchiver-links" );
+        FileUtils.deleteDirectory( outputDirectory );
+        outputDirectory.mkdirs();
+        TarUnArchiver tarUn = (TarUnArchiver) lookup( UnArchiver.ROLE, "tar" );
+        tarUn.setSourceFile( tarFile );
+        tarUn.setDestDirectory( outputDirectory );
+        try
+        {
+            tarUn.extract();
+            fail( "Expected the link to " + linkName + " to be rejected" );
+        }
+        catch ( ArchiverException expected )
+        {
+            assertFalse( new File( outputDirectory, "link.txt" ).exists() );
+        }
+    }
 }
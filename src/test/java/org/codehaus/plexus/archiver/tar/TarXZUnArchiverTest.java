@@ -0,0 +1,66 @@
+package org.codehaus.plexus.archiver.tar;
+
+/*
+ * Copyright 2014 The Codehaus Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.codehaus.plexus.PlexusTestCase;
+import org.codehaus.plexus.archiver.Archiver;
+import org.codehaus.plexus.archiver.UnArchiver;
+
+import java.io.File;
+
+/**
+ * xz tar archives
+ */
+public class TarXZUnArchiverTest
+    extends PlexusTestCase
+{
+    public void testExtract()
+        throws Exception
+    {
+        String fileName1 = "TarXZUnArchiverTest1.txt";
+        String fileName2 = "TarXZUnArchiverTest2.txt";
+        File file1InTar = getTestFile( "target/output/" + fileName1 );
+        File file2InTar = getTestFile( "target/output/" + fileName2 );
+        file1InTar.delete();
+        file2InTar.delete();
+
+        TarArchiver tarArchiver = (TarArchiver) lookup( Archiver.ROLE, "tar" );
+        tarArchiver.setCompression( TarArchiver.TarCompressionMethod.xz );
+        tarArchiver.setCompressionLevel( 1 );
+        tarArchiver.addFile( getTestFile( "src/test/resources/manifests/manifest1.mf" ), fileName1 );
+        tarArchiver.addFile( getTestFile( "src/test/resources/manifests/manifest2.mf" ), fileName2, 0664 );
+        File testXZFile = getTestFile( "target/output/archive.tar.xz" );
+        testXZFile.delete();
+        tarArchiver.setDestFile( testXZFile );
+        tarArchiver.createArchive();
+
+        TarXZUnArchiver tarXZUnArchiver = (TarXZUnArchiver) lookup( UnArchiver.ROLE, "tar.xz" );
+        tarXZUnArchiver.setDestDirectory( getTestFile( "target/output" ) );
+        tarXZUnArchiver.setSourceFile( testXZFile );
+        tarXZUnArchiver.extract();
+
+        assertTrue( file1InTar.exists() );
+        assertTrue( file2InTar.exists() );
+        assertEquals( testXZFile, tarXZUnArchiver.getSourceFile() );
+    }
+
+    public void testLookup()
+        throws Exception
+    {
+        lookup( UnArchiver.ROLE, "txz" );
+    }
+}
@@ -0,0 +1,73 @@
+package org.codehaus.plexus.archiver.util;
+
+import junit.framework.TestCase;
+
+public class CompressionGovernorTest
+    extends TestCase
+{
+    private static final long MB = 1024 * 1024;
+
+    private static final long SECOND = 1000000000L;
+
+    public void testSlowEntriesLowerTheLevel()
+    {
+        CompressionGovernor governor = CompressionGovernor.forThroughput( 10 * MB, 1, -1 );
+        assertEquals( CompressionGovernor.DEFAULT_LEVEL, governor.getLevel() );
+        governor.record( 6, 5 * MB, MB, SECOND );
+        assertEquals( 5, governor.getLevel() );
+        for ( int i = 0; i < 10; i++ )
+        {
+            governor.record( governor.getLevel(), 5 * MB, MB, SECOND );
+        }
+        assertEquals( CompressionGovernor.MIN_LEVEL, governor.getLevel() );
+    }
+
+    public void testFastEntriesRaiseTheLevel()
+    {
+        CompressionGovernor governor = CompressionGovernor.forThroughput( 10 * MB, 1, 3 );
+        governor.record( 3, 20 * MB, MB, SECOND );
+        assertEquals( 4, governor.getLevel() );
+        // Faster than the target, but within the headroom
+        governor.record( 4, 12 * MB, MB, SECOND );
+        assertEquals( 4, governor.getLevel() );
+        for ( int i = 0; i < 10; i++ )
+        {
+            governor.record( governor.getLevel(), 20 * MB, MB, SECOND );
+        }
+        assertEquals( CompressionGovernor.MAX_LEVEL, governor.getLevel() );
+    }
+
+    public void testSmallEntriesKeepTheLevel()
+    {
+        CompressionGovernor governor = CompressionGovernor.forThroughput( 10 * MB, 1, -1 );
+        governor.record( 6, CompressionGovernor.MIN_SAMPLE_SIZE - 1, 100, SECOND );
+        assertEquals( CompressionGovernor.DEFAULT_LEVEL, governor.getLevel() );
+    }
+
+    public void testThreadsShareTheTarget()
+    {
+        // 4 MB/s exceeds the share of a thread, 2.5 MB/s, by more than the headroom
+        CompressionGovernor governor = CompressionGovernor.forThroughput( 10 * MB, 4, -1 );
+        governor.record( 6, 4 * MB, MB, SECOND );
+        assertEquals( 7, governor.getLevel() );
+    }
+
+    public void testExceededTimeBudgetLowersTheLevel()
+        throws Exception
+    {
+        CompressionGovernor governor = CompressionGovernor.forTimeBudget( 1, 100 * MB, 1, -1 );
+        Thread.sleep( 10 );
+        governor.record( 6, MB, MB / 2, 1 );
+        assertEquals( 5, governor.getLevel() );
+    }
+
+    public void testReport()
+    {
+        CompressionGovernor governor = CompressionGovernor.forThroughput( 10 * MB, 1, -1 );
+        governor.record( 6, 4 * MB, MB, SECOND );
+        governor.record( 5, 2 * MB, MB, SECOND );
+        assertEquals( 2, governor.getReport().size() );
+        assertEquals( "level 5: 1 entries, 2097152 to 1048576 bytes (50.0%), 2.0 MB/s", governor.getReport().get( 0 ) );
+        assertEquals( "level 6: 1 entries, 4194304 to 1048576 bytes (25.0%), 4.0 MB/s", governor.getReport().get( 1 ) );
+    }
+}
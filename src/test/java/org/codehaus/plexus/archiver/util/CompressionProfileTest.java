@@ -0,0 +1,57 @@
+package org.codehaus.plexus.archiver.util;
+
+import java.util.zip.Deflater;
+
+import junit.framework.TestCase;
+
+public class CompressionProfileTest
+    extends TestCase
+{
+    public void testForName()
+    {
+        assertSame( CompressionProfile.FASTEST, CompressionProfile.forName( "fastest" ) );
+        assertSame( CompressionProfile.BALANCED, CompressionProfile.forName( "Balanced" ) );
+        assertSame( CompressionProfile.SMALLEST, CompressionProfile.forName( "SMALLEST" ) );
+        try
+        {
+            CompressionProfile.forName( "custom" );
+            fail( "custom isn't a preset" );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            // expected
+        }
+    }
+
+    public void testDefaults()
+    {
+        final CompressionProfile profile = new CompressionProfile( -1, Deflater.DEFAULT_STRATEGY, 0, 0 );
+        assertEquals( "custom", profile.getName() );
+        assertEquals( 4096, profile.getBufferSize( 4096 ) );
+        assertEquals( 1024, new CompressionProfile( 1, Deflater.FILTERED, 1024, 0 ).getBufferSize( 4096 ) );
+        assertEquals( -1, CompressionProfile.BALANCED.getLevel() );
+        assertEquals( 0, CompressionProfile.BALANCED.getOutputBufferSize() );
+    }
+
+    public void testInvalidValues()
+    {
+        assertInvalid( 10, Deflater.DEFAULT_STRATEGY, 0, 0 );
+        assertInvalid( -2, Deflater.DEFAULT_STRATEGY, 0, 0 );
+        assertInvalid( 6, 3, 0, 0 );
+        assertInvalid( 6, Deflater.DEFAULT_STRATEGY, -1, 0 );
+        assertInvalid( 6, Deflater.DEFAULT_STRATEGY, 0, -1 );
+    }
+
+    private static void assertInvalid( int level, int strategy, int bufferSize, int outputBufferSize )
+    {
+        try
+        {
+            new CompressionProfile( level, strategy, bufferSize, outputBufferSize );
+            fail( "Accepted level " + level + ", strategy " + strategy );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            // expected
+        }
+    }
+}
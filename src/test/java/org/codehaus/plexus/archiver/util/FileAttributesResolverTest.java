@@ -0,0 +1,56 @@
+package org.codehaus.plexus.archiver.util;
+
+import java.io.File;
+
+import org.codehaus.plexus.components.io.attributes.Java7Reflector;
+import org.codehaus.plexus.components.io.attributes.PlexusIoResourceAttributeUtils;
+import org.codehaus.plexus.components.io.attributes.PlexusIoResourceAttributes;
+import org.codehaus.plexus.util.Os;
+
+import junit.framework.TestCase;
+
+public class FileAttributesResolverTest
+    extends TestCase
+{
+    public void testNamesAreCached()
+        throws Exception
+    {
+        if ( !Java7Reflector.isAtLeastJava7() || Os.isFamily( Os.FAMILY_WINDOWS ) )
+        {
+            return;
+        }
+        File temp = File.createTempFile( "attributes", ".tmp" );
+        temp.deleteOnExit();
+        PlexusIoResourceAttributes expected = PlexusIoResourceAttributeUtils.getFileAttributes( temp );
+
+        FileAttributesResolver resolver = new FileAttributesResolver( 10 );
+        PlexusIoResourceAttributes first = resolver.getAttributes( temp );
+        assertEquals( 2, resolver.size() );
+        PlexusIoResourceAttributes second = resolver.getAttributes( temp );
+        assertEquals( 2, resolver.size() );
+
+        for ( PlexusIoResourceAttributes attributes : new PlexusIoResourceAttributes[]{ first, second } )
+        {
+            assertEquals( expected.getOctalMode(), attributes.getOctalMode() );
+            assertEquals( expected.getUserName(), attributes.getUserName() );
+            assertEquals( expected.getGroupName(), attributes.getGroupName() );
+        }
+    }
+
+    public void testFullCacheStillResolvesNames()
+        throws Exception
+    {
+        if ( !Java7Reflector.isAtLeastJava7() || Os.isFamily( Os.FAMILY_WINDOWS ) )
+        {
+            return;
+        }
+        File temp = File.createTempFile( "attributes", ".tmp" );
+        temp.deleteOnExit();
+
+        FileAttributesResolver resolver = new FileAttributesResolver( 0 );
+        PlexusIoResourceAttributes attributes = resolver.getAttributes( temp );
+        assertEquals( 0, resolver.size() );
+        assertEquals( PlexusIoResourceAttributeUtils.getFileAttributes( temp ).getUserName(),
+                      attributes.getUserName() );
+    }
+}
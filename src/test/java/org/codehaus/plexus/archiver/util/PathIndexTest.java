@@ -0,0 +1,59 @@
+package org.codehaus.plexus.archiver.util;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import junit.framework.TestCase;
+
+public class PathIndexTest
+    extends TestCase
+{
+
+    public void testAddAndContains()
+    {
+        final PathIndex index = new PathIndex();
+        assertTrue( index.add( "a/b/c.txt" ) );
+        assertFalse( index.add( "a/b/c.txt" ) );
+        assertTrue( index.add( "a/b/" ) );
+        assertEquals( 2, index.size() );
+
+        assertTrue( index.contains( "a/b/c.txt" ) );
+        assertTrue( index.contains( "a/b/" ) );
+        assertFalse( index.contains( "a/b" ) );
+        assertFalse( index.contains( "a/" ) );
+        assertFalse( index.contains( "a/b/c" ) );
+        assertFalse( index.contains( "a/b/c.txt/" ) );
+    }
+
+    public void testManyChildren()
+    {
+        final PathIndex index = new PathIndex();
+        for ( int i = 0; i < 1000; i++ )
+        {
+            assertTrue( index.add( "dir/file" + i ) );
+        }
+        for ( int i = 0; i < 1000; i++ )
+        {
+            assertTrue( index.contains( "dir/file" + i ) );
+        }
+        assertFalse( index.contains( "dir/file1000" ) );
+        assertEquals( 1000, index.size() );
+    }
+
+    public void testGetPaths()
+    {
+        final PathIndex index = new PathIndex();
+        final String[] paths = { "META-INF/", "META-INF/MANIFEST.MF", "a.txt", "b/", "b/c/d.txt", "/abs" };
+        for ( String path : paths )
+        {
+            index.add( path );
+        }
+        assertEquals( new HashSet<String>( Arrays.asList( paths ) ), new HashSet<String>( index.getPaths() ) );
+        assertEquals( Arrays.asList( "a.txt" ), index.getRootFiles() );
+
+        index.clear();
+        assertTrue( index.isEmpty() );
+        assertFalse( index.contains( "a.txt" ) );
+        assertTrue( index.getPaths().isEmpty() );
+    }
+}
@@ -0,0 +1,58 @@
+package org.codehaus.plexus.archiver.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class StreamsTest
+    extends TestCase
+{
+
+    public void testBorrowedBufferIsReused()
+    {
+        final byte[] buffer = Streams.borrowBuffer();
+        assertEquals( Streams.getBufferSize(), buffer.length );
+        Streams.returnBuffer( buffer );
+        assertSame( buffer, Streams.borrowBuffer() );
+        Streams.returnBuffer( buffer );
+    }
+
+    public void testNestedBorrowsGetDistinctBuffers()
+    {
+        final byte[] outer = Streams.borrowBuffer();
+        final byte[] inner = Streams.borrowBuffer();
+        assertNotSame( outer, inner );
+        Streams.returnBuffer( inner );
+        Streams.returnBuffer( outer );
+    }
+
+    public void testBufferSizeChange()
+    {
+        final int original = Streams.getBufferSize();
+        try
+        {
+            Streams.returnBuffer( Streams.borrowBuffer() );
+            Streams.setBufferSize( original / 2 );
+            final byte[] buffer = Streams.borrowBuffer();
+            assertEquals( original / 2, buffer.length );
+            Streams.returnBuffer( buffer );
+        }
+        finally
+        {
+            Streams.setBufferSize( original );
+        }
+    }
+
+    public void testCopy()
+        throws Exception
+    {
+        final byte[] data = new byte[Streams.getBufferSize() * 3 + 5];
+        new Random( 0 ).nextBytes( data );
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals( data.length, Streams.copy( new ByteArrayInputStream( data ), out ) );
+        assertTrue( Arrays.equals( data, out.toByteArray() ) );
+    }
+}
@@ -0,0 +1,81 @@
+package org.codehaus.plexus.archiver.xz;
+
+/*
+ * Copyright 2014 The Codehaus Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.codehaus.plexus.archiver.Archiver;
+import org.codehaus.plexus.archiver.BasePlexusArchiverTest;
+import org.codehaus.plexus.archiver.zip.ZipArchiver;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Tests for the xz archiver
+ */
+public class XZArchiverTest
+    extends BasePlexusArchiverTest
+{
+    public void testCreateResourceCollection()
+        throws Exception
+    {
+        final File pomFile = new File( "pom.xml" );
+        final File xzFile = new File( "target/output/pom.xml.xz" );
+        XZArchiver xzArchiver = (XZArchiver) lookup( Archiver.ROLE, "xz" );
+        xzArchiver.setCompressionLevel( 1 );
+        xzArchiver.setDestFile( xzFile );
+        xzArchiver.addFile( pomFile, "pom.xml" );
+        FileUtils.removePath( xzFile.getPath() );
+        xzArchiver.createArchive();
+
+        final File zipFile = new File( "target/output/pom-xz.zip" );
+        ZipArchiver zipArchiver = (ZipArchiver) lookup( Archiver.ROLE, "zip" );
+        zipArchiver.setDestFile( zipFile );
+        zipArchiver.addArchivedFileSet( xzFile, "prfx/" );
+        FileUtils.removePath( zipFile.getPath() );
+        zipArchiver.createArchive();
+
+        final ZipFile juZipFile = new ZipFile( zipFile );
+        final ZipEntry zipEntry = juZipFile.getEntry( "prfx/target/output/pom.xml" );
+        final InputStream archivePom = juZipFile.getInputStream( zipEntry );
+        final InputStream pom = new FileInputStream( pomFile );
+
+        assertTrue( Arrays.equals( IOUtil.toByteArray( pom ), IOUtil.toByteArray( archivePom ) ) );
+        archivePom.close();
+        pom.close();
+        juZipFile.close();
+    }
+
+    public void testInvalidCompressionLevel()
+        throws Exception
+    {
+        XZArchiver xzArchiver = (XZArchiver) lookup( Archiver.ROLE, "xz" );
+        try
+        {
+            xzArchiver.setCompressionLevel( 10 );
+            fail();
+        }
+        catch ( IllegalArgumentException e )
+        {
+        }
+    }
+}
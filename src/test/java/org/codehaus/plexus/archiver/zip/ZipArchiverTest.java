@@ -28,15 +28,19 @@
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
@@ -45,6 +49,7 @@
 
 import org.apache.commons.compress.archivers.zip.ExtraFieldUtils;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.apache.commons.compress.archivers.zip.ZipExtraField;
 import org.apache.commons.compress.archivers.zip.ZipFile;
 import org.apache.commons.compress.utils.BoundedInputStream;
@@ -54,6 +59,7 @@
 import org.codehaus.plexus.archiver.UnArchiver;
 import org.codehaus.plexus.archiver.UnixStat;
 import org.codehaus.plexus.archiver.util.ArchiveEntryUtils;
+import org.codehaus.plexus.archiver.util.CompressionProfile;
 import org.codehaus.plexus.archiver.util.DefaultArchivedFileSet;
 import org.codehaus.plexus.archiver.util.DefaultFileSet;
 import org.codehaus.plexus.archiver.util.Streams;
@@ -701,4 +707,396 @@ public void testUpdate()
                     zipEntryNames.contains( "Users/kristian/lsrc/plexus/plexus-archiver/src/main/java/"
                         + "org/codehaus/plexus/archiver/zip/ZipArchiver.java" ) );
     }
+
+    public void testUpdateKeepsUnchangedEntries()
+        throws Exception
+    {
+        final File sources = getTestFile( "target/output/updateSources" );
+        FileUtils.deleteDirectory( sources );
+        sources.mkdirs();
+        final File unchanged = new File( sources, "unchanged.txt" );
+        final File modified = new File( sources, "modified.txt" );
+        final File resized = new File( sources, "resized.txt" );
+        FileUtils.copyFile( getTestFile( "pom.xml" ), unchanged );
+        FileUtils.copyFile( getTestFile( "pom.xml" ), modified );
+        FileUtils.fileWrite( resized, "before" );
+        final long past = System.currentTimeMillis() - 60000;
+        unchanged.setLastModified( past );
+        modified.setLastModified( past );
+        resized.setLastModified( past );
+
+        final File file = getTestFile( "target/output/updateUnchanged.zip" );
+        ZipArchiver zipArchiver = getZipArchiver( file );
+        zipArchiver.setCompress( false );
+        zipArchiver.addDirectory( sources );
+        zipArchiver.createArchive();
+
+        modified.setLastModified( System.currentTimeMillis() );
+        FileUtils.copyFile( getTestFile( "pom.xml" ), new File( sources, "added.txt" ) );
+        // Changed within the granularity of the timestamps
+        FileUtils.fileWrite( resized, "changed afterwards" );
+        resized.setLastModified( past );
+
+        zipArchiver = getZipArchiver( file );
+        zipArchiver.setUpdateMode( true );
+        zipArchiver.addDirectory( sources );
+        zipArchiver.createArchive();
+
+        ZipFile zf = new ZipFile( file );
+        try
+        {
+            assertEquals( ZipArchiveEntry.STORED, zf.getEntry( "unchanged.txt" ).getMethod() );
+            assertEquals( ZipArchiveEntry.DEFLATED, zf.getEntry( "modified.txt" ).getMethod() );
+            assertEquals( ZipArchiveEntry.DEFLATED, zf.getEntry( "added.txt" ).getMethod() );
+            assertEquals( "changed afterwards",
+                          IOUtil.toString( zf.getInputStream( zf.getEntry( "resized.txt" ) ) ) );
+            final InputStream pom = new FileInputStream( getTestFile( "pom.xml" ) );
+            final byte[] expected;
+            try
+            {
+                expected = IOUtil.toByteArray( pom );
+            }
+            finally
+            {
+                pom.close();
+            }
+            for ( String name : Arrays.asList( "unchanged.txt", "modified.txt", "added.txt" ) )
+            {
+                assertTrue( name,
+                            Arrays.equals( expected, IOUtil.toByteArray( zf.getInputStream( zf.getEntry( name ) ) ) ) );
+            }
+        }
+        finally
+        {
+            zf.close();
+        }
+    }
+
+    public void testCreateArchiveWithCompressionThreads()
+        throws Exception
+    {
+        final File serial = createArchiveForCompressionThreads( "compressionThreads-1.zip", 1 );
+        final File parallel = createArchiveForCompressionThreads( "compressionThreads-4.zip", 4 );
+
+        ZipFile serialZip = new ZipFile( serial );
+        ZipFile parallelZip = new ZipFile( parallel );
+        try
+        {
+            List<ZipArchiveEntry> serialEntries = Collections.list( serialZip.getEntriesInPhysicalOrder() );
+            List<ZipArchiveEntry> parallelEntries = Collections.list( parallelZip.getEntriesInPhysicalOrder() );
+            assertEquals( serialEntries.size(), parallelEntries.size() );
+            for ( int i = 0; i < serialEntries.size(); i++ )
+            {
+                ZipArchiveEntry expected = serialEntries.get( i );
+                ZipArchiveEntry actual = parallelEntries.get( i );
+                assertEquals( expected.getName(), actual.getName() );
+                assertEquals( expected.getName(), expected.getMethod(), actual.getMethod() );
+                assertEquals( expected.getName(), expected.getCrc(), actual.getCrc() );
+                assertEquals( expected.getName(), expected.getSize(), actual.getSize() );
+                assertEquals( expected.getName(), expected.getCompressedSize(), actual.getCompressedSize() );
+                assertEquals( expected.getName(), expected.getUnixMode(), actual.getUnixMode() );
+                assertTrue( expected.getName(), Arrays.equals( IOUtil.toByteArray( serialZip.getInputStream( expected ) ),
+                                                               IOUtil.toByteArray( parallelZip.getInputStream( actual ) ) ) );
+            }
+        }
+        finally
+        {
+            serialZip.close();
+            parallelZip.close();
+        }
+    }
+
+    public void testOverriddenStreamZipFile()
+        throws Exception
+    {
+        final List<String> names = new ArrayList<String>();
+        final ZipArchiver archiver = new ZipArchiver()
+        {
+            @Override
+            @Deprecated
+            protected void zipFile( InputStream in, ZipArchiveOutputStream zOut, String vPath, long lastModified,
+                                    File fromArchive, int mode, String symlinkDestination )
+                throws IOException
+            {
+                names.add( vPath );
+                super.zipFile( in, zOut, vPath, lastModified, fromArchive, mode, symlinkDestination );
+            }
+        };
+        archiver.enableLogging( logger );
+        final File source = getTestFile( "src/test/resources/manifests/manifest1.mf" );
+        archiver.setDestFile( getTestFile( "target/output/overriddenStreamZipFile.zip" ) );
+        archiver.setCompressionThreads( 4 );
+        archiver.addFile( source, "manifest1.mf" );
+        archiver.createArchive();
+        assertEquals( Collections.singletonList( "manifest1.mf" ), names );
+
+        ZipFile zip = new ZipFile( archiver.getDestFile() );
+        try
+        {
+            assertEquals( FileUtils.fileRead( source ),
+                          IOUtil.toString( zip.getInputStream( zip.getEntry( "manifest1.mf" ) ) ) );
+        }
+        finally
+        {
+            zip.close();
+        }
+    }
+
+    public void testCreateArchiveWithProfiles()
+        throws Exception
+    {
+        final File sources = getTestFile( "src/main/java" );
+        final long[] sizes = new long[2];
+        final CompressionProfile[] profiles = { CompressionProfile.FASTEST,
+            new CompressionProfile( 9, Deflater.FILTERED, 0, 128 * 1024 ) };
+        for ( int i = 0; i < profiles.length; i++ )
+        {
+            for ( int threads = 1; threads <= 4; threads += 3 )
+            {
+                final File zipFile = getTestFile( "target/output/profile-" + i + "-" + threads + ".zip" );
+                final ZipArchiver archiver = getZipArchiver( zipFile );
+                archiver.setCompressionThreads( threads );
+                archiver.setCompressionProfile( profiles[i] );
+                archiver.addDirectory( sources );
+                archiver.createArchive();
+                sizes[i] = zipFile.length();
+
+                ZipFile zip = new ZipFile( zipFile );
+                try
+                {
+                    for ( ZipArchiveEntry entry : Collections.list( zip.getEntries() ) )
+                    {
+                        if ( !entry.isDirectory() )
+                        {
+                            assertEquals( entry.getName(), FileUtils.fileRead( new File( sources, entry.getName() ) ),
+                                          IOUtil.toString( zip.getInputStream( entry ) ) );
+                        }
+                    }
+                }
+                finally
+                {
+                    zip.close();
+                }
+            }
+        }
+        assertTrue( sizes[1] < sizes[0] );
+    }
+
+    public void testCreateArchiveWithTimeBudget()
+        throws Exception
+    {
+        final File sources = getTestFile( "src/main/java" );
+        for ( int threads = 1; threads <= 4; threads += 3 )
+        {
+            final File zipFile = getTestFile( "target/output/timeBudget-" + threads + ".zip" );
+            final ZipArchiver archiver = getZipArchiver( zipFile );
+            archiver.setCompressionThreads( threads );
+            archiver.setTimeBudget( 60000 );
+            archiver.addDirectory( sources );
+            archiver.createArchive();
+
+            ZipFile zip = new ZipFile( zipFile );
+            try
+            {
+                for ( ZipArchiveEntry entry : Collections.list( zip.getEntries() ) )
+                {
+                    if ( entry.isDirectory() )
+                    {
+                        continue;
+                    }
+                    assertEquals( entry.getName(), FileUtils.fileRead( new File( sources, entry.getName() ) ),
+                                  IOUtil.toString( zip.getInputStream( entry ) ) );
+                }
+            }
+            finally
+            {
+                zip.close();
+            }
+        }
+    }
+
+    private File createArchiveForCompressionThreads( String name, int threads )
+        throws Exception
+    {
+        final File zipFile = getTestFile( "target/output/" + name );
+        final ZipArchiver archiver = getZipArchiver( zipFile );
+        archiver.setCompressionThreads( threads );
+        archiver.setRecompressAddedZips( false );
+        archiver.addDirectory( getTestFile( "src/test/resources" ), "resources/" );
+        archiver.addArchivedFileSet( getTestFile( "src/test/resources/test.zip" ), "archived/" );
+        archiver.createArchive();
+        return zipFile;
+    }
+
+    public void testAddArchivedFileSetCopiesCompressedData()
+        throws Exception
+    {
+        final File source = getTestFile( "src/test/resources/test.zip" );
+        for ( int threads = 1; threads <= 4; threads += 3 )
+        {
+            final File zipFile = getTestFile( "target/output/rawCopy-" + threads + ".zip" );
+            final ZipArchiver archiver = getZipArchiver( zipFile );
+            archiver.setCompressionThreads( threads );
+            archiver.addArchivedFileSet( source, "archived/" );
+            archiver.createArchive();
+
+            ZipFile sourceZip = new ZipFile( source );
+            ZipFile targetZip = new ZipFile( zipFile );
+            try
+            {
+                for ( ZipArchiveEntry expected : Collections.list( sourceZip.getEntries() ) )
+                {
+                    if ( expected.isDirectory() )
+                    {
+                        continue;
+                    }
+                    ZipArchiveEntry actual = targetZip.getEntry( "archived/" + expected.getName() );
+                    assertNotNull( expected.getName(), actual );
+                    assertEquals( expected.getName(), expected.getMethod(), actual.getMethod() );
+                    assertEquals( expected.getName(), expected.getCrc(), actual.getCrc() );
+                    assertEquals( expected.getName(), expected.getCompressedSize(), actual.getCompressedSize() );
+                    assertTrue( expected.getName(),
+                                Arrays.equals( IOUtil.toByteArray( sourceZip.getRawInputStream( expected ) ),
+                                               IOUtil.toByteArray( targetZip.getRawInputStream( actual ) ) ) );
+                    assertTrue( expected.getName(),
+                                Arrays.equals( IOUtil.toByteArray( sourceZip.getInputStream( expected ) ),
+                                               IOUtil.toByteArray( targetZip.getInputStream( actual ) ) ) );
+                }
+            }
+            finally
+            {
+                sourceZip.close();
+                targetZip.close();
+            }
+        }
+    }
+
+    public void testAddArchivedFileSetUncompressed()
+        throws Exception
+    {
+        final File source = getTestFile( "src/test/resources/test.zip" );
+        final File zipFile = getTestFile( "target/output/rawCopy-stored.zip" );
+        final ZipArchiver archiver = getZipArchiver( zipFile );
+        archiver.setCompress( false );
+        archiver.addArchivedFileSet( source, "archived/" );
+        archiver.createArchive();
+
+        ZipFile sourceZip = new ZipFile( source );
+        ZipFile targetZip = new ZipFile( zipFile );
+        try
+        {
+            for ( ZipArchiveEntry expected : Collections.list( sourceZip.getEntries() ) )
+            {
+                ZipArchiveEntry actual = targetZip.getEntry( "archived/" + expected.getName() );
+                assertEquals( expected.getName(), ZipArchiveEntry.STORED, actual.getMethod() );
+                assertEquals( expected.getName(), expected.getCrc(), actual.getCrc() );
+                assertTrue( expected.getName(),
+                            Arrays.equals( IOUtil.toByteArray( sourceZip.getInputStream( expected ) ),
+                                           IOUtil.toByteArray( targetZip.getInputStream( actual ) ) ) );
+            }
+        }
+        finally
+        {
+            sourceZip.close();
+            targetZip.close();
+        }
+    }
+
+    public void testCompressibilityDetector()
+        throws Exception
+    {
+        final File sources = getTestFile( "target/output/compressibility" );
+        FileUtils.deleteDirectory( sources );
+        sources.mkdirs();
+        final byte[] random = new byte[16 * 1024];
+        new Random( 0 ).nextBytes( random );
+        FileOutputStream out = new FileOutputStream( new File( sources, "random.bin" ) );
+        try
+        {
+            out.write( random );
+        }
+        finally
+        {
+            out.close();
+        }
+        FileUtils.copyFile( getTestFile( "pom.xml" ), new File( sources, "text.txt" ) );
+        FileUtils.copyFile( getTestFile( "pom.xml" ), new File( sources, "image.png" ) );
+        FileUtils.copyFile( getTestFile( "src/test/resources/test.zip" ), new File( sources, "nested.dat" ) );
+
+        final DefaultCompressibilityDetector detector = new DefaultCompressibilityDetector();
+        detector.setEntropySampling( true );
+        for ( int threads = 1; threads <= 4; threads += 3 )
+        {
+            final File zipFile = getTestFile( "target/output/compressibility-" + threads + ".zip" );
+            final ZipArchiver archiver = getZipArchiver( zipFile );
+            archiver.setCompressionThreads( threads );
+            archiver.setCompressibilityDetector( detector );
+            archiver.addDirectory( sources );
+            archiver.createArchive();
+
+            ZipFile zf = new ZipFile( zipFile );
+            try
+            {
+                assertEquals( ZipArchiveEntry.STORED, zf.getEntry( "random.bin" ).getMethod() );
+                assertEquals( ZipArchiveEntry.STORED, zf.getEntry( "image.png" ).getMethod() );
+                assertEquals( ZipArchiveEntry.STORED, zf.getEntry( "nested.dat" ).getMethod() );
+                assertEquals( ZipArchiveEntry.DEFLATED, zf.getEntry( "text.txt" ).getMethod() );
+                assertTrue( Arrays.equals( random,
+                                           IOUtil.toByteArray( zf.getInputStream( zf.getEntry( "random.bin" ) ) ) ) );
+            }
+            finally
+            {
+                zf.close();
+            }
+        }
+    }
+
+    public void testStoredEntriesLargerThanMemoryThreshold()
+        throws Exception
+    {
+        final File sources = getTestFile( "target/output/largeStored" );
+        FileUtils.deleteDirectory( sources );
+        sources.mkdirs();
+        final byte[] random = new byte[ConcurrentZipCreator.IN_MEMORY_THRESHOLD * 2 + 17];
+        new Random( 0 ).nextBytes( random );
+        FileOutputStream out = new FileOutputStream( new File( sources, "large.bin" ) );
+        try
+        {
+            out.write( random );
+        }
+        finally
+        {
+            out.close();
+        }
+
+        for ( int compress = 0; compress <= 1; compress++ )
+        {
+            final File zipFile = getTestFile( "target/output/largeStored-" + compress + ".zip" );
+            final ZipArchiver archiver = getZipArchiver( zipFile );
+            archiver.setCompress( compress == 1 );
+            archiver.setCompressibilityDetector( new DefaultCompressibilityDetector()
+            {
+                @Override
+                public boolean isCompressible( String name, byte[] sample, int length )
+                {
+                    return false;
+                }
+            } );
+            archiver.addDirectory( sources );
+            archiver.createArchive();
+
+            ZipFile zf = new ZipFile( zipFile );
+            try
+            {
+                ZipArchiveEntry entry = zf.getEntry( "large.bin" );
+                assertEquals( ZipArchiveEntry.STORED, entry.getMethod() );
+                assertEquals( random.length, entry.getSize() );
+                assertTrue( Arrays.equals( random, IOUtil.toByteArray( zf.getInputStream( entry ) ) ) );
+            }
+            finally
+            {
+                zf.close();
+            }
+        }
+    }
 }
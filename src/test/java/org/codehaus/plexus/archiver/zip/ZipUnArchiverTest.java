@@ -1,12 +1,24 @@
 package org.codehaus.plexus.archiver.zip;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 import org.codehaus.plexus.PlexusTestCase;
+import org.codehaus.plexus.archiver.Archiver;
 import org.codehaus.plexus.archiver.UnArchiver;
+import org.codehaus.plexus.archiver.util.ExtractionCache;
 import org.codehaus.plexus.components.io.fileselectors.FileSelector;
 import org.codehaus.plexus.components.io.fileselectors.IncludeExcludeFileSelector;
 import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
 
 /**
  * @author Jason van Zyl
@@ -98,6 +110,291 @@ private void runUnarchiver( String path, FileSelector[] selectors, boolean[] res
         assertEquals( results[2], f2.exists() );
     }
 
+    public void testExtractWithThreads()
+        throws Exception
+    {
+        File testZip = new File( getBasedir(), "src/test/resources/test.zip" );
+        File serial = new File( getBasedir(), "target/zip-unarchiver-threads-1" );
+        File parallel = new File( getBasedir(), "target/zip-unarchiver-threads-4" );
+        FileUtils.deleteDirectory( serial );
+        FileUtils.deleteDirectory( parallel );
+
+        ZipUnArchiver zu = getZipUnArchiver( testZip );
+        zu.setDestDirectory( serial );
+        zu.extract();
+
+        zu = getZipUnArchiver( testZip );
+        zu.setExtractionThreads( 4 );
+        zu.setDestDirectory( parallel );
+        zu.extract();
+
+        List<String> expected = FileUtils.getFileAndDirectoryNames( serial, null, null, false, true, true, true );
+        List<String> actual = FileUtils.getFileAndDirectoryNames( parallel, null, null, false, true, true, true );
+        Collections.sort( expected );
+        Collections.sort( actual );
+        assertFalse( expected.isEmpty() );
+        assertEquals( expected, actual );
+        for ( String name : expected )
+        {
+            File expectedFile = new File( serial, name );
+            File actualFile = new File( parallel, name );
+            if ( expectedFile.isFile() )
+            {
+                assertTrue( name, FileUtils.contentEquals( expectedFile, actualFile ) );
+                assertEquals( name, expectedFile.lastModified(), actualFile.lastModified() );
+            }
+        }
+    }
+
+    public void testExtractStoredEntries()
+        throws Exception
+    {
+        File testZip = new File( getBasedir(), "target/zip-unarchiver-stored.zip" );
+        byte[] data = new byte[300 * 1024];
+        new Random( 0 ).nextBytes( data );
+        CRC32 crc = new CRC32();
+        crc.update( data );
+
+        ZipOutputStream zos = new ZipOutputStream( new FileOutputStream( testZip ) );
+        try
+        {
+            for ( int i = 0; i < 3; i++ )
+            {
+                ZipEntry entry = new ZipEntry( "stored" + i + ".bin" );
+                entry.setMethod( ZipEntry.STORED );
+                entry.setSize( data.length );
+                entry.setCrc( crc.getValue() );
+                zos.putNextEntry( entry );
+                zos.write( data );
+                zos.closeEntry();
+            }
+            zos.putNextEntry( new ZipEntry( "deflated.bin" ) );
+            zos.write( data );
+            zos.closeEntry();
+        }
+        finally
+        {
+            zos.close();
+        }
+
+        for ( int threads = 1; threads <= 2; threads++ )
+        {
+            File outputDirectory = new File( getBasedir(), "target/zip-unarchiver-stored-" + threads );
+            FileUtils.deleteDirectory( outputDirectory );
+
+            ZipUnArchiver zu = getZipUnArchiver( testZip );
+            zu.setExtractionThreads( threads );
+            zu.setVerifyStoredChecksums( true );
+            zu.setDestDirectory( outputDirectory );
+            zu.extract();
+
+            for ( String name : new String[]{ "stored0.bin", "stored1.bin", "stored2.bin", "deflated.bin" } )
+            {
+                FileInputStream in = new FileInputStream( new File( outputDirectory, name ) );
+                try
+                {
+                    assertTrue( name, Arrays.equals( data, IOUtil.toByteArray( in ) ) );
+                }
+                finally
+                {
+                    in.close();
+                }
+            }
+        }
+    }
+
+    public void testDirectoryTimestampsAreKept()
+        throws Exception
+    {
+        File testZip = new File( getBasedir(), "target/zip-unarchiver-timestamps.zip" );
+        long time = 1000000000000L;
+
+        ZipOutputStream zos = new ZipOutputStream( new FileOutputStream( testZip ) );
+        try
+        {
+            ZipEntry dir = new ZipEntry( "dir/" );
+            dir.setTime( time );
+            zos.putNextEntry( dir );
+            zos.closeEntry();
+            for ( int i = 0; i < 10; i++ )
+            {
+                ZipEntry entry = new ZipEntry( "dir/sub/file" + i + ".txt" );
+                entry.setTime( time );
+                zos.putNextEntry( entry );
+                zos.write( ( "file" + i ).getBytes( "UTF-8" ) );
+                zos.closeEntry();
+            }
+        }
+        finally
+        {
+            zos.close();
+        }
+
+        for ( int threads = 1; threads <= 2; threads++ )
+        {
+            File outputDirectory = new File( getBasedir(), "target/zip-unarchiver-timestamps-" + threads );
+            FileUtils.deleteDirectory( outputDirectory );
+
+            ZipUnArchiver zu = getZipUnArchiver( testZip );
+            zu.setExtractionThreads( threads );
+            zu.setDestDirectory( outputDirectory );
+            zu.extract();
+
+            // the zip stores times with a 2 second precision
+            assertEquals( time / 2000, new File( outputDirectory, "dir" ).lastModified() / 2000 );
+            for ( int i = 0; i < 10; i++ )
+            {
+                File file = new File( outputDirectory, "dir/sub/file" + i + ".txt" );
+                assertEquals( time / 2000, file.lastModified() / 2000 );
+            }
+        }
+    }
+
+    public void testIncrementalExtraction()
+        throws Exception
+    {
+        File outputDirectory = new File( getBasedir(), "target/zip-unarchiver-incremental" );
+        FileUtils.deleteDirectory( outputDirectory );
+        new File( getBasedir(), "target/zip-unarchiver-incremental.plexus-archiver-state" ).delete();
+        outputDirectory.mkdirs();
+
+        File testZip = new File( getBasedir(), "target/zip-unarchiver-incremental.zip" );
+        writeZip( testZip, new String[]{ "a.txt", "dir/b.txt", "dir/c.txt" }, "1" );
+        ZipUnArchiver zu = getZipUnArchiver( testZip );
+        zu.setIncremental( true );
+        zu.setDestDirectory( outputDirectory );
+        zu.extract();
+        assertTrue( zu.getStateFile().isFile() );
+        assertEquals( outputDirectory.getParentFile(), zu.getStateFile().getParentFile() );
+        assertEquals( "1", FileUtils.fileRead( new File( outputDirectory, "a.txt" ), "UTF-8" ) );
+
+        // Unchanged entries are not written again, so local changes of the same size stay,
+        // but deleted files are restored
+        FileUtils.fileWrite( new File( outputDirectory, "a.txt" ), "UTF-8", "L" );
+        new File( outputDirectory, "dir/b.txt" ).delete();
+        writeZip( testZip, new String[]{ "a.txt", "dir/b.txt" }, "1" );
+        writeZip( new File( getBasedir(), "target/zip-unarchiver-incremental-changed.zip" ),
+                  new String[]{ "dir/b.txt", "d.txt" }, "22" );
+
+        zu = getZipUnArchiver( testZip );
+        zu.setIncremental( true );
+        zu.setDestDirectory( outputDirectory );
+        zu.extract();
+        assertEquals( "L", FileUtils.fileRead( new File( outputDirectory, "a.txt" ), "UTF-8" ) );
+        assertEquals( "1", FileUtils.fileRead( new File( outputDirectory, "dir/b.txt" ), "UTF-8" ) );
+        assertFalse( new File( outputDirectory, "dir/c.txt" ).exists() );
+
+        // Entries, which aren't selected, are still in the archive, so their files stay
+        IncludeExcludeFileSelector selector = new IncludeExcludeFileSelector();
+        selector.setExcludes( new String[]{ "a.txt" } );
+        zu = getZipUnArchiver( testZip );
+        zu.setIncremental( true );
+        zu.setFileSelectors( new FileSelector[]{ selector } );
+        zu.setDestDirectory( outputDirectory );
+        zu.extract();
+        assertEquals( "L", FileUtils.fileRead( new File( outputDirectory, "a.txt" ), "UTF-8" ) );
+
+        zu = getZipUnArchiver( new File( getBasedir(), "target/zip-unarchiver-incremental-changed.zip" ) );
+        zu.setIncremental( true );
+        zu.setDestDirectory( outputDirectory );
+        zu.extract();
+        assertFalse( new File( outputDirectory, "a.txt" ).exists() );
+        assertEquals( "22", FileUtils.fileRead( new File( outputDirectory, "dir/b.txt" ), "UTF-8" ) );
+        assertEquals( "22", FileUtils.fileRead( new File( outputDirectory, "d.txt" ), "UTF-8" ) );
+    }
+
+    public void testExtractionCache()
+        throws Exception
+    {
+        File store = new File( getBasedir(), "target/zip-unarchiver-cache-store" );
+        FileUtils.deleteDirectory( store );
+        File testZip = new File( getBasedir(), "target/zip-unarchiver-cache.zip" );
+        writeZip( testZip, new String[]{ "a.txt", "dir/b.txt", "dir/c.txt" }, "same" );
+
+        for ( int i = 0; i < 2; i++ )
+        {
+            File outputDirectory = new File( getBasedir(), "target/zip-unarchiver-cache-" + i );
+            FileUtils.deleteDirectory( outputDirectory );
+
+            ZipUnArchiver zu = getZipUnArchiver( testZip );
+            zu.setExtractionCache( new ExtractionCache( store ) );
+            zu.setDestDirectory( outputDirectory );
+            zu.extract();
+
+            for ( String name : new String[]{ "a.txt", "dir/b.txt", "dir/c.txt" } )
+            {
+                assertEquals( "same", FileUtils.fileRead( new File( outputDirectory, name ), "UTF-8" ) );
+            }
+        }
+
+        // All entries have the same contents, mode and timestamp
+        List<File> stored = FileUtils.getFiles( store, "*/*", "tmp/**" );
+        assertEquals( 1, stored.size() );
+    }
+
+    public void testExtractionOverCachedFilesKeepsStore()
+        throws Exception
+    {
+        File store = new File( getBasedir(), "target/zip-unarchiver-cache-replace-store" );
+        FileUtils.deleteDirectory( store );
+        File outputDirectory = new File( getBasedir(), "target/zip-unarchiver-cache-replace" );
+        FileUtils.deleteDirectory( outputDirectory );
+        File testZip = new File( getBasedir(), "target/zip-unarchiver-cache-replace.zip" );
+        writeZip( testZip, new String[]{ "a.txt", "dir/b.txt" }, "cached" );
+
+        ZipUnArchiver zu = getZipUnArchiver( testZip );
+        zu.setExtractionCache( new ExtractionCache( store ) );
+        zu.setDestDirectory( outputDirectory );
+        zu.extract();
+
+        // Deflated entries are copied, stored ones may be transferred from the archive's channel
+        File changedZip = new File( getBasedir(), "target/zip-unarchiver-cache-replace-changed.zip" );
+        writeZip( changedZip, new String[]{ "a.txt" }, "changed" );
+        File storedSource = new File( getBasedir(), "target/zip-unarchiver-cache-replace-stored.txt" );
+        FileUtils.fileWrite( storedSource, "UTF-8", "stored" );
+        File storedZip = new File( getBasedir(), "target/zip-unarchiver-cache-replace-stored.zip" );
+        FileUtils.fileDelete( storedZip.getPath() );
+        ZipArchiver archiver = (ZipArchiver) lookup( Archiver.ROLE, "zip" );
+        archiver.setCompress( false );
+        archiver.addFile( storedSource, "dir/b.txt" );
+        archiver.setDestFile( storedZip );
+        archiver.createArchive();
+
+        for ( File zipFile : new File[]{ changedZip, storedZip } )
+        {
+            zu = getZipUnArchiver( zipFile );
+            zu.setDestDirectory( outputDirectory );
+            zu.extract();
+        }
+        assertEquals( "changed", FileUtils.fileRead( new File( outputDirectory, "a.txt" ), "UTF-8" ) );
+        assertEquals( "stored", FileUtils.fileRead( new File( outputDirectory, "dir/b.txt" ), "UTF-8" ) );
+
+        List<File> stored = FileUtils.getFiles( store, "*/*", "tmp/**" );
+        assertEquals( 1, stored.size() );
+        assertEquals( "cached", FileUtils.fileRead( stored.get( 0 ), "UTF-8" ) );
+    }
+
+    private void writeZip( File zipFile, String[] names, String content )
+        throws Exception
+    {
+        ZipOutputStream zos = new ZipOutputStream( new FileOutputStream( zipFile ) );
+        try
+        {
+            for ( String name : names )
+            {
+                ZipEntry entry = new ZipEntry( name );
+                entry.setTime( 1000000000000L );
+                zos.putNextEntry( entry );
+                zos.write( content.getBytes( "UTF-8" ) );
+                zos.closeEntry();
+            }
+        }
+        finally
+        {
+            zos.close();
+        }
+    }
+
     private ZipUnArchiver getZipUnArchiver(File testJar) throws Exception {
         ZipUnArchiver zu = (ZipUnArchiver) lookup( UnArchiver.ROLE, "zip" );
         zu.setSourceFile( testJar );